@@ -0,0 +1,78 @@
+package com.mySociety.config;
+
+import com.mySociety.model.IdGenerators;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
+import jakarta.persistence.metamodel.EntityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+// Moves each id generator past the highest id already in its table.
+// Rows written before the switch from IDENTITY (or inserted by hand) would otherwise collide
+// with the ids the pooled generators hand out. Runs once all beans, including the schema and
+// any data scripts, are initialized and before the web server accepts requests.
+@Component
+public class IdGeneratorInitializer implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(IdGeneratorInitializer.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdGeneratorInitializer(EntityManagerFactory entityManagerFactory, JdbcTemplate jdbcTemplate) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (EntityType<?> entity : entityManagerFactory.getMetamodel().getEntities()) {
+            Class<?> type = entity.getJavaType();
+            TableGenerator generator = findTableGenerator(type);
+            Table table = type.getAnnotation(Table.class);
+            if (generator != null && table != null && IdGenerators.TABLE.equals(generator.table())) {
+                advancePastExistingIds(generator.pkColumnValue(), table.name(), generator.allocationSize());
+            }
+        }
+    }
+
+    private void advancePastExistingIds(String sequenceName, String tableName, int allocationSize) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + tableName, Long.class);
+        if (maxId == 0) {
+            return; // Empty table, any generator value is safe
+        }
+        // The pooled optimizer hands out (stored - allocationSize, stored], so this keeps every new id above maxId
+        long required = maxId + allocationSize + 1;
+        List<Long> stored = jdbcTemplate.queryForList("SELECT " + IdGenerators.VALUE_COLUMN + " FROM " + IdGenerators.TABLE
+                + " WHERE " + IdGenerators.NAME_COLUMN + " = ?", Long.class, sequenceName);
+
+        if (stored.isEmpty()) {
+            jdbcTemplate.update("INSERT INTO " + IdGenerators.TABLE + " (" + IdGenerators.NAME_COLUMN + ", "
+                    + IdGenerators.VALUE_COLUMN + ") VALUES (?, ?)", sequenceName, required);
+            log.info("Initialized id generator '{}' at {} (max id {})", sequenceName, required, maxId);
+        } else if (stored.get(0) - allocationSize < maxId) {
+            jdbcTemplate.update("UPDATE " + IdGenerators.TABLE + " SET " + IdGenerators.VALUE_COLUMN + " = ? WHERE "
+                    + IdGenerators.NAME_COLUMN + " = ?", required, sequenceName);
+            log.info("Advanced id generator '{}' from {} to {} (max id {})", sequenceName, stored.get(0), required, maxId);
+        }
+    }
+
+    private static TableGenerator findTableGenerator(Class<?> type) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                TableGenerator generator = field.getAnnotation(TableGenerator.class);
+                if (generator != null) {
+                    return generator;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,38 @@
+package com.mySociety.config;
+
+import com.mySociety.model.Message;
+import org.hibernate.Interceptor;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.type.Type;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Numbers a new thread's initial message as it is persisted: thread_root_id is its own id and
+// thread_seq is 0. The pooled id is only assigned inside persist, after any @PrePersist callback
+// has run, so this is a Hibernate interceptor: it sees the id and can still change the row about
+// to be inserted. Setting the columns after save() instead costs one UPDATE per message at flush.
+@Component
+public class ThreadRootInterceptor implements Interceptor, HibernatePropertiesCustomizer {
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.INTERCEPTOR, this);
+    }
+
+    @Override
+    public boolean onPersist(Object entity, Object id, Object[] state, String[] propertyNames, Type[] types) {
+        if (!(entity instanceof Message message) || message.getParentMessage() != null || message.getThreadRootId() != null) {
+            return false; // Replies get their position from InboxService.recordReply before they are saved
+        }
+        for (int i = 0; i < propertyNames.length; i++) {
+            if ("threadRootId".equals(propertyNames[i])) {
+                state[i] = id;
+            } else if ("threadSeq".equals(propertyNames[i])) {
+                state[i] = 0;
+            }
+        }
+        return true;
+    }
+}
@@ -1,77 +1,139 @@
 package com.mySociety.controller;
 
+import com.mySociety.dto.BroadcastRequest;
+import com.mySociety.dto.Cursor;
+import com.mySociety.dto.MaintenancePaymentRequest;
+import com.mySociety.dto.MarkReadRequest;
+import com.mySociety.dto.MessageView;
+import com.mySociety.dto.ResidentDeletionResult;
+import com.mySociety.dto.ResidentView;
 import com.mySociety.model.Announcement;
-import com.mySociety.model.Complaint;
 import com.mySociety.model.Event;
-import com.mySociety.model.Message;
 import com.mySociety.model.Resident;
-import com.mySociety.model.User;
-import com.mySociety.repository.ResidentRepository; // Added for flat number lookup
-import com.mySociety.service.AuthService;
+import com.mySociety.security.AuthPrincipal;
+import com.mySociety.security.HashingRejectedException;
+import com.mySociety.security.RequiresRole;
 import com.mySociety.service.AnnouncementService;
+import com.mySociety.service.BroadcastService;
 import com.mySociety.service.ComplaintService;
+import com.mySociety.service.DashboardSummaryService;
 import com.mySociety.service.EventService;
+import com.mySociety.service.InboxService;
+import com.mySociety.service.MaintenanceBillingService;
+import com.mySociety.service.MaintenanceLedgerService;
+import com.mySociety.service.MessageArchiveService;
 import com.mySociety.service.MessageService;
+import com.mySociety.service.ReadReceiptService;
+import com.mySociety.service.ResidentCache;
+import com.mySociety.service.ResidentDeletionService;
+import com.mySociety.service.ResidentDirectoryService;
+import com.mySociety.service.ResidentImportService;
 import com.mySociety.service.ResidentService;
+import com.mySociety.service.ThreadPositionBackfill;
+import com.mySociety.service.UnreadCounterService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+// Every endpoint requires an ADMIN token; AuthInterceptor enforces this before the handler runs
 @RestController
 @RequestMapping("/api/admin")
+@RequiresRole("ADMIN")
 public class AdminController {
 
-    private final AuthService authService;
     private final ResidentService residentService;
     private final ComplaintService complaintService;
     private final AnnouncementService announcementService;
     private final EventService eventService;
     private final MessageService messageService;
-    private final ResidentRepository residentRepository; // Inject ResidentRepository
+    private final ResidentCache residentCache; // Flat number lookups for sending messages
+    private final InboxService inboxService;
+    private final UnreadCounterService unreadCounterService;
+    private final BroadcastService broadcastService;
+    private final ReadReceiptService readReceiptService;
+    private final ThreadPositionBackfill threadPositionBackfill;
+    private final MessageArchiveService messageArchiveService;
+    private final ResidentDirectoryService residentDirectoryService;
+    private final ResidentImportService residentImportService;
+    private final MaintenanceBillingService maintenanceBillingService;
+    private final MaintenanceLedgerService maintenanceLedgerService;
+    private final DashboardSummaryService dashboardSummaryService;
+    private final ResidentDeletionService residentDeletionService;
 
-    public AdminController(AuthService authService, ResidentService residentService,
+    public AdminController(ResidentService residentService,
                            ComplaintService complaintService, AnnouncementService announcementService,
                            EventService eventService, MessageService messageService,
-                           ResidentRepository residentRepository) {
-        this.authService = authService;
+                           ResidentCache residentCache, InboxService inboxService,
+                           UnreadCounterService unreadCounterService, BroadcastService broadcastService,
+                           ReadReceiptService readReceiptService, ThreadPositionBackfill threadPositionBackfill,
+                           MessageArchiveService messageArchiveService, ResidentDirectoryService residentDirectoryService,
+                           ResidentImportService residentImportService, MaintenanceBillingService maintenanceBillingService,
+                           MaintenanceLedgerService maintenanceLedgerService, DashboardSummaryService dashboardSummaryService,
+                           ResidentDeletionService residentDeletionService) {
         this.residentService = residentService;
         this.complaintService = complaintService;
         this.announcementService = announcementService;
         this.eventService = eventService;
         this.messageService = messageService;
-        this.residentRepository = residentRepository;
+        this.residentCache = residentCache;
+        this.inboxService = inboxService;
+        this.unreadCounterService = unreadCounterService;
+        this.broadcastService = broadcastService;
+        this.readReceiptService = readReceiptService;
+        this.threadPositionBackfill = threadPositionBackfill;
+        this.messageArchiveService = messageArchiveService;
+        this.residentDirectoryService = residentDirectoryService;
+        this.residentImportService = residentImportService;
+        this.maintenanceBillingService = maintenanceBillingService;
+        this.maintenanceLedgerService = maintenanceLedgerService;
+        this.dashboardSummaryService = dashboardSummaryService;
+        this.residentDeletionService = residentDeletionService;
     }
 
-    // --- Helper for authorization ---
-    private User authorizeAdmin(String token) {
-        User user = authService.validateToken(token.substring(7));
-        if (user == null || !user.getRole().equals("ADMIN")) {
-            throw new SecurityException("Access Denied: Admin role required.");
-        }
-        return user;
+    // --- Dashboard ---
+    // Served from in-memory counters; reconciledAt says when they were last recounted in full
+    @GetMapping("/summary")
+    public ResponseEntity<?> getSummary() {
+        return ResponseEntity.ok(dashboardSummaryService.getSummary());
     }
 
     // --- Resident Management ---
     @GetMapping("/residents")
-    public ResponseEntity<?> getAllResidents(@RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> getAllResidents() {
+        return ResponseEntity.ok(residentService.getAllResidents());
+    }
+
+    // Keyset-paginated directory; pass nextCursor back as cursor (with the same sort) for the next page.
+    // sort is flatNumber (default), name or maintenanceCharge; direction is asc (default) or desc.
+    @GetMapping("/residents/page")
+    public ResponseEntity<?> getResidentPage(@RequestParam(required = false) String cursor,
+                                             @RequestParam(required = false) Integer limit,
+                                             @RequestParam(required = false) String sort,
+                                             @RequestParam(required = false) String direction,
+                                             @RequestParam(required = false) String namePrefix,
+                                             @RequestParam(required = false) String flatPrefix,
+                                             @RequestParam(required = false) BigDecimal minCharge,
+                                             @RequestParam(required = false) BigDecimal maxCharge) {
         try {
-            authorizeAdmin(token);
-            return ResponseEntity.ok(residentService.getAllResidents());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.ok(residentDirectoryService.getPage(cursor, limit, sort, direction,
+                    namePrefix, flatPrefix, minCharge, maxCharge));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
 
     @PostMapping("/residents")
-    public ResponseEntity<?> createResident(@RequestHeader("Authorization") String token,
-                                            @RequestBody Map<String, Object> residentRequest) {
+    public ResponseEntity<?> createResident(@RequestBody Map<String, Object> residentRequest) {
         try {
-            authorizeAdmin(token);
             Resident resident = new Resident();
             resident.setName((String) residentRequest.get("name"));
             resident.setEmail((String) residentRequest.get("email"));
@@ -84,209 +146,317 @@ public class AdminController {
 
             Resident createdResident = residentService.createResident(resident, username, password);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdResident);
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (HashingRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error creating resident: " + e.getMessage());
         }
     }
 
-    @PutMapping("/residents/{id}")
-    public ResponseEntity<?> updateResident(@RequestHeader("Authorization") String token,
-                                            @PathVariable Long id, @RequestBody Resident residentDetails) {
-        try {
-            authorizeAdmin(token);
-            return residentService.updateResident(id, residentDetails)
-                    .map(ResponseEntity::ok)
-                    .orElse(ResponseEntity.notFound().build());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+    // Bulk onboarding: a CSV file with a header row, or NDJSON with one resident object per line.
+    // Columns are name, email, phone, flatNumber, maintenanceCharge, username and password.
+    // Valid rows are imported and the rest reported by line; dryRun=true only validates.
+    @PostMapping(value = "/residents/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> importResidents(@RequestParam("file") MultipartFile file,
+                                             @RequestParam(required = false) String format,
+                                             @RequestParam(defaultValue = "false") boolean dryRun) {
+        try (InputStream input = file.getInputStream()) {
+            ResidentImportService.Format fileFormat = ResidentImportService.Format.detect(format, file.getOriginalFilename(), file.getContentType());
+            return ResponseEntity.ok(residentImportService.importResidents(input, fileFormat, dryRun));
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
 
+    @PutMapping("/residents/{id}")
+    public ResponseEntity<?> updateResident(@PathVariable Long id, @RequestBody Resident residentDetails) {
+        return residentService.updateResident(id, residentDetails)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Also removes the resident's user, complaints, messages and maintenance records. With
+    // async=true the deletion is queued and answered with 202; poll residents/{id}/deletion for the outcome.
     @DeleteMapping("/residents/{id}")
-    public ResponseEntity<?> deleteResident(@RequestHeader("Authorization") String token,
-                                            @PathVariable Long id) {
-        try {
-            authorizeAdmin(token);
+    public ResponseEntity<?> deleteResident(@PathVariable Long id, @RequestParam(defaultValue = "false") boolean async) {
+        if (!async) {
             if (residentService.deleteResident(id)) {
                 return ResponseEntity.noContent().build();
             }
             return ResponseEntity.notFound().build();
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        }
+        try {
+            Optional<ResidentDeletionResult> queued = residentDeletionService.deleteAsync(id);
+            if (queued.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(queued.get());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
 
-    // --- Complaint Management ---
-    @GetMapping("/complaints")
-    public ResponseEntity<?> getAllComplaints(@RequestHeader("Authorization") String token) {
+    @GetMapping("/residents/{id}/deletion")
+    public ResponseEntity<?> getResidentDeletion(@PathVariable Long id) {
+        return residentDeletionService.findStatus(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // --- Maintenance Billing ---
+    // Bills period (yyyy-MM, default the current month) in the background; poll billing-runs/latest.
+    // Residents already billed for the period are skipped, so a run can simply be repeated.
+    @PostMapping("/maintenance/billing-runs")
+    public ResponseEntity<?> startBillingRun(@RequestParam(required = false) String period) {
         try {
-            authorizeAdmin(token);
-            return ResponseEntity.ok(complaintService.getAllComplaints());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(maintenanceBillingService.start(MaintenanceBillingService.parsePeriod(period)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
 
-    @PutMapping("/complaints/{id}/status")
-    public ResponseEntity<?> updateComplaintStatus(@RequestHeader("Authorization") String token,
-                                                   @PathVariable Long id, @RequestBody Map<String, String> statusUpdate) {
+    @GetMapping("/maintenance/billing-runs/latest")
+    public ResponseEntity<?> getLatestBillingRun() {
+        return maintenanceBillingService.latestRun()
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/residents/{id}/maintenance/invoices")
+    public ResponseEntity<?> getMaintenanceInvoices(@PathVariable Long id) {
+        return ResponseEntity.ok(maintenanceLedgerService.listInvoices(id));
+    }
+
+    // Records a payment received at the office
+    @PostMapping("/residents/{id}/maintenance/payments")
+    public ResponseEntity<?> recordMaintenancePayment(AuthPrincipal admin, @PathVariable Long id,
+                                                      @RequestBody MaintenancePaymentRequest payment) {
         try {
-            authorizeAdmin(token);
-            String status = statusUpdate.get("status");
-            return complaintService.updateComplaintStatus(id, status)
-                    .map(ResponseEntity::ok)
-                    .orElse(ResponseEntity.notFound().build());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.ok(maintenanceLedgerService.pay(id, payment.invoiceId(), payment.amount(),
+                    payment.reference(), admin.userId()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
 
-    // --- Announcement Management ---
-    @GetMapping("/announcements")
-    public ResponseEntity<?> getAllAnnouncements(@RequestHeader("Authorization") String token) {
+    // Payments residents reported themselves, oldest first; none affects an invoice until confirmed
+    @GetMapping("/maintenance/payments/pending")
+    public ResponseEntity<?> getPendingMaintenancePayments() {
+        return ResponseEntity.ok(maintenanceLedgerService.listPendingPayments());
+    }
+
+    @PostMapping("/residents/{id}/maintenance/payments/{paymentId}/confirm")
+    public ResponseEntity<?> confirmMaintenancePayment(AuthPrincipal admin, @PathVariable Long id,
+                                                       @PathVariable Long paymentId) {
         try {
-            authorizeAdmin(token);
-            return ResponseEntity.ok(announcementService.getAllAnnouncements());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.ok(maintenanceLedgerService.confirmPayment(id, paymentId, admin.userId()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
 
-    @PostMapping("/announcements")
-    public ResponseEntity<?> createAnnouncement(@RequestHeader("Authorization") String token,
-                                                @RequestBody Announcement announcement) {
+    // --- Complaint Management ---
+    @GetMapping("/complaints")
+    public ResponseEntity<?> getAllComplaints() {
+        return ResponseEntity.ok(complaintService.getAllComplaints());
+    }
+
+    // Keyset-paginated complaint listing, newest first; pass nextCursor back as cursor for the next page
+    @GetMapping("/complaints/page")
+    public ResponseEntity<?> getComplaintPage(@RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) Integer limit,
+                                              @RequestParam(required = false) String status,
+                                              @RequestParam(required = false) Long residentId) {
         try {
-            authorizeAdmin(token);
-            announcement.setAnnouncementDate(LocalDate.now()); // Set current date
-            return ResponseEntity.status(HttpStatus.CREATED).body(announcementService.createAnnouncement(announcement));
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.ok(complaintService.getComplaintPage(Cursor.decode(cursor), limit, status, residentId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
 
+    @PutMapping("/complaints/{id}/status")
+    public ResponseEntity<?> updateComplaintStatus(@PathVariable Long id, @RequestBody Map<String, String> statusUpdate) {
+        String status = statusUpdate.get("status");
+        return complaintService.updateComplaintStatus(id, status)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // --- Announcement Management ---
+    @GetMapping("/announcements")
+    public ResponseEntity<?> getAllAnnouncements() {
+        return ResponseEntity.ok(announcementService.getAllAnnouncements());
+    }
+
+    @PostMapping("/announcements")
+    public ResponseEntity<?> createAnnouncement(@RequestBody Announcement announcement) {
+        announcement.setAnnouncementDate(LocalDate.now()); // Set current date
+        return ResponseEntity.status(HttpStatus.CREATED).body(announcementService.createAnnouncement(announcement));
+    }
+
     @PutMapping("/announcements/{id}")
-    public ResponseEntity<?> updateAnnouncement(@RequestHeader("Authorization") String token,
-                                                @PathVariable Long id, @RequestBody Announcement announcementDetails) {
-        try {
-            authorizeAdmin(token);
-            return announcementService.updateAnnouncement(id, announcementDetails)
-                    .map(ResponseEntity::ok)
-                    .orElse(ResponseEntity.notFound().build());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-        }
+    public ResponseEntity<?> updateAnnouncement(@PathVariable Long id, @RequestBody Announcement announcementDetails) {
+        return announcementService.updateAnnouncement(id, announcementDetails)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/announcements/{id}")
-    public ResponseEntity<?> deleteAnnouncement(@RequestHeader("Authorization") String token,
-                                                @PathVariable Long id) {
-        try {
-            authorizeAdmin(token);
-            if (announcementService.deleteAnnouncement(id)) {
-                return ResponseEntity.noContent().build();
-            }
-            return ResponseEntity.notFound().build();
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+    public ResponseEntity<?> deleteAnnouncement(@PathVariable Long id) {
+        if (announcementService.deleteAnnouncement(id)) {
+            return ResponseEntity.noContent().build();
         }
+        return ResponseEntity.notFound().build();
     }
 
     // --- Event Management ---
     @GetMapping("/events")
-    public ResponseEntity<?> getAllEvents(@RequestHeader("Authorization") String token) {
-        try {
-            authorizeAdmin(token);
-            return ResponseEntity.ok(eventService.getAllEvents());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-        }
+    public ResponseEntity<?> getAllEvents() {
+        return ResponseEntity.ok(eventService.getAllEvents());
     }
 
     @PostMapping("/events")
-    public ResponseEntity<?> createEvent(@RequestHeader("Authorization") String token,
-                                         @RequestBody Event event) {
-        try {
-            authorizeAdmin(token);
-            return ResponseEntity.status(HttpStatus.CREATED).body(eventService.createEvent(event));
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-        }
+    public ResponseEntity<?> createEvent(@RequestBody Event event) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(eventService.createEvent(event));
     }
 
     @PutMapping("/events/{id}")
-    public ResponseEntity<?> updateEvent(@RequestHeader("Authorization") String token,
-                                         @PathVariable Long id, @RequestBody Event eventDetails) {
-        try {
-            authorizeAdmin(token);
-            return eventService.updateEvent(id, eventDetails)
-                    .map(ResponseEntity::ok)
-                    .orElse(ResponseEntity.notFound().build());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-        }
+    public ResponseEntity<?> updateEvent(@PathVariable Long id, @RequestBody Event eventDetails) {
+        return eventService.updateEvent(id, eventDetails)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/events/{id}")
-    public ResponseEntity<?> deleteEvent(@RequestHeader("Authorization") String token,
-                                         @PathVariable Long id) {
-        try {
-            authorizeAdmin(token);
-            if (eventService.deleteEvent(id)) {
-                return ResponseEntity.noContent().build();
-            }
-            return ResponseEntity.notFound().build();
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+    public ResponseEntity<?> deleteEvent(@PathVariable Long id) {
+        if (eventService.deleteEvent(id)) {
+            return ResponseEntity.noContent().build();
         }
+        return ResponseEntity.notFound().build();
     }
 
     // --- Message Management (Admin views all, sends to resident) ---
     @GetMapping("/messages")
-    public ResponseEntity<?> getAllMessages(@RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> getAllMessages() {
+        return ResponseEntity.ok(messageService.getAllMessages());
+    }
+
+    // Keyset-paginated message listing, newest first; pass nextCursor back as cursor for the next page
+    @GetMapping("/messages/page")
+    public ResponseEntity<?> getMessagePage(@RequestParam(required = false) String cursor,
+                                            @RequestParam(required = false) Integer limit,
+                                            @RequestParam(required = false) String status,
+                                            @RequestParam(required = false) String senderRole,
+                                            @RequestParam(required = false) Long residentId) {
         try {
-            authorizeAdmin(token);
-            return ResponseEntity.ok(messageService.getAllMessages());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.ok(messageService.getMessagePage(Cursor.decode(cursor), limit, status, senderRole, residentId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
 
-    @PutMapping("/messages/{id}/read")
-    public ResponseEntity<?> markMessageAsRead(@RequestHeader("Authorization") String token,
-                                               @PathVariable Long id) {
+    // Unread badge for the admin inbox, served from memory
+    @GetMapping("/messages/unread-count")
+    public ResponseEntity<?> getUnreadCount() {
+        return ResponseEntity.ok(Map.of("unread", unreadCounterService.getAdminUnreadCount()));
+    }
+
+    // Thread summaries (latest first) served from the message_threads table, one keyset page at a time
+    @GetMapping("/messages/inbox")
+    public ResponseEntity<?> getInbox(@RequestParam(required = false) String cursor,
+                                      @RequestParam(required = false) Integer limit) {
         try {
-            User adminUser = authorizeAdmin(token);
-            return messageService.markMessageAsRead(id, adminUser.getId(), adminUser.getRole())
-                    .map(ResponseEntity::ok)
-                    .orElse(ResponseEntity.notFound().build());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.ok(inboxService.getAdminInbox(Cursor.decode(cursor), limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    // Recompute thread summaries from the messages table (e.g. after a manual data fix)
+    @PostMapping("/messages/inbox/rebuild")
+    public ResponseEntity<?> rebuildInbox() {
+        return ResponseEntity.ok(Map.of("threads", inboxService.rebuild()));
+    }
+
+    // Renumber thread_root_id/thread_seq from the parent links (e.g. after rows were inserted by hand)
+    @PostMapping("/messages/threads/backfill")
+    public ResponseEntity<?> backfillThreadPositions() {
+        return ResponseEntity.ok(Map.of("updated", threadPositionBackfill.backfill()));
+    }
+
+    // A whole thread by its initial message id; archived threads only with includeArchived=true
+    @GetMapping("/messages/threads/{rootMessageId}")
+    public ResponseEntity<?> getMessageThread(@PathVariable Long rootMessageId,
+                                              @RequestParam(defaultValue = "false") boolean includeArchived) {
+        return messageService.getMessageThread(rootMessageId, includeArchived)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Archive inactive threads now instead of waiting for the nightly run
+    @PostMapping("/messages/archive")
+    public ResponseEntity<?> archiveMessages() {
+        try {
+            return ResponseEntity.ok(Map.of("threads", messageArchiveService.archive()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
 
+    @PutMapping("/messages/{id}/read")
+    public ResponseEntity<?> markMessageAsRead(AuthPrincipal admin, @PathVariable Long id) {
+        return messageService.markMessageAsRead(id, admin.role(), admin.residentId())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Mark a whole thread or a set of resident messages read in one statement
+    @PutMapping("/messages/read")
+    public ResponseEntity<?> markMessagesAsRead(AuthPrincipal admin, @RequestBody MarkReadRequest markReadRequest) {
+        int count = readReceiptService.markRead(markReadRequest.threadId(), markReadRequest.messageIds(), admin.role(), admin.residentId());
+        if (readReceiptService.isWriteBehind() && markReadRequest.threadId() == null) {
+            return ResponseEntity.accepted().body(Map.of("queued", count));
+        }
+        return ResponseEntity.ok(Map.of("updated", count));
+    }
+
     @PostMapping("/messages/send-to-resident")
-    public ResponseEntity<?> sendAdminMessageToResident(@RequestHeader("Authorization") String token,
+    public ResponseEntity<?> sendAdminMessageToResident(AuthPrincipal admin,
                                                         @RequestBody Map<String, String> messageRequest) {
         try {
-            User adminUser = authorizeAdmin(token);
             String flatNumber = messageRequest.get("flatNumber");
             String subject = messageRequest.get("subject");
             String content = messageRequest.get("content");
 
-            Optional<Resident> residentOptional = residentRepository.findByFlatNumber(flatNumber);
+            Optional<ResidentView> residentOptional = residentCache.findByFlatNumber(flatNumber);
             if (residentOptional.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Resident with flat number " + flatNumber + " not found.");
             }
-            Long recipientResidentId = residentOptional.get().getId();
+            Long recipientResidentId = residentOptional.get().id();
 
-            Message createdMessage = messageService.sendAdminMessageToResident(adminUser.getId(), recipientResidentId, subject, content);
+            MessageView createdMessage = messageService.sendAdminMessageToResident(admin.userId(), recipientResidentId, subject, content);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdMessage);
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    // Same message to all residents, a block (flat-number prefix) or an explicit list of flats
+    @PostMapping("/messages/broadcast")
+    public ResponseEntity<?> broadcastMessage(AuthPrincipal admin, @RequestBody BroadcastRequest broadcastRequest) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(broadcastService.broadcast(admin.userId(), broadcastRequest));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.mySociety.controller;
 
-import com.mySociety.model.User;
+import com.mySociety.security.AuthPrincipal;
+import com.mySociety.security.HashingRejectedException;
+import com.mySociety.security.Public;
 import com.mySociety.service.AuthService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -15,6 +18,7 @@ import java.util.Map;
 
 @RestController
 @RequestMapping("/api/auth")
+@Public // Login is how a token is obtained; logout checks the token it is given itself
 public class AuthController {
 
     private final AuthService authService;
@@ -28,17 +32,25 @@ public class AuthController {
         String username = loginRequest.get("username");
         String password = loginRequest.get("password");
 
-        String token = authService.login(username, password);
+        String token;
+        try {
+            token = authService.login(username, password);
+        } catch (HashingRejectedException e) {
+            // Hashing pool is saturated; tell the client to back off rather than queueing the request
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(e.getMessage());
+        }
 
         if (token != null) {
-            User user = authService.validateToken(token); // Get user details for response
+            AuthPrincipal principal = authService.validateToken(token); // Get user details for response
             Map<String, Object> response = new HashMap<>();
             response.put("token", token);
-            response.put("role", user.getRole());
-            response.put("userId", user.getId());
-            if (user.getResident() != null) {
-                response.put("residentId", user.getResident().getId());
-                response.put("flatNumber", user.getResident().getFlatNumber());
+            response.put("role", principal.role());
+            response.put("userId", principal.userId());
+            if (principal.residentId() != null) {
+                response.put("residentId", principal.residentId());
+                response.put("flatNumber", principal.flatNumber());
             }
             return ResponseEntity.ok(response);
         } else {
@@ -54,12 +66,4 @@ public class AuthController {
         }
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid token");
     }
-
-    // Helper method for token validation in other controllers
-    private User validateAndGetUser(String token) {
-        if (token != null && token.startsWith("Bearer ")) {
-            return authService.validateToken(token.substring(7));
-        }
-        return null;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.mySociety.controller;
+
+import com.mySociety.security.AuthPrincipal;
+import com.mySociety.security.RequiresRole;
+import com.mySociety.service.AuthService;
+import com.mySociety.service.EventStreamService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+// One stream per logged-in client. Admins receive replies from residents and every complaint
+// status change; residents receive admin messages and changes to their own complaints.
+// The token is read from the Authorization header like every other endpoint, so browsers
+// should open the stream with fetch rather than EventSource (which cannot send headers).
+// The stream is closed when that token is logged out, expires or is revoked.
+@RestController
+@RequestMapping("/api/events")
+@RequiresRole
+public class EventStreamController {
+
+    private final EventStreamService eventStreamService;
+    private final AuthService authService;
+
+    public EventStreamController(EventStreamService eventStreamService, AuthService authService) {
+        this.eventStreamService = eventStreamService;
+        this.authService = authService;
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> stream(AuthPrincipal principal, @RequestHeader("Authorization") String authorization) {
+        // A resident account whose resident is gone would otherwise subscribe to no one's channel
+        if (!principal.isAdmin() && principal.residentId() == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body("Access Denied: no resident is linked to this account.");
+        }
+        String token = authorization.substring("Bearer ".length()); // Format already checked by AuthInterceptor
+        SseEmitter emitter = eventStreamService.subscribe(principal, token, () -> authService.isTokenActive(token));
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "30")
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body("Too many open event streams, try again later.");
+        }
+        return ResponseEntity.ok(emitter);
+    }
+}
@@ -0,0 +1,56 @@
+package com.mySociety.controller;
+
+import com.mySociety.security.RequiresRole;
+import com.mySociety.service.ExportService;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+
+// Downloads of whole tables. The body is written on an async thread while rows are read, so the
+// response starts immediately and its size is unbounded; see ExportService.
+@RestController
+@RequestMapping("/api/admin/export")
+@RequiresRole("ADMIN")
+public class ExportController {
+
+    private final ExportService exportService;
+
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    // dataset is residents, complaints or messages; format is csv (default) or ndjson
+    @GetMapping("/{dataset}")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable String dataset,
+                                                        @RequestParam(defaultValue = "csv") String format,
+                                                        @RequestParam(defaultValue = "true") boolean gzip) {
+        ExportService.Export export;
+        try {
+            export = exportService.open(dataset, format, gzip);
+        } catch (IllegalArgumentException e) {
+            return plainText(ResponseEntity.status(HttpStatus.BAD_REQUEST), e.getMessage());
+        } catch (IllegalStateException e) {
+            return plainText(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "30"), e.getMessage());
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(export.filename()).build().toString())
+                .contentType(MediaType.parseMediaType(export.contentType()))
+                .body(export::writeTo);
+    }
+
+    // A streaming endpoint's error responses have to be streamed too
+    private static ResponseEntity<StreamingResponseBody> plainText(ResponseEntity.BodyBuilder response, String message) {
+        return response.contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,33 @@
+package com.mySociety.controller;
+
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.security.RequiresRole;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/metrics")
+@RequiresRole("ADMIN")
+public class MetricsController {
+
+    private final List<MetricsSource> metricsSources;
+
+    public MetricsController(List<MetricsSource> metricsSources) {
+        this.metricsSources = metricsSources;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (MetricsSource source : metricsSources) {
+            metrics.put(source.metricsName(), source.metricsSnapshot());
+        }
+        return ResponseEntity.ok(metrics);
+    }
+}
@@ -1,196 +1,213 @@
 package com.mySociety.controller;
 
-import com.mySociety.model.Announcement;
+import com.mySociety.dto.ComplaintView;
+import com.mySociety.dto.Cursor;
+import com.mySociety.dto.MaintenancePaymentRequest;
+import com.mySociety.dto.MarkReadRequest;
+import com.mySociety.dto.MessageView;
 import com.mySociety.model.Complaint;
-import com.mySociety.model.Event;
 import com.mySociety.model.Message;
-import com.mySociety.model.Resident;
-import com.mySociety.model.User;
-import com.mySociety.service.AuthService;
+import com.mySociety.security.AuthPrincipal;
+import com.mySociety.security.RequiresRole;
 import com.mySociety.service.AnnouncementService;
 import com.mySociety.service.ComplaintService;
 import com.mySociety.service.EventService;
+import com.mySociety.service.InboxService;
+import com.mySociety.service.MaintenanceLedgerService;
 import com.mySociety.service.MessageService;
+import com.mySociety.service.ReadReceiptService;
 import com.mySociety.service.ResidentService;
+import com.mySociety.service.UnreadCounterService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
+// Access rules are declared per handler with @RequiresRole and enforced by AuthInterceptor.
+// ownResident = "residentId" restricts a route to the resident named in its path.
 @RestController
 @RequestMapping("/api/resident")
 public class ResidentController {
 
-    private final AuthService authService;
     private final ResidentService residentService;
     private final ComplaintService complaintService;
     private final AnnouncementService announcementService;
     private final EventService eventService;
     private final MessageService messageService;
+    private final InboxService inboxService;
+    private final UnreadCounterService unreadCounterService;
+    private final ReadReceiptService readReceiptService;
+    private final MaintenanceLedgerService maintenanceLedgerService;
 
-    public ResidentController(AuthService authService, ResidentService residentService,
+    public ResidentController(ResidentService residentService,
                               ComplaintService complaintService, AnnouncementService announcementService,
-                              EventService eventService, MessageService messageService) {
-        this.authService = authService;
+                              EventService eventService, MessageService messageService,
+                              InboxService inboxService, UnreadCounterService unreadCounterService,
+                              ReadReceiptService readReceiptService,
+                              MaintenanceLedgerService maintenanceLedgerService) {
         this.residentService = residentService;
         this.complaintService = complaintService;
         this.announcementService = announcementService;
         this.eventService = eventService;
         this.messageService = messageService;
-    }
-
-    // --- Helper for authorization ---
-    private User authorizeResident(String token, Long residentId) {
-        User user = authService.validateToken(token.substring(7));
-        if (user == null || !user.getRole().equals("USER") || user.getResident() == null || !user.getResident().getId().equals(residentId)) {
-            throw new SecurityException("Access Denied: Resident role required or unauthorized access.");
-        }
-        return user;
+        this.inboxService = inboxService;
+        this.unreadCounterService = unreadCounterService;
+        this.readReceiptService = readReceiptService;
+        this.maintenanceLedgerService = maintenanceLedgerService;
     }
 
     // --- Resident's own details ---
     @GetMapping("/{residentId}")
-    public ResponseEntity<?> getResidentDetails(@RequestHeader("Authorization") String token,
-                                                @PathVariable Long residentId) {
-        try {
-            authorizeResident(token, residentId);
-            return residentService.getResidentById(residentId)
-                    .map(ResponseEntity::ok)
-                    .orElse(ResponseEntity.notFound().build());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-        }
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> getResidentDetails(@PathVariable Long residentId) {
+        return residentService.getResidentById(residentId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
-    // --- Maintenance (can just mark as paid/unpaid in DB - simplified) ---
+    // --- Maintenance dues ---
+    @GetMapping("/{residentId}/maintenance/invoices")
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> getMaintenanceInvoices(@PathVariable Long residentId) {
+        return ResponseEntity.ok(maintenanceLedgerService.listInvoices(residentId));
+    }
+
+    // Reports a payment the resident has made; without a body, the oldest outstanding invoice in full.
+    // It is only recorded as pending: the invoice stays open until an admin confirms the payment.
     @PutMapping("/{residentId}/maintenance/markPaid")
-    public ResponseEntity<?> markMaintenancePaid(@RequestHeader("Authorization") String token,
-                                                 @PathVariable Long residentId) {
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> markMaintenancePaid(AuthPrincipal principal, @PathVariable Long residentId,
+                                                 @RequestBody(required = false) MaintenancePaymentRequest payment) {
+        MaintenancePaymentRequest request = payment != null ? payment : new MaintenancePaymentRequest(null, null, null);
         try {
-            authorizeResident(token, residentId);
-            // This is a placeholder. In a real app, you'd update a 'paid' status in the DB and re-fetch.
-            return ResponseEntity.ok("Maintenance marked as paid (simulated).");
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(maintenanceLedgerService.reportPayment(residentId,
+                    request.invoiceId(), request.amount(), request.reference(), principal.userId()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
 
-
     // --- Complaint Submission & Viewing ---
     @PostMapping("/{residentId}/complaints")
-    public ResponseEntity<?> submitComplaint(@RequestHeader("Authorization") String token,
-                                             @PathVariable Long residentId,
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> submitComplaint(@PathVariable Long residentId,
                                              @RequestBody Complaint complaint) {
         try {
-            authorizeResident(token, residentId);
-            Complaint createdComplaint = complaintService.submitComplaint(residentId, complaint);
+            ComplaintView createdComplaint = complaintService.submitComplaint(residentId, complaint);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdComplaint);
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
 
     @GetMapping("/{residentId}/complaints")
-    public ResponseEntity<?> getResidentComplaints(@RequestHeader("Authorization") String token,
-                                                   @PathVariable Long residentId) {
-        try {
-            authorizeResident(token, residentId);
-            return ResponseEntity.ok(complaintService.getComplaintsByResident(residentId));
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-        }
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> getResidentComplaints(@PathVariable Long residentId) {
+        return ResponseEntity.ok(complaintService.getComplaintsByResident(residentId));
     }
 
     // --- Read Announcements ---
     @GetMapping("/announcements")
-    public ResponseEntity<?> getAllAnnouncements(@RequestHeader("Authorization") String token) {
-        try {
-            User user = authService.validateToken(token.substring(7));
-            if (user == null || !user.getRole().equals("USER")) {
-                throw new SecurityException("Access Denied: Resident role required.");
-            }
-            return ResponseEntity.ok(announcementService.getAllAnnouncements());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-        }
+    @RequiresRole("USER")
+    public ResponseEntity<?> getAllAnnouncements() {
+        return ResponseEntity.ok(announcementService.getAllAnnouncements());
     }
 
     // --- See Upcoming Events ---
     @GetMapping("/events")
-    public ResponseEntity<?> getAllEvents(@RequestHeader("Authorization") String token) {
-        try {
-            User user = authService.validateToken(token.substring(7));
-            if (user == null || !user.getRole().equals("USER")) {
-                throw new SecurityException("Access Denied: Resident role required.");
-            }
-            return ResponseEntity.ok(eventService.getAllEvents());
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-        }
+    @RequiresRole("USER")
+    public ResponseEntity<?> getAllEvents() {
+        return ResponseEntity.ok(eventService.getAllEvents());
     }
 
     // --- Message Management (Resident replies to admin messages, views conversations) ---
     @PostMapping("/{residentId}/messages/reply")
-    public ResponseEntity<?> replyToAdminMessage(@RequestHeader("Authorization") String token,
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> replyToAdminMessage(AuthPrincipal principal,
                                                  @PathVariable Long residentId,
                                                  @RequestBody Map<String, String> replyRequest) {
         try {
-            User residentUser = authorizeResident(token, residentId);
             Long parentMessageId = Long.parseLong(replyRequest.get("parentMessageId"));
             String content = replyRequest.get("content");
 
-            Message reply = messageService.replyToMessage(residentUser.getId(), parentMessageId, content);
+            Message reply = messageService.replyToMessage(principal.userId(), parentMessageId, content);
             return ResponseEntity.status(HttpStatus.CREATED).body(reply);
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        } 
+        }
     }
 
     @GetMapping("/{residentId}/messages/conversations")
-    public ResponseEntity<?> getResidentConversations(@RequestHeader("Authorization") String token,
-                                                      @PathVariable Long residentId) {
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> getResidentConversations(AuthPrincipal principal,
+                                                      @PathVariable Long residentId,
+                                                      @RequestParam(defaultValue = "false") boolean includeArchived) {
+        List<List<MessageView>> conversations = messageService.getConversationsForResident(residentId, principal.userId(), includeArchived);
+        return ResponseEntity.ok(conversations);
+    }
+
+    // Keyset-paginated conversations, most recently active first
+    @GetMapping("/{residentId}/messages/conversations/page")
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> getResidentConversationPage(@PathVariable Long residentId,
+                                                         @RequestParam(required = false) String cursor,
+                                                         @RequestParam(required = false) Integer limit) {
         try {
-            User residentUser = authorizeResident(token, residentId);
-            List<List<Message>> conversations = messageService.getConversationsForResident(residentId, residentUser.getId());
-            return ResponseEntity.ok(conversations);
-        } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            return ResponseEntity.ok(messageService.getConversationPage(residentId, Cursor.decode(cursor), limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    // Unread badge, served from memory
+    @GetMapping("/{residentId}/messages/unread-count")
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> getUnreadCount(@PathVariable Long residentId) {
+        return ResponseEntity.ok(Map.of("unread", unreadCounterService.getResidentUnreadCount(residentId)));
+    }
+
+    // Thread summaries for the resident's inbox, latest first, without loading the threads
+    @GetMapping("/{residentId}/messages/inbox")
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> getResidentInbox(@PathVariable Long residentId,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(inboxService.getResidentInbox(residentId, Cursor.decode(cursor), limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    // Mark a whole thread or a set of messages read in one statement; only admin messages
+    // addressed to this resident are affected
+    @PutMapping("/{residentId}/messages/read")
+    @RequiresRole(value = "USER", ownResident = "residentId")
+    public ResponseEntity<?> markMessagesAsRead(@PathVariable Long residentId, AuthPrincipal principal,
+                                                @RequestBody MarkReadRequest markReadRequest) {
+        int count = readReceiptService.markRead(markReadRequest.threadId(), markReadRequest.messageIds(), principal.role(), residentId);
+        if (readReceiptService.isWriteBehind() && markReadRequest.threadId() == null) {
+            return ResponseEntity.accepted().body(Map.of("queued", count));
         }
+        return ResponseEntity.ok(Map.of("updated", count));
     }
 
+    // Residents may only mark messages addressed to them; MessageService checks ownership
+    // while it has the message loaded, so the controller does no lookups of its own
     @PutMapping("/messages/{messageId}/read")
-    public ResponseEntity<?> markMessageAsRead(@RequestHeader("Authorization") String token,
+    @RequiresRole
+    public ResponseEntity<?> markMessageAsRead(AuthPrincipal principal,
                                                @PathVariable Long messageId) {
         try {
-            User user = authService.validateToken(token.substring(7));
-            if (user == null) {
-                throw new SecurityException("Authentication required.");
-            }
-            // If user is resident, ensure they are marking their own message
-            if (user.getRole().equals("USER") && user.getResident() != null) {
-                Optional<Message> messageOptional = messageService.getMessageById(messageId);
-                if (messageOptional.isPresent()) {
-                    Message message = messageOptional.get();
-                    if (message.getRecipientResident() == null || !message.getRecipientResident().getId().equals(user.getResident().getId())) {
-                        throw new SecurityException("Unauthorized to mark this message as read.");
-                    }
-                } else {
-                    return ResponseEntity.notFound().build();
-                }
-            }
-
-            return messageService.markMessageAsRead(messageId, user.getId(), user.getRole())
+            return messageService.markMessageAsRead(messageId, principal.role(), principal.residentId())
                     .map(ResponseEntity::ok)
                     .orElse(ResponseEntity.notFound().build());
         } catch (SecurityException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+package com.mySociety.controller;
+
+import com.mySociety.security.AuthPrincipal;
+import com.mySociety.security.RequiresRole;
+import com.mySociety.service.SearchService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+// Ranked full-text search; SearchService limits residents to their own flat's documents
+@RestController
+@RequestMapping("/api/search")
+@RequiresRole
+public class SearchController {
+
+    private final SearchService searchService;
+
+    public SearchController(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    // type is MESSAGE, COMPLAINT or ANNOUNCEMENT
+    @GetMapping
+    public ResponseEntity<?> search(AuthPrincipal principal,
+                                    @RequestParam String q,
+                                    @RequestParam(required = false) String type,
+                                    @RequestParam(required = false) Long residentId,
+                                    @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(searchService.search(principal, q, type, residentId, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Unknown type: " + type);
+        }
+    }
+
+    @PostMapping("/rebuild")
+    @RequiresRole("ADMIN")
+    public ResponseEntity<?> rebuild() {
+        try {
+            return ResponseEntity.ok(Map.of("documents", searchService.rebuild()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+}
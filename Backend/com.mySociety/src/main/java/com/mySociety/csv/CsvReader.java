@@ -0,0 +1,99 @@
+package com.mySociety.csv;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streaming RFC 4180 reader: one record per call, so a file of any size is read in constant memory.
+// Fields may be quoted; a quoted field can contain commas, line breaks and doubled quotes ("").
+// Records end with LF or CRLF. A leading byte order mark is skipped.
+public class CsvReader implements Closeable {
+
+    private static final int NONE = -2;
+
+    private final BufferedReader reader;
+    private int pushedBack = NONE;
+    private int line = 1;
+    private int recordLine;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+    }
+
+    // The next record's fields, or null at the end of input. Throws IllegalArgumentException for a
+    // quoted field that is never closed; nothing after it can be read reliably.
+    public List<String> readRecord() throws IOException {
+        int c = read();
+        if (line == 1 && recordLine == 0 && c == '\uFEFF') {
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Unterminated quoted field starting on line " + recordLine + ".");
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next != '"') {
+                        inQuotes = false;
+                        c = next;
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    line++;
+                }
+                field.append((char) c);
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.isEmpty()) {
+                inQuotes = true;
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        pushedBack = next;
+                    }
+                }
+                if (c != -1) {
+                    line++;
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // Line on which the last record returned by readRecord() started
+    public int recordLine() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != NONE) {
+            int c = pushedBack;
+            pushedBack = NONE;
+            return c;
+        }
+        return reader.read();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,12 @@
+package com.mySociety.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Admin dashboard totals. outstandingDues is what is left to pay on the openInvoices (UNPAID or
+// PARTIAL); unreadMessages counts unread resident messages in the admin inbox; upcomingEvents
+// counts events from today on. reconciledAt is when the counters were last recounted in full.
+public record AdminSummary(long residents, long openInvoices, BigDecimal outstandingDues,
+                           Map<String, Long> complaintsByStatus, long unreadMessages, long upcomingEvents,
+                           LocalDateTime reconciledAt) {}
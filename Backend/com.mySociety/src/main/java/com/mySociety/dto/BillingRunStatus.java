@@ -0,0 +1,9 @@
+package com.mySociety.dto;
+
+import java.time.LocalDateTime;
+
+// Progress of a maintenance billing run. state is RUNNING, COMPLETED or FAILED; chunksFailed
+// counts chunks that could not be written (their residents stay unbilled until the next run).
+public record BillingRunStatus(String period, String state, long residentsScanned, long invoicesCreated,
+                               long alreadyBilled, long withoutCharge, int chunksCompleted, int chunksFailed,
+                               LocalDateTime startedAt, LocalDateTime finishedAt, long elapsedMillis, String error) {}
@@ -0,0 +1,7 @@
+package com.mySociety.dto;
+
+import java.util.List;
+
+// Body of POST /api/admin/messages/broadcast.
+// target is ALL, PREFIX (uses flatPrefix) or LIST (uses flatNumbers).
+public record BroadcastRequest(String target, String flatPrefix, List<String> flatNumbers, String subject, String content) {}
@@ -0,0 +1,7 @@
+package com.mySociety.dto;
+
+import java.util.List;
+
+// Summary of a broadcast; unknownFlatNumbers lists requested flats that matched no resident
+public record BroadcastResult(int recipients, int messagesInserted, int chunks, long elapsedMillis,
+                              List<String> unknownFlatNumbers) {}
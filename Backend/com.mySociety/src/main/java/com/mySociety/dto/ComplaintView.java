@@ -0,0 +1,11 @@
+package com.mySociety.dto;
+
+// Row of the complaint lists: the complaint plus its resident's name and flat, read in one joined query
+public record ComplaintView(Long id, String subject, String description, String status, ResidentRef resident) {
+
+    // Used by the JPQL constructor expressions in ComplaintRepository
+    public ComplaintView(Long id, String subject, String description, String status,
+                         Long residentId, String residentName, String residentFlatNumber) {
+        this(id, subject, description, status, ResidentRef.of(residentId, residentName, residentFlatNumber));
+    }
+}
@@ -0,0 +1,7 @@
+package com.mySociety.dto;
+
+import java.math.BigDecimal;
+
+// Body of the maintenance payment endpoint; every field is optional. Without invoiceId the
+// oldest outstanding invoice is paid, and without amount whatever is left on it.
+public record MaintenancePaymentRequest(Long invoiceId, BigDecimal amount, String reference) {}
@@ -0,0 +1,6 @@
+package com.mySociety.dto;
+
+import java.util.List;
+
+// Body of the bulk mark-as-read endpoints: either a whole thread or an explicit set of messages
+public record MarkReadRequest(Long threadId, List<Long> messageIds) {}
@@ -0,0 +1,35 @@
+package com.mySociety.dto;
+
+import com.mySociety.model.Message;
+import com.mySociety.model.Resident;
+
+import java.time.LocalDateTime;
+
+// Row of the message lists and conversations. The parent is referenced by id only, so a reply
+// no longer serializes its whole chain of parent messages.
+public record MessageView(Long id, Long senderUserId, String senderRole, ResidentRef recipientResident,
+                          Long parentMessageId, Long threadRootId, Integer threadSeq, String subject,
+                          String content, String status, LocalDateTime createdAt, LocalDateTime updatedAt) {
+
+    // Used by the JPQL constructor expressions in MessageRepository
+    public MessageView(Long id, Long senderUserId, String senderRole, Long recipientId, String recipientName,
+                       String recipientFlatNumber, Long parentMessageId, Long threadRootId, Integer threadSeq,
+                       String subject, String content, String status, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, senderUserId, senderRole, ResidentRef.of(recipientId, recipientName, recipientFlatNumber),
+                parentMessageId, threadRootId, threadSeq, subject, content, status, createdAt, updatedAt);
+    }
+
+    // For entities already loaded with their recipient; reading the parent's id does not load the parent
+    public static MessageView of(Message message) {
+        Resident recipient = message.getRecipientResident();
+        return of(message, recipient == null ? null : new ResidentRef(recipient.getId(), recipient.getName(), recipient.getFlatNumber()));
+    }
+
+    // For a message whose recipient columns are already at hand, without initializing the recipient
+    public static MessageView of(Message message, ResidentRef recipient) {
+        return new MessageView(message.getId(), message.getSenderUserId(), message.getSenderRole(), recipient,
+                message.getParentMessage() == null ? null : message.getParentMessage().getId(),
+                message.getThreadRootId(), message.getThreadSeq(), message.getSubject(), message.getContent(),
+                message.getStatus(), message.getCreatedAt(), message.getUpdatedAt());
+    }
+}
@@ -0,0 +1,18 @@
+package com.mySociety.dto;
+
+// Page sizes shared by every keyset-paginated listing
+public final class PageSizes {
+
+    public static final int DEFAULT = 50;
+    public static final int MAX = 200;
+
+    private PageSizes() {}
+
+    // A missing or non-positive limit gets the default; larger ones are capped at MAX
+    public static int clamp(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT;
+        }
+        return Math.min(limit, MAX);
+    }
+}
@@ -0,0 +1,33 @@
+package com.mySociety.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Keyset position of the last row on a resident directory page: the value of the sort column
+// (null when the column was empty) and the id that breaks ties. The sort it was issued for is
+// part of the token so it cannot be replayed against a different ordering.
+public record ResidentCursor(String sort, String value, Long id) {
+
+    public String encode() {
+        String raw = sort + "|" + id + "|" + (value == null ? "~" : "=" + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns null for a missing token; throws IllegalArgumentException for a malformed one
+    public static ResidentCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            String value = parts[2].startsWith("=") ? parts[2].substring(1) : null;
+            if (value == null && !parts[2].equals("~")) {
+                throw new IllegalArgumentException();
+            }
+            return new ResidentCursor(parts[0], value, Long.valueOf(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+    }
+}
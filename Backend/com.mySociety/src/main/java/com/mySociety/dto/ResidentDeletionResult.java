@@ -0,0 +1,21 @@
+package com.mySociety.dto;
+
+import java.time.LocalDateTime;
+
+// Outcome of deleting a resident and everything that belongs to them. state is QUEUED or RUNNING
+// for an asynchronous deletion still in progress, then COMPLETED or FAILED; the row counts are
+// filled in once the deletion has committed.
+public record ResidentDeletionResult(Long residentId, String state, int users, int complaints, int messages,
+                                     int threads, int archivedThreads, int invoices, int payments,
+                                     LocalDateTime requestedAt, LocalDateTime finishedAt, long elapsedMillis,
+                                     String error) {
+
+    public static ResidentDeletionResult pending(Long residentId, String state, LocalDateTime requestedAt) {
+        return new ResidentDeletionResult(residentId, state, 0, 0, 0, 0, 0, 0, 0, requestedAt, null, 0, null);
+    }
+
+    public static ResidentDeletionResult failed(Long residentId, LocalDateTime requestedAt, long elapsedMillis, String error) {
+        return new ResidentDeletionResult(residentId, "FAILED", 0, 0, 0, 0, 0, 0, 0, requestedAt, LocalDateTime.now(),
+                elapsedMillis, error);
+    }
+}
@@ -0,0 +1,7 @@
+package com.mySociety.dto;
+
+import java.util.List;
+
+// One page of the resident directory. nextCursor is null on the last page; approximateTotal
+// counts every resident matching the filters and may lag recent changes by the count cache TTL.
+public record ResidentDirectoryPage(List<ResidentView> items, String nextCursor, long approximateTotal) {}
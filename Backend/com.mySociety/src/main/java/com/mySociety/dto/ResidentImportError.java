@@ -0,0 +1,4 @@
+package com.mySociety.dto;
+
+// A rejected import row; line is the row's line number in the uploaded file
+public record ResidentImportError(int line, String flatNumber, String message) {}
@@ -0,0 +1,8 @@
+package com.mySociety.dto;
+
+import java.util.List;
+
+// Outcome of a bulk resident import. errors holds the first rejected rows only;
+// errorsTruncated is true when more rows failed than are listed.
+public record ResidentImportResult(int rowsRead, int imported, int failed, boolean dryRun, long elapsedMillis,
+                                   List<ResidentImportError> errors, boolean errorsTruncated) {}
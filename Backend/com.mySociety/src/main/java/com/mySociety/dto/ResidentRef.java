@@ -0,0 +1,10 @@
+package com.mySociety.dto;
+
+// The few resident columns list views show next to a complaint or message
+public record ResidentRef(Long id, String name, String flatNumber) {
+
+    // Null for a missing (outer-joined) resident
+    static ResidentRef of(Long id, String name, String flatNumber) {
+        return id == null ? null : new ResidentRef(id, name, flatNumber);
+    }
+}
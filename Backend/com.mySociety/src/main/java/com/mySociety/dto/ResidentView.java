@@ -0,0 +1,13 @@
+package com.mySociety.dto;
+
+import java.math.BigDecimal;
+
+// Row of the admin resident list, selected column by column instead of as a managed entity
+public record ResidentView(Long id, String name, String email, String phone, String flatNumber,
+                           BigDecimal maintenanceCharge) {
+
+    // The columns shown next to a complaint or message
+    public ResidentRef ref() {
+        return new ResidentRef(id, name, flatNumber);
+    }
+}
@@ -0,0 +1,14 @@
+package com.mySociety.metrics;
+
+import java.util.Map;
+
+// Implemented by components that keep in-process counters.
+// MetricsController collects every bean of this type and serves the snapshots under /api/admin/metrics.
+public interface MetricsSource {
+
+    // Key used for this source in the metrics response, e.g. "sessions"
+    String metricsName();
+
+    // Point-in-time copy of the counters; must be cheap and safe to call from any thread
+    Map<String, Object> metricsSnapshot();
+}
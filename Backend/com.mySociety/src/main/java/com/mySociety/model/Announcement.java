@@ -7,7 +7,9 @@ import java.time.LocalDate;
 @Table(name = "announcements")
 public class Announcement {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "announcement_ids")
+    @TableGenerator(name = "announcement_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "announcements", allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
     private String title;
     private String content;
@@ -0,0 +1,131 @@
+package com.mySociety.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+import java.time.LocalDateTime;
+
+// A whole inactive thread moved out of the messages table by MessageArchiveService.
+// The messages are kept as one gzip-compressed JSON array of MessageView rows, so reading an
+// archived thread back is a single primary-key lookup.
+@Entity
+@Table(name = "message_archive", indexes = {
+        @Index(name = "idx_message_archive_resident_last", columnList = "resident_id, last_message_at")
+})
+public class ArchivedThread implements Persistable<Long> {
+    @Id
+    @Column(name = "root_message_id")
+    private Long rootMessageId; // ID the initial message had in the messages table
+
+    @Column(name = "resident_id")
+    private Long residentId; // Resident the conversation was with
+
+    private String subject;
+
+    @Column(name = "last_message_at", nullable = false)
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "message_count", nullable = false)
+    private int messageCount;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+
+    @Lob
+    @Column(name = "payload", nullable = false)
+    @JsonIgnore
+    private byte[] payload; // gzip(JSON array of MessageView), in thread order
+
+    // The id is assigned (root message id), so tell Spring Data when to INSERT instead of merging
+    @Transient
+    private boolean isNew = true;
+
+    // Constructors
+    public ArchivedThread() {}
+
+    public ArchivedThread(Long rootMessageId, Long residentId, String subject, LocalDateTime lastMessageAt,
+                          int messageCount, byte[] payload) {
+        this.rootMessageId = rootMessageId;
+        this.residentId = residentId;
+        this.subject = subject;
+        this.lastMessageAt = lastMessageAt;
+        this.messageCount = messageCount;
+        this.payload = payload;
+        this.archivedAt = LocalDateTime.now();
+    }
+
+    @Override
+    @JsonIgnore
+    public Long getId() {
+        return rootMessageId;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    // Getters and Setters
+    public Long getRootMessageId() {
+        return rootMessageId;
+    }
+
+    public void setRootMessageId(Long rootMessageId) {
+        this.rootMessageId = rootMessageId;
+    }
+
+    public Long getResidentId() {
+        return residentId;
+    }
+
+    public void setResidentId(Long residentId) {
+        this.residentId = residentId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public LocalDateTime getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    public void setLastMessageAt(LocalDateTime lastMessageAt) {
+        this.lastMessageAt = lastMessageAt;
+    }
+
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    public void setMessageCount(int messageCount) {
+        this.messageCount = messageCount;
+    }
+
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+
+    public void setArchivedAt(LocalDateTime archivedAt) {
+        this.archivedAt = archivedAt;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+}
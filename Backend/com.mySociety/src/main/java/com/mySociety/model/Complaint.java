@@ -1,25 +1,36 @@
 package com.mySociety.model;
 
 import jakarta.persistence.*;
+import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "complaints")
+@Table(name = "complaints", indexes = {
+        @Index(name = "idx_complaints_created_id", columnList = "created_at, id") // Keyset paging
+})
 public class Complaint {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "complaint_ids")
+    @TableGenerator(name = "complaint_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "complaints", allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
     private String subject;
     private String description;
     private String status; // e.g., "PENDING", "RESOLVED"
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY) // Lists join it in explicitly; see ComplaintRepository
     @JoinColumn(name = "resident_id", nullable = false)
     private Resident resident;
 
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt; // Complaints filed before this column existed are set to the epoch at startup
+
     // Constructors
-    public Complaint() {}
+    public Complaint() {
+        this.createdAt = LocalDateTime.now();
+    }
 
     public Complaint(String subject, String description, String status, Resident resident) {
+        this();
         this.subject = subject;
         this.description = description;
         this.status = status;
@@ -66,4 +77,12 @@ public class Complaint {
     public void setResident(Resident resident) {
         this.resident = resident;
     }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
 }
\ No newline at end of file
@@ -7,7 +7,9 @@ import java.time.LocalDate;
 @Table(name = "events")
 public class Event {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "event_ids")
+    @TableGenerator(name = "event_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "events", allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
     private String title;
     private String description;
@@ -0,0 +1,15 @@
+package com.mySociety.model;
+
+// Shared settings for the pooled table-based id generators used by every entity.
+// IDENTITY columns force Hibernate to insert rows one at a time to learn each key; a pooled
+// generator reserves ALLOCATION_SIZE ids per round-trip to the id_generators table, so
+// inserts can be sent as JDBC batches. Works the same on MySQL and on embedded databases.
+public final class IdGenerators {
+
+    public static final String TABLE = "id_generators";
+    public static final String NAME_COLUMN = "sequence_name";
+    public static final String VALUE_COLUMN = "next_val";
+    public static final int ALLOCATION_SIZE = 50;
+
+    private IdGenerators() {}
+}
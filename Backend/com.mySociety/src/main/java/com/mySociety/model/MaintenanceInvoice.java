@@ -0,0 +1,134 @@
+package com.mySociety.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// One month's maintenance dues for one resident, created by MaintenanceBillingService.
+// (resident_id, period) is unique, so billing a period twice can never bill a flat twice.
+// amountPaid only moves through MaintenanceInvoiceRepository.applyPayment, a single guarded UPDATE.
+@Entity
+@Table(name = "maintenance_invoices",
+        uniqueConstraints = @UniqueConstraint(name = "uk_maintenance_invoices_resident_period", columnNames = {"resident_id", "period"}),
+        indexes = @Index(name = "idx_maintenance_invoices_period_status", columnList = "period, status"))
+public class MaintenanceInvoice {
+    public static final String UNPAID = "UNPAID";
+    public static final String PARTIAL = "PARTIAL";
+    public static final String PAID = "PAID";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "maintenance_invoice_ids")
+    @TableGenerator(name = "maintenance_invoice_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "maintenance_invoices", allocationSize = IdGenerators.ALLOCATION_SIZE)
+    private Long id;
+
+    @Column(name = "resident_id", nullable = false)
+    private Long residentId;
+
+    @Column(nullable = false, length = 7)
+    private String period; // Billing month as yyyy-MM
+
+    @Column(nullable = false)
+    private BigDecimal amount; // The resident's maintenance charge when the invoice was issued
+
+    @Column(name = "amount_paid", nullable = false)
+    private BigDecimal amountPaid = BigDecimal.ZERO;
+
+    @Column(nullable = false)
+    private String status; // UNPAID, PARTIAL or PAID
+
+    @Column(name = "issued_at", nullable = false)
+    private LocalDateTime issuedAt;
+
+    @Column(name = "due_date", nullable = false)
+    private LocalDate dueDate;
+
+    @Column(name = "paid_at")
+    private LocalDateTime paidAt; // When the last of the amount was paid
+
+    // Constructors
+    public MaintenanceInvoice() {}
+
+    public MaintenanceInvoice(Long residentId, String period, BigDecimal amount, LocalDateTime issuedAt, LocalDate dueDate) {
+        this.residentId = residentId;
+        this.period = period;
+        this.amount = amount;
+        this.status = UNPAID;
+        this.issuedAt = issuedAt;
+        this.dueDate = dueDate;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getResidentId() {
+        return residentId;
+    }
+
+    public void setResidentId(Long residentId) {
+        this.residentId = residentId;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(String period) {
+        this.period = period;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public BigDecimal getAmountPaid() {
+        return amountPaid;
+    }
+
+    public void setAmountPaid(BigDecimal amountPaid) {
+        this.amountPaid = amountPaid;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getIssuedAt() {
+        return issuedAt;
+    }
+
+    public void setIssuedAt(LocalDateTime issuedAt) {
+        this.issuedAt = issuedAt;
+    }
+
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    public void setDueDate(LocalDate dueDate) {
+        this.dueDate = dueDate;
+    }
+
+    public LocalDateTime getPaidAt() {
+        return paidAt;
+    }
+
+    public void setPaidAt(LocalDateTime paidAt) {
+        this.paidAt = paidAt;
+    }
+}
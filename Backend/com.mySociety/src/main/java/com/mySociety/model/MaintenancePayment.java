@@ -0,0 +1,119 @@
+package com.mySociety.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// A payment against a maintenance invoice. Payments recorded by an admin are written in the same
+// transaction as the invoice update; payments reported by a resident stay pending, and leave the
+// invoice alone, until an admin confirms them.
+@Entity
+@Table(name = "maintenance_payments", indexes = {
+        @Index(name = "idx_maintenance_payments_invoice", columnList = "invoice_id"),
+        @Index(name = "idx_maintenance_payments_resident", columnList = "resident_id")
+})
+public class MaintenancePayment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "maintenance_payment_ids")
+    @TableGenerator(name = "maintenance_payment_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "maintenance_payments", allocationSize = IdGenerators.ALLOCATION_SIZE)
+    private Long id;
+
+    @Column(name = "invoice_id", nullable = false)
+    private Long invoiceId;
+
+    @Column(name = "resident_id", nullable = false)
+    private Long residentId;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+
+    private String reference; // Optional receipt or transaction number
+
+    @Column(name = "recorded_by_user_id")
+    private Long recordedByUserId;
+
+    @Column(name = "paid_at", nullable = false)
+    private LocalDateTime paidAt;
+
+    @Column(nullable = false)
+    private boolean pending; // Reported by the resident and not yet applied to the invoice
+
+    // Constructors
+    public MaintenancePayment() {}
+
+    public MaintenancePayment(Long invoiceId, Long residentId, BigDecimal amount, String reference,
+                              Long recordedByUserId, LocalDateTime paidAt) {
+        this.invoiceId = invoiceId;
+        this.residentId = residentId;
+        this.amount = amount;
+        this.reference = reference;
+        this.recordedByUserId = recordedByUserId;
+        this.paidAt = paidAt;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getInvoiceId() {
+        return invoiceId;
+    }
+
+    public void setInvoiceId(Long invoiceId) {
+        this.invoiceId = invoiceId;
+    }
+
+    public Long getResidentId() {
+        return residentId;
+    }
+
+    public void setResidentId(Long residentId) {
+        this.residentId = residentId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public void setReference(String reference) {
+        this.reference = reference;
+    }
+
+    public Long getRecordedByUserId() {
+        return recordedByUserId;
+    }
+
+    public void setRecordedByUserId(Long recordedByUserId) {
+        this.recordedByUserId = recordedByUserId;
+    }
+
+    public LocalDateTime getPaidAt() {
+        return paidAt;
+    }
+
+    public void setPaidAt(LocalDateTime paidAt) {
+        this.paidAt = paidAt;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    public void setPending(boolean pending) {
+        this.pending = pending;
+    }
+}
@@ -1,13 +1,22 @@
 package com.mySociety.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import java.time.LocalDateTime; // Use LocalDateTime for more precise timestamps
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_created_id", columnList = "created_at, id"), // Keyset paging
+        @Index(name = "idx_messages_recipient_created", columnList = "recipient_resident_id, created_at"),
+        @Index(name = "idx_messages_thread_seq", columnList = "thread_root_id, thread_seq"), // Whole thread in order
+        @Index(name = "idx_messages_sender", columnList = "sender_user_id") // Resident deletion: threads without a recipient
+})
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"}) // Serialize lazy proxies as plain objects
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "message_ids")
+    @TableGenerator(name = "message_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "messages", allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
 
     @Column(name = "sender_user_id", nullable = false)
@@ -24,6 +33,12 @@ public class Message {
     @JoinColumn(name = "parent_message_id")
     private Message parentMessage; // For replies, links to the original message in the thread
 
+    @Column(name = "thread_root_id")
+    private Long threadRootId; // ID of the initial message of the thread at any depth; own ID for initial messages
+
+    @Column(name = "thread_seq")
+    private Integer threadSeq; // Position in the thread: 0 for the initial message, then 1, 2, ... in write order
+
     private String subject;
     private String content;
     private String status; // e.g., "UNREAD", "READ"
@@ -81,6 +96,22 @@ public class Message {
         this.parentMessage = parentMessage;
     }
 
+    public Long getThreadRootId() {
+        return threadRootId;
+    }
+
+    public void setThreadRootId(Long threadRootId) {
+        this.threadRootId = threadRootId;
+    }
+
+    public Integer getThreadSeq() {
+        return threadSeq;
+    }
+
+    public void setThreadSeq(Integer threadSeq) {
+        this.threadSeq = threadSeq;
+    }
+
     public String getSubject() {
         return subject;
     }
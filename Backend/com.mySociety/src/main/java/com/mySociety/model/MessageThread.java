@@ -0,0 +1,135 @@
+package com.mySociety.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+import java.time.LocalDateTime;
+
+// Denormalized per-thread summary used to list inboxes without rebuilding threads.
+// Kept in step with the messages table by InboxService inside the same transaction as each write.
+@Entity
+@Table(name = "message_threads", indexes = {
+        @Index(name = "idx_message_threads_resident_last", columnList = "resident_id, last_message_at"),
+        @Index(name = "idx_message_threads_last", columnList = "last_message_at")
+})
+public class MessageThread implements Persistable<Long> {
+    @Id
+    @Column(name = "root_message_id")
+    private Long rootMessageId; // ID of the initial message of the thread
+
+    @Column(name = "resident_id")
+    private Long residentId; // Resident the conversation is with
+
+    private String subject;
+
+    @Column(name = "last_message_at", nullable = false)
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "last_snippet")
+    private String lastSnippet;
+
+    @Column(name = "unread_for_resident", nullable = false)
+    private int unreadForResident; // UNREAD messages sent by the admin
+
+    @Column(name = "unread_for_admin", nullable = false)
+    private int unreadForAdmin; // UNREAD messages sent by the resident
+
+    @Column(name = "reply_count", nullable = false)
+    private int replyCount;
+
+    // The id is assigned (root message id), so tell Spring Data when to INSERT instead of merging
+    @Transient
+    private boolean isNew = true;
+
+    // Constructors
+    public MessageThread() {}
+
+    public MessageThread(Long rootMessageId, Long residentId, String subject) {
+        this.rootMessageId = rootMessageId;
+        this.residentId = residentId;
+        this.subject = subject;
+    }
+
+    @Override
+    @JsonIgnore
+    public Long getId() {
+        return rootMessageId;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    // Getters and Setters
+    public Long getRootMessageId() {
+        return rootMessageId;
+    }
+
+    public void setRootMessageId(Long rootMessageId) {
+        this.rootMessageId = rootMessageId;
+    }
+
+    public Long getResidentId() {
+        return residentId;
+    }
+
+    public void setResidentId(Long residentId) {
+        this.residentId = residentId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public LocalDateTime getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    public void setLastMessageAt(LocalDateTime lastMessageAt) {
+        this.lastMessageAt = lastMessageAt;
+    }
+
+    public String getLastSnippet() {
+        return lastSnippet;
+    }
+
+    public void setLastSnippet(String lastSnippet) {
+        this.lastSnippet = lastSnippet;
+    }
+
+    public int getUnreadForResident() {
+        return unreadForResident;
+    }
+
+    public void setUnreadForResident(int unreadForResident) {
+        this.unreadForResident = unreadForResident;
+    }
+
+    public int getUnreadForAdmin() {
+        return unreadForAdmin;
+    }
+
+    public void setUnreadForAdmin(int unreadForAdmin) {
+        this.unreadForAdmin = unreadForAdmin;
+    }
+
+    public int getReplyCount() {
+        return replyCount;
+    }
+
+    public void setReplyCount(int replyCount) {
+        this.replyCount = replyCount;
+    }
+}
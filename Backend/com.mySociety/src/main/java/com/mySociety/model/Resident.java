@@ -1,13 +1,20 @@
 package com.mySociety.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "residents")
+@Table(name = "residents", indexes = {
+        @Index(name = "idx_residents_name_id", columnList = "name, id"), // Directory: name prefix filter and sort
+        @Index(name = "idx_residents_charge_id", columnList = "maintenance_charge, id") // Directory: charge range and sort
+})
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"}) // Serialize lazy proxies as plain objects
 public class Resident {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "resident_ids")
+    @TableGenerator(name = "resident_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "residents", allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
     private String name;
     private String email;
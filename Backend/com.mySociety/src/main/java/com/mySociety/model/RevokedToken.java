@@ -0,0 +1,66 @@
+package com.mySociety.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+// A signed token revoked by logout. Every instance reads new rows into its local revocation
+// set (see SignedTokenService), so a logout on one instance reaches the others. Rows are
+// deleted once the token would have expired anyway.
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+        @Index(name = "idx_revoked_tokens_revoked_at", columnList = "revoked_at"), // Incremental sync
+        @Index(name = "idx_revoked_tokens_expires_at", columnList = "expires_at")  // Pruning
+})
+public class RevokedToken implements Persistable<String> {
+    @Id
+    @Column(name = "token_id", length = 32)
+    private String tokenId;
+
+    @Column(name = "expires_at", nullable = false)
+    private long expiresAt; // Epoch seconds, as in the token's claims
+
+    @Column(name = "revoked_at", nullable = false)
+    private long revokedAt; // Epoch milliseconds
+
+    // The id is assigned (the token's id), so tell Spring Data when to INSERT instead of merging
+    @Transient
+    private boolean isNew = true;
+
+    // Constructors
+    public RevokedToken() {}
+
+    public RevokedToken(String tokenId, long expiresAt, long revokedAt) {
+        this.tokenId = tokenId;
+        this.expiresAt = expiresAt;
+        this.revokedAt = revokedAt;
+    }
+
+    @Override
+    public String getId() {
+        return tokenId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    // Getters
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getRevokedAt() {
+        return revokedAt;
+    }
+}
@@ -6,10 +6,12 @@ import jakarta.persistence.*;
 @Table(name = "users")
 public class User {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_ids")
+    @TableGenerator(name = "user_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "users", allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
     private String username;
-    private String password; // IMPORTANT: In a real app, hash this password!
+    private String password; // BCrypt hash (legacy plaintext rows are rehashed on next login)
     private String role; // e.g., "ADMIN", "USER"
 
     @OneToOne(fetch = FetchType.LAZY)
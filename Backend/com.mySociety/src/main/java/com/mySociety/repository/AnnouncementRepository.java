@@ -1,7 +1,16 @@
 package com.mySociety.repository;
 
 import com.mySociety.model.Announcement;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface AnnouncementRepository extends JpaRepository<Announcement, Long> {
-}
\ No newline at end of file
+
+    // Search index rebuild: [id, title, content] rows in id order after a keyset cursor
+    @Query("SELECT a.id, a.title, a.content FROM Announcement a WHERE a.id > :afterId ORDER BY a.id")
+    List<Object[]> findSearchRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+}
@@ -0,0 +1,19 @@
+package com.mySociety.repository;
+
+import com.mySociety.model.ArchivedThread;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ArchivedThreadRepository extends JpaRepository<ArchivedThread, Long> {
+
+    // A resident's archived threads: range scan on (resident_id, last_message_at)
+    List<ArchivedThread> findByResidentIdOrderByLastMessageAtDesc(Long residentId);
+
+    @Modifying
+    @Query("DELETE FROM ArchivedThread t WHERE t.residentId = :residentId")
+    int deleteForResident(@Param("residentId") Long residentId);
+}
@@ -1,9 +1,52 @@
 package com.mySociety.repository;
 
+import com.mySociety.dto.ComplaintView;
 import com.mySociety.model.Complaint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
 import java.util.List;
+import java.util.Optional;
 
-public interface ComplaintRepository extends JpaRepository<Complaint, Long> {
+public interface ComplaintRepository extends JpaRepository<Complaint, Long>, JpaSpecificationExecutor<Complaint> {
+    // Complaint.resident is lazy; entity lookups that hand the resident on load it in the same select
+    @EntityGraph(attributePaths = "resident")
     List<Complaint> findByResidentId(Long residentId);
-}
\ No newline at end of file
+
+    @EntityGraph(attributePaths = "resident")
+    Optional<Complaint> findWithResidentById(Long id);
+
+    // Complaint lists with the resident's name and flat joined in, instead of one resident select per row
+    String VIEW_SELECT = "SELECT new com.mySociety.dto.ComplaintView(c.id, c.subject, c.description, c.status, " +
+                         "r.id, r.name, r.flatNumber) FROM Complaint c JOIN c.resident r ";
+
+    @Query(VIEW_SELECT + "ORDER BY c.id")
+    List<ComplaintView> findAllViews();
+
+    @Query(VIEW_SELECT + "WHERE r.id = :residentId ORDER BY c.id")
+    List<ComplaintView> findViewsByResidentId(@Param("residentId") Long residentId);
+
+    // Search index rebuild: [id, residentId, subject, description] rows in id order after a keyset cursor
+    @Query("SELECT c.id, c.resident.id, c.subject, c.description FROM Complaint c WHERE c.id > :afterId ORDER BY c.id")
+    List<Object[]> findSearchRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Dashboard recount: [status, count] rows
+    @Query("SELECT c.status, COUNT(c) FROM Complaint c GROUP BY c.status")
+    List<Object[]> countByStatus();
+
+    // Resident deletion: these use the resident_id foreign key index
+    @Query("SELECT c.id FROM Complaint c WHERE c.resident.id = :residentId")
+    List<Long> findIdsByResidentId(@Param("residentId") Long residentId);
+
+    @Query("SELECT c.status, COUNT(c) FROM Complaint c WHERE c.resident.id = :residentId GROUP BY c.status")
+    List<Object[]> countByStatusForResident(@Param("residentId") Long residentId);
+
+    @Modifying
+    @Query("DELETE FROM Complaint c WHERE c.resident.id = :residentId")
+    int deleteForResident(@Param("residentId") Long residentId);
+}
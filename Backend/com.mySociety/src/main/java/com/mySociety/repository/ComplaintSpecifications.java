@@ -0,0 +1,35 @@
+package com.mySociety.repository;
+
+import com.mySociety.dto.Cursor;
+import com.mySociety.model.Complaint;
+import jakarta.persistence.criteria.JoinType;
+import org.springframework.data.jpa.domain.Specification;
+
+// Composable filters for paged complaint listings; a null argument adds no condition
+public final class ComplaintSpecifications {
+
+    private ComplaintSpecifications() {}
+
+    public static Specification<Complaint> hasStatus(String status) {
+        return (root, query, cb) -> status == null ? null : cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Complaint> hasResident(Long residentId) {
+        return (root, query, cb) -> residentId == null ? null : cb.equal(root.get("resident").get("id"), residentId);
+    }
+
+    // Rows strictly after the cursor in (createdAt DESC, id DESC) order
+    public static Specification<Complaint> after(Cursor cursor) {
+        return (root, query, cb) -> cursor == null ? null : cb.or(
+                cb.lessThan(root.get("createdAt"), cursor.timestamp()),
+                cb.and(cb.equal(root.get("createdAt"), cursor.timestamp()), cb.lessThan(root.get("id"), cursor.id())));
+    }
+
+    // Load the resident ComplaintView shows in the same select
+    public static Specification<Complaint> fetchResident() {
+        return (root, query, cb) -> {
+            root.fetch("resident", JoinType.INNER);
+            return null;
+        };
+    }
+}
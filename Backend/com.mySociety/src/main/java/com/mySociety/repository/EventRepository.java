@@ -2,6 +2,15 @@ package com.mySociety.repository;
 
 import com.mySociety.model.Event;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
 
 public interface EventRepository extends JpaRepository<Event, Long> {
-}
\ No newline at end of file
+
+    // Dashboard recount: [eventDate, count] rows for events on or after the given day
+    @Query("SELECT e.eventDate, COUNT(e) FROM Event e WHERE e.eventDate >= :from GROUP BY e.eventDate")
+    List<Object[]> countByDateFrom(@Param("from") LocalDate from);
+}
@@ -0,0 +1,54 @@
+package com.mySociety.repository;
+
+import com.mySociety.model.MaintenanceInvoice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface MaintenanceInvoiceRepository extends JpaRepository<MaintenanceInvoice, Long> {
+
+    List<MaintenanceInvoice> findByResidentIdOrderByPeriodDesc(Long residentId);
+
+    Optional<MaintenanceInvoice> findByIdAndResidentId(Long id, Long residentId);
+
+    // Oldest invoice with anything left to pay
+    Optional<MaintenanceInvoice> findFirstByResidentIdAndStatusNotOrderByPeriodAsc(Long residentId, String status);
+
+    // Billing: which residents of a chunk already have an invoice for the period
+    @Query("SELECT i.residentId FROM MaintenanceInvoice i WHERE i.period = :period AND i.residentId IN :residentIds")
+    List<Long> findBilledResidentIds(@Param("period") String period, @Param("residentIds") Collection<Long> residentIds);
+
+    long countByPeriod(String period);
+
+    // Adds a payment in one statement, so concurrent payments cannot lose an update or overpay:
+    // it matches no row when the amount is more than what is still due. status and paidAt are
+    // assigned before amountPaid because MySQL evaluates SET assignments left to right.
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MaintenanceInvoice i SET " +
+           "i.status = CASE WHEN i.amountPaid + :amount >= i.amount THEN 'PAID' ELSE 'PARTIAL' END, " +
+           "i.paidAt = CASE WHEN i.amountPaid + :amount >= i.amount THEN :paidAt ELSE NULL END, " +
+           "i.amountPaid = i.amountPaid + :amount " +
+           "WHERE i.id = :id AND i.residentId = :residentId AND i.amountPaid + :amount <= i.amount")
+    int applyPayment(@Param("id") Long id, @Param("residentId") Long residentId,
+                     @Param("amount") BigDecimal amount, @Param("paidAt") LocalDateTime paidAt);
+
+    // Dashboard recount: one [count, outstanding total] row over invoices not fully paid
+    @Query("SELECT COUNT(i), COALESCE(SUM(i.amount - i.amountPaid), 0) FROM MaintenanceInvoice i WHERE i.status <> 'PAID'")
+    List<Object[]> summarizeOutstanding();
+
+    // Resident deletion: [count, outstanding total] over the resident's open invoices, then the invoices themselves
+    @Query("SELECT COUNT(i), COALESCE(SUM(i.amount - i.amountPaid), 0) FROM MaintenanceInvoice i " +
+           "WHERE i.residentId = :residentId AND i.status <> 'PAID'")
+    List<Object[]> summarizeOutstandingForResident(@Param("residentId") Long residentId);
+
+    @Modifying
+    @Query("DELETE FROM MaintenanceInvoice i WHERE i.residentId = :residentId")
+    int deleteForResident(@Param("residentId") Long residentId);
+}
@@ -0,0 +1,23 @@
+package com.mySociety.repository;
+
+import com.mySociety.model.MaintenancePayment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface MaintenancePaymentRepository extends JpaRepository<MaintenancePayment, Long> {
+    List<MaintenancePayment> findByInvoiceIdOrderByPaidAtAsc(Long invoiceId);
+
+    Optional<MaintenancePayment> findByIdAndResidentId(Long id, Long residentId);
+
+    // Resident-reported payments waiting for an admin, oldest first
+    List<MaintenancePayment> findByPendingTrueOrderByPaidAtAsc();
+
+    @Modifying
+    @Query("DELETE FROM MaintenancePayment p WHERE p.residentId = :residentId")
+    int deleteForResident(@Param("residentId") Long residentId);
+}
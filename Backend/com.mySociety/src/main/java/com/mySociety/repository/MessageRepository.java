@@ -1,32 +1,144 @@
 package com.mySociety.repository;
 
+import com.mySociety.dto.MessageView;
 import com.mySociety.model.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface MessageRepository extends JpaRepository<Message, Long> {
+public interface MessageRepository extends JpaRepository<Message, Long>, JpaSpecificationExecutor<Message> {
 
-    // Find all initial messages sent by admin to a specific resident (parent_message_id is NULL)
-    List<Message> findBySenderRoleAndRecipientResidentIdAndParentMessageIsNullOrderByCreatedAtDesc(String senderRole, Long recipientResidentId);
+    // List views select the recipient's name and flat with an outer join and the parent by its key column only
+    String VIEW_SELECT = "SELECT new com.mySociety.dto.MessageView(m.id, m.senderUserId, m.senderRole, " +
+                         "r.id, r.name, r.flatNumber, m.parentMessage.id, m.threadRootId, m.threadSeq, " +
+                         "m.subject, m.content, m.status, m.createdAt, m.updatedAt) " +
+                         "FROM Message m LEFT JOIN m.recipientResident r ";
 
-    // Find all replies for a given parent message, ordered chronologically
-    List<Message> findByParentMessageIdOrderByCreatedAtAsc(Long parentMessageId);
+    @Query(VIEW_SELECT + "ORDER BY m.id")
+    List<MessageView> findAllViews();
 
-    // Find messages where the resident is the sender or recipient, and it's an initial message (not a reply)
-    // This helps in fetching the "threads" for a resident
-    @Query("SELECT m FROM Message m WHERE " +
-           "(m.senderUserId = :residentUserId AND m.senderRole = 'USER' AND m.parentMessage IS NULL) OR " + // Messages initiated by resident
-           "(m.recipientResident.id = :residentId AND m.senderRole = 'ADMIN' AND m.parentMessage IS NULL) " + // Messages initiated by admin to resident
+    // Initial messages of a resident's conversations: sent to them by the admin, or started by them
+    @Query(VIEW_SELECT + "WHERE m.parentMessage IS NULL AND " +
+           "((m.senderRole = 'ADMIN' AND r.id = :residentId) OR (m.senderRole = 'USER' AND m.senderUserId = :residentUserId)) " +
            "ORDER BY m.createdAt DESC")
-    List<Message> findInitialMessagesForResident(@Param("residentId") Long residentId, @Param("residentUserId") Long residentUserId);
+    List<MessageView> findRootViewsForResident(@Param("residentId") Long residentId, @Param("residentUserId") Long residentUserId);
 
-    // Find messages sent by a specific resident (for their own tracking)
-    List<Message> findBySenderUserIdAndSenderRoleOrderByCreatedAtDesc(Long senderUserId, String senderRole);
+    @Query(VIEW_SELECT + "WHERE m.id IN :ids")
+    List<MessageView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
 
-    // Find messages sent to a specific resident (for their own tracking)
-    List<Message> findByRecipientResidentIdOrderByCreatedAtDesc(Long recipientResidentId);
-}
\ No newline at end of file
+    // Replies (any depth) of many threads, grouped by thread and in write order
+    @Query(VIEW_SELECT + "WHERE m.threadRootId IN :rootIds AND m.threadSeq > 0 ORDER BY m.threadRootId, m.threadSeq")
+    List<MessageView> findReplyViewsInThreads(@Param("rootIds") Collection<Long> rootIds);
+
+    // Whole threads, initial message first, grouped by thread and in write order
+    @Query(VIEW_SELECT + "WHERE m.threadRootId IN :rootIds ORDER BY m.threadRootId, m.threadSeq")
+    List<MessageView> findThreadViews(@Param("rootIds") Collection<Long> rootIds);
+
+    // Archival removes whole threads. Parent links are cleared first so the self-referencing
+    // foreign key never sees a parent deleted before its replies.
+    @Modifying
+    @Query("UPDATE Message m SET m.parentMessage = NULL WHERE m.threadRootId IN :rootIds")
+    int clearParentLinksInThreads(@Param("rootIds") Collection<Long> rootIds);
+
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.threadRootId IN :rootIds")
+    int deleteThreads(@Param("rootIds") Collection<Long> rootIds);
+
+    // Replies (any depth) of many threads in one query, grouped by thread and in write order
+    @Query("SELECT m FROM Message m WHERE m.threadRootId IN :rootIds AND m.threadSeq > 0 ORDER BY m.threadRootId, m.threadSeq")
+    List<Message> findRepliesInThreads(@Param("rootIds") Collection<Long> rootIds);
+
+    @Query("SELECT COALESCE(MAX(m.threadSeq), 0) FROM Message m WHERE m.threadRootId = :rootId")
+    int findMaxThreadSeq(@Param("rootId") Long rootId);
+
+    // Serializes reply numbering in a thread that has no summary row to lock instead
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m.id FROM Message m WHERE m.id = :rootId")
+    Optional<Long> lockThreadRoot(@Param("rootId") Long rootId);
+
+    // Unread admin messages per resident; rows are [residentId, count]
+    @Query("SELECT m.recipientResident.id, COUNT(m) FROM Message m " +
+           "WHERE m.status = 'UNREAD' AND m.senderRole = 'ADMIN' AND m.recipientResident IS NOT NULL " +
+           "GROUP BY m.recipientResident.id")
+    List<Object[]> countUnreadFromAdminByResident();
+
+    long countBySenderRoleAndStatus(String senderRole, String status);
+
+    // Initial messages in id order after a keyset cursor; used by batch jobs that walk every thread
+    @Query("SELECT m FROM Message m WHERE m.parentMessage IS NULL AND m.id > :afterId ORDER BY m.id")
+    List<Message> findRootsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Bulk mark-as-read: lock the UNREAD rows the caller may mark (sent by senderRole; to
+    // residentId unless it is null) so the counters kept alongside match the UPDATE exactly.
+    // Only [id, threadRootId, recipientResidentId] is read; no entity is loaded.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m.id, m.threadRootId, m.recipientResident.id FROM Message m WHERE m.id IN :ids " +
+           "AND m.status = 'UNREAD' AND m.senderRole = :senderRole " +
+           "AND (:residentId IS NULL OR m.recipientResident.id = :residentId)")
+    List<Object[]> lockUnreadByIds(@Param("ids") Collection<Long> ids, @Param("senderRole") String senderRole,
+                                   @Param("residentId") Long residentId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m.id, m.threadRootId, m.recipientResident.id FROM Message m WHERE m.threadRootId = :rootMessageId " +
+           "AND m.status = 'UNREAD' AND m.senderRole = :senderRole " +
+           "AND (:residentId IS NULL OR m.recipientResident.id = :residentId)")
+    List<Object[]> lockUnreadInThread(@Param("rootMessageId") Long rootMessageId, @Param("senderRole") String senderRole,
+                                      @Param("residentId") Long residentId);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Message m SET m.status = 'READ', m.updatedAt = :now WHERE m.id IN :ids AND m.status = 'UNREAD'")
+    int markReadByIds(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    // Search index rebuild: [id, recipientResidentId, subject, content] rows in id order after a keyset cursor
+    @Query("SELECT m.id, r.id, m.subject, m.content FROM Message m LEFT JOIN m.recipientResident r " +
+           "WHERE m.id > :afterId ORDER BY m.id")
+    List<Object[]> findSearchRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Resident deletion: every message of the conversations the admin started carries the resident's id
+    // as recipient, so these statements all range-scan idx_messages_recipient_created
+    @Query("SELECT m.id FROM Message m WHERE m.recipientResident.id = :residentId")
+    List<Long> findIdsByRecipientResidentId(@Param("residentId") Long residentId);
+
+    long countByRecipientResidentIdAndSenderRoleAndStatus(Long recipientResidentId, String senderRole, String status);
+
+    @Modifying
+    @Query("UPDATE Message m SET m.parentMessage = NULL WHERE m.recipientResident.id = :residentId")
+    int clearParentLinksForResident(@Param("residentId") Long residentId);
+
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.recipientResident.id = :residentId")
+    int deleteForResident(@Param("residentId") Long residentId);
+
+    // Resident deletion, older conversations a resident started: the root and its replies have no
+    // recipient, so they are found through the root's sender (idx_messages_sender) and removed by
+    // thread (idx_messages_thread_seq)
+    @Query("SELECT m.id FROM Message m WHERE m.senderUserId IN :userIds AND m.parentMessage IS NULL " +
+           "AND m.recipientResident IS NULL")
+    List<Long> findUnaddressedRootIdsBySenders(@Param("userIds") Collection<Long> userIds);
+
+    @Query("SELECT m.id FROM Message m WHERE m.threadRootId IN :rootIds AND m.recipientResident IS NULL")
+    List<Long> findUnaddressedIdsInThreads(@Param("rootIds") Collection<Long> rootIds);
+
+    @Query("SELECT COUNT(m) FROM Message m WHERE m.threadRootId IN :rootIds AND m.recipientResident IS NULL " +
+           "AND m.senderRole = :senderRole AND m.status = :status")
+    long countUnaddressedInThreads(@Param("rootIds") Collection<Long> rootIds, @Param("senderRole") String senderRole,
+                                   @Param("status") String status);
+
+    @Modifying
+    @Query("UPDATE Message m SET m.parentMessage = NULL WHERE m.threadRootId IN :rootIds AND m.recipientResident IS NULL")
+    int clearUnaddressedParentLinksInThreads(@Param("rootIds") Collection<Long> rootIds);
+
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.threadRootId IN :rootIds AND m.recipientResident IS NULL")
+    int deleteUnaddressedInThreads(@Param("rootIds") Collection<Long> rootIds);
+}
@@ -0,0 +1,39 @@
+package com.mySociety.repository;
+
+import com.mySociety.dto.Cursor;
+import com.mySociety.model.Message;
+import jakarta.persistence.criteria.JoinType;
+import org.springframework.data.jpa.domain.Specification;
+
+// Composable filters for paged message listings; a null argument adds no condition
+public final class MessageSpecifications {
+
+    private MessageSpecifications() {}
+
+    public static Specification<Message> hasStatus(String status) {
+        return (root, query, cb) -> status == null ? null : cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Message> hasSenderRole(String senderRole) {
+        return (root, query, cb) -> senderRole == null ? null : cb.equal(root.get("senderRole"), senderRole);
+    }
+
+    public static Specification<Message> hasRecipientResident(Long residentId) {
+        return (root, query, cb) -> residentId == null ? null : cb.equal(root.get("recipientResident").get("id"), residentId);
+    }
+
+    // Rows strictly after the cursor in (createdAt DESC, id DESC) order
+    public static Specification<Message> after(Cursor cursor) {
+        return (root, query, cb) -> cursor == null ? null : cb.or(
+                cb.lessThan(root.get("createdAt"), cursor.timestamp()),
+                cb.and(cb.equal(root.get("createdAt"), cursor.timestamp()), cb.lessThan(root.get("id"), cursor.id())));
+    }
+
+    // Load the recipient MessageView shows in the same select; the parent is only referenced by id
+    public static Specification<Message> fetchRecipient() {
+        return (root, query, cb) -> {
+            root.fetch("recipientResident", JoinType.LEFT);
+            return null;
+        };
+    }
+}
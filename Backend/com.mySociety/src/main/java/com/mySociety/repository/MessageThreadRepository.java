@@ -0,0 +1,66 @@
+package com.mySociety.repository;
+
+import com.mySociety.model.MessageThread;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface MessageThreadRepository extends JpaRepository<MessageThread, Long> {
+
+    // Keyset pages of the admin inbox across all residents, in (lastMessageAt DESC, rootMessageId DESC) order
+    List<MessageThread> findAllByOrderByLastMessageAtDescRootMessageIdDesc(Pageable pageable);
+
+    @Query("SELECT t FROM MessageThread t WHERE " +
+           "t.lastMessageAt < :lastMessageAt OR (t.lastMessageAt = :lastMessageAt AND t.rootMessageId < :rootMessageId) " +
+           "ORDER BY t.lastMessageAt DESC, t.rootMessageId DESC")
+    List<MessageThread> findPageAfter(@Param("lastMessageAt") LocalDateTime lastMessageAt,
+                                      @Param("rootMessageId") Long rootMessageId, Pageable pageable);
+
+    // Resident inbox pages: range scan on (resident_id, last_message_at)
+    // Keyset pages of a resident's threads in (lastMessageAt DESC, rootMessageId DESC) order
+    List<MessageThread> findByResidentIdOrderByLastMessageAtDescRootMessageIdDesc(Long residentId, Pageable pageable);
+
+    @Query("SELECT t FROM MessageThread t WHERE t.residentId = :residentId AND " +
+           "(t.lastMessageAt < :lastMessageAt OR (t.lastMessageAt = :lastMessageAt AND t.rootMessageId < :rootMessageId)) " +
+           "ORDER BY t.lastMessageAt DESC, t.rootMessageId DESC")
+    List<MessageThread> findResidentPageAfter(@Param("residentId") Long residentId, @Param("lastMessageAt") LocalDateTime lastMessageAt,
+                                              @Param("rootMessageId") Long rootMessageId, Pageable pageable);
+
+    // Counters are adjusted in SQL so concurrent writers to the same thread never lose updates
+    @Modifying
+    @Query("UPDATE MessageThread t SET t.lastMessageAt = :lastMessageAt, t.lastSnippet = :snippet, " +
+           "t.replyCount = t.replyCount + 1, " +
+           "t.unreadForResident = t.unreadForResident + :residentDelta, t.unreadForAdmin = t.unreadForAdmin + :adminDelta " +
+           "WHERE t.rootMessageId = :rootMessageId")
+    int recordReply(@Param("rootMessageId") Long rootMessageId, @Param("lastMessageAt") LocalDateTime lastMessageAt,
+                    @Param("snippet") String snippet, @Param("residentDelta") int residentDelta, @Param("adminDelta") int adminDelta);
+
+    @Modifying
+    @Query("UPDATE MessageThread t SET t.unreadForResident = t.unreadForResident + :residentDelta, " +
+           "t.unreadForAdmin = t.unreadForAdmin + :adminDelta WHERE t.rootMessageId = :rootMessageId")
+    int adjustUnread(@Param("rootMessageId") Long rootMessageId, @Param("residentDelta") int residentDelta,
+                     @Param("adminDelta") int adminDelta);
+
+    // Archival candidates: inactive since before the cutoff with nothing left unread. The rows stay
+    // locked until the archiving transaction commits, so a concurrent reply waits and then fails
+    // against the archived thread instead of being lost.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM MessageThread t WHERE t.lastMessageAt < :cutoff AND t.unreadForResident = 0 " +
+           "AND t.unreadForAdmin = 0 AND t.rootMessageId > :afterId ORDER BY t.rootMessageId")
+    List<MessageThread> lockArchivableAfter(@Param("cutoff") LocalDateTime cutoff, @Param("afterId") Long afterId,
+                                            Pageable pageable);
+
+    @Query("SELECT t.replyCount FROM MessageThread t WHERE t.rootMessageId = :rootMessageId")
+    int findReplyCount(@Param("rootMessageId") Long rootMessageId);
+
+    @Modifying
+    @Query("DELETE FROM MessageThread t WHERE t.residentId = :residentId")
+    int deleteForResident(@Param("residentId") Long residentId);
+}
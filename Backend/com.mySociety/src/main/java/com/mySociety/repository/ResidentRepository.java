@@ -1,9 +1,69 @@
 package com.mySociety.repository;
 
+import com.mySociety.dto.ResidentView;
 import com.mySociety.model.Resident;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface ResidentRepository extends JpaRepository<Resident, Long>, JpaSpecificationExecutor<Resident> {
+
+    // Resident rows as plain values rather than managed entities
+    String VIEW_SELECT = "SELECT new com.mySociety.dto.ResidentView(r.id, r.name, r.email, r.phone, r.flatNumber, r.maintenanceCharge) " +
+                         "FROM Resident r ";
 
-public interface ResidentRepository extends JpaRepository<Resident, Long> {
     Optional<Resident> findByFlatNumber(String flatNumber);
-}
\ No newline at end of file
+
+    // Admin resident list
+    @Query(VIEW_SELECT + "ORDER BY r.id")
+    List<ResidentView> findAllViews();
+
+    // ResidentCache loads single rows as views, so cached values never hold a persistence context
+    @Query(VIEW_SELECT + "WHERE r.id = :id")
+    Optional<ResidentView> findViewById(@Param("id") Long id);
+
+    @Query(VIEW_SELECT + "WHERE r.flatNumber = :flatNumber")
+    Optional<ResidentView> findViewByFlatNumber(@Param("flatNumber") String flatNumber);
+
+    // ResidentCache warm-up. Needs an open transaction; close the stream when done.
+    @Query(VIEW_SELECT + "ORDER BY r.id")
+    Stream<ResidentView> streamAllViews();
+
+    // Broadcast recipients as [id, flatNumber] rows, without loading whole entities
+    @Query("SELECT r.id, r.flatNumber FROM Resident r ORDER BY r.id")
+    List<Object[]> findAllIdsAndFlatNumbers();
+
+    // Preloaded by the bulk import to check flat numbers without a query per row
+    @Query("SELECT r.flatNumber FROM Resident r WHERE r.flatNumber IS NOT NULL")
+    List<String> findAllFlatNumbers();
+
+    // Maintenance billing: [id, maintenanceCharge] rows in id order after a keyset cursor
+    @Query("SELECT r.id, r.maintenanceCharge FROM Resident r WHERE r.id > :afterId ORDER BY r.id")
+    List<Object[]> findBillingRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // The prefix must have LIKE wildcards escaped with '!'
+    @Query("SELECT r.id, r.flatNumber FROM Resident r WHERE r.flatNumber LIKE CONCAT(:prefix, '%') ESCAPE '!' ORDER BY r.id")
+    List<Object[]> findIdsAndFlatNumbersByFlatPrefix(@Param("prefix") String prefix);
+
+    @Query("SELECT r.id, r.flatNumber FROM Resident r WHERE r.flatNumber IN :flatNumbers ORDER BY r.id")
+    List<Object[]> findIdsAndFlatNumbersByFlatNumberIn(@Param("flatNumbers") Collection<String> flatNumbers);
+
+    // Resident deletion: holds the row so a concurrent deletion of the same resident waits, then finds nothing
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Resident r WHERE r.id = :id")
+    Optional<Resident> lockById(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE FROM Resident r WHERE r.id = :id")
+    int deleteByIdInBulk(@Param("id") Long id);
+}
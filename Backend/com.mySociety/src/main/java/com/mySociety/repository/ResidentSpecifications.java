@@ -0,0 +1,61 @@
+package com.mySociety.repository;
+
+import com.mySociety.model.Resident;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+
+// Composable filters for the resident directory; a null argument adds no condition
+public final class ResidentSpecifications {
+
+    private ResidentSpecifications() {}
+
+    public static Specification<Resident> nameStartsWith(String prefix) {
+        return startsWith("name", prefix);
+    }
+
+    public static Specification<Resident> flatNumberStartsWith(String prefix) {
+        return startsWith("flatNumber", prefix);
+    }
+
+    public static Specification<Resident> maintenanceChargeAtLeast(BigDecimal min) {
+        return (root, query, cb) -> min == null ? null : cb.greaterThanOrEqualTo(root.get("maintenanceCharge"), min);
+    }
+
+    public static Specification<Resident> maintenanceChargeAtMost(BigDecimal max) {
+        return (root, query, cb) -> max == null ? null : cb.lessThanOrEqualTo(root.get("maintenanceCharge"), max);
+    }
+
+    // Rows strictly after (value, id) in (field, id) order, both ascending or both descending.
+    // NULL sorts lowest, as it does in MySQL: first when ascending, last when descending.
+    public static <Y extends Comparable<? super Y>> Specification<Resident> after(String field, boolean ascending, Y value, Long id) {
+        return (root, query, cb) -> {
+            if (id == null) {
+                return null;
+            }
+            Path<Y> column = root.get(field);
+            Path<Long> key = root.get("id");
+            Predicate sameValueLaterId = ascending ? cb.greaterThan(key, id) : cb.lessThan(key, id);
+            if (value == null) {
+                Predicate laterAmongNulls = cb.and(cb.isNull(column), sameValueLaterId);
+                return ascending ? cb.or(laterAmongNulls, cb.isNotNull(column)) : laterAmongNulls;
+            }
+            Predicate laterValue = ascending ? cb.greaterThan(column, value) : cb.lessThan(column, value);
+            Predicate later = cb.or(laterValue, cb.and(cb.equal(column, value), sameValueLaterId));
+            return ascending ? later : cb.or(later, cb.isNull(column));
+        };
+    }
+
+    // Escapes LIKE wildcards with '!' so user input only ever matches literally
+    public static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    private static Specification<Resident> startsWith(String field, String prefix) {
+        return (root, query, cb) -> prefix == null || prefix.isEmpty()
+                ? null
+                : cb.like(root.get(field), escapeLike(prefix) + "%", '!');
+    }
+}
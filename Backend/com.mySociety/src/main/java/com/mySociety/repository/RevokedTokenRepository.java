@@ -0,0 +1,22 @@
+package com.mySociety.repository;
+
+import com.mySociety.model.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    // Revocation sync: [tokenId, expiresAt, revokedAt] rows revoked at or after the given time
+    @Query("SELECT t.tokenId, t.expiresAt, t.revokedAt FROM RevokedToken t WHERE t.revokedAt >= :since")
+    List<Object[]> findRevokedSince(@Param("since") long since);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RevokedToken t WHERE t.expiresAt < :now")
+    int deleteExpired(@Param("now") long now);
+}
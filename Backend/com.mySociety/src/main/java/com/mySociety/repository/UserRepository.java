@@ -2,9 +2,36 @@ package com.mySociety.repository;
 
 import com.mySociety.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
+
+    // Login needs the resident id and flat number; fetch them in the same select
+    @Query("SELECT u FROM User u LEFT JOIN FETCH u.resident WHERE u.username = :username")
+    Optional<User> findByUsernameWithResident(@Param("username") String username);
+
+    // Preloaded by the bulk resident import to check usernames without a query per row
+    @Query("SELECT u.username FROM User u WHERE u.username IS NOT NULL")
+    List<String> findAllUsernames();
+
+    // Used to store an upgraded password hash after a successful login
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id")
+    int updatePassword(@Param("id") Long id, @Param("password") String password);
     Optional<User> findByResidentId(Long residentId); // Added for deleting user when resident is deleted
-}
\ No newline at end of file
+
+    @Query("SELECT u.id FROM User u WHERE u.resident.id = :residentId")
+    List<Long> findIdsByResidentId(@Param("residentId") Long residentId);
+
+    @Modifying
+    @Query("DELETE FROM User u WHERE u.resident.id = :residentId")
+    int deleteForResident(@Param("residentId") Long residentId);
+}
@@ -0,0 +1,221 @@
+package com.mySociety.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+// In-memory inverted index: term -> postings (document -> weighted term frequency).
+// Documents are ranked with BM25; title terms count TITLE_WEIGHT times. The last query term
+// also matches as a prefix so search-as-you-type works. Reads share a lock and writes take it
+// exclusively, so a query never sees a half-updated document.
+public class SearchIndex {
+
+    public enum Type { MESSAGE, COMPLAINT, ANNOUNCEMENT }
+
+    // What a query returns for each matching document
+    public record Hit(Type type, Long id, Long residentId, String title, String snippet, double score) {}
+
+    private static final int TITLE_WEIGHT = 2;
+    private static final int SNIPPET_LENGTH = 160;
+    private static final int MAX_PREFIX_EXPANSIONS = 50;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "is", "it", "of", "on", "or",
+            "the", "this", "to", "was", "we", "with", "you", "your");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+    private final Map<String, Integer> docIdsByKey = new HashMap<>();
+    private final List<Document> documents = new ArrayList<>(); // Indexed by internal doc id; null once removed
+    private final List<Integer> freeDocIds = new ArrayList<>();
+    private long totalLength;
+    private int liveDocuments;
+
+    // Adds the document, replacing any earlier version of it
+    public void put(Type type, Long id, Long residentId, String title, String body) {
+        Map<String, Integer> termCounts = new HashMap<>();
+        int length = countTerms(title, TITLE_WEIGHT, termCounts) + countTerms(body, 1, termCounts);
+        String key = key(type, id);
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            Document document = new Document(type, id, residentId, title, snippet(body), length, termCounts.keySet());
+            int docId = freeDocIds.isEmpty() ? documents.size() : freeDocIds.remove(freeDocIds.size() - 1);
+            if (docId == documents.size()) {
+                documents.add(document);
+            } else {
+                documents.set(docId, document);
+            }
+            docIdsByKey.put(key, docId);
+            termCounts.forEach((term, count) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(docId, count));
+            totalLength += length;
+            liveDocuments++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Type type, Long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key(type, id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Top `limit` documents for the query, best first, among those accepted by the filter
+    public List<Hit> search(String query, Predicate<Hit> filter, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            double averageLength = liveDocuments == 0 ? 1 : (double) totalLength / liveDocuments;
+            Map<Integer, Double> scores = new HashMap<>();
+            for (int i = 0; i < terms.size(); i++) {
+                String term = terms.get(i);
+                if (i == terms.size() - 1) {
+                    // Last term: exact match plus a bounded number of longer terms starting with it
+                    NavigableMap<String, Map<Integer, Integer>> matches = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+                    int expansions = 0;
+                    for (Map.Entry<String, Map<Integer, Integer>> entry : matches.entrySet()) {
+                        if (expansions++ >= MAX_PREFIX_EXPANSIONS) {
+                            break;
+                        }
+                        // Prefix matches score lower than the exact term
+                        addScores(entry.getValue(), entry.getKey().equals(term) ? 1.0 : 0.5, averageLength, scores);
+                    }
+                } else {
+                    Map<Integer, Integer> termPostings = postings.get(term);
+                    if (termPostings != null) {
+                        addScores(termPostings, 1.0, averageLength, scores);
+                    }
+                }
+            }
+
+            PriorityQueue<Hit> best = new PriorityQueue<>(Comparator.comparingDouble(Hit::score));
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                if (best.size() == limit && entry.getValue() <= best.peek().score()) {
+                    continue;
+                }
+                Document document = documents.get(entry.getKey());
+                Hit hit = new Hit(document.type(), document.id(), document.residentId(), document.title(), document.snippet(), entry.getValue());
+                if (filter.test(hit)) {
+                    best.add(hit);
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+            List<Hit> hits = new ArrayList<>(best);
+            hits.sort(Comparator.comparingDouble(Hit::score).reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int documentCount() {
+        lock.readLock().lock();
+        try {
+            return liveDocuments;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addScores(Map<Integer, Integer> termPostings, double boost, double averageLength, Map<Integer, Double> scores) {
+        double idf = Math.log(1 + (liveDocuments - termPostings.size() + 0.5) / (termPostings.size() + 0.5));
+        termPostings.forEach((docId, frequency) -> {
+            int length = documents.get(docId).length();
+            double tf = frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+            scores.merge(docId, boost * idf * tf, Double::sum);
+        });
+    }
+
+    private void removeLocked(String key) {
+        Integer docId = docIdsByKey.remove(key);
+        if (docId == null) {
+            return;
+        }
+        Document document = documents.get(docId);
+        for (String term : document.terms()) {
+            Map<Integer, Integer> termPostings = postings.get(term);
+            termPostings.remove(docId);
+            if (termPostings.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        documents.set(docId, null);
+        freeDocIds.add(docId);
+        totalLength -= document.length();
+        liveDocuments--;
+    }
+
+    private static int countTerms(String text, int weight, Map<String, Integer> termCounts) {
+        List<String> terms = tokenize(text);
+        for (String term : terms) {
+            termCounts.merge(term, weight, Integer::sum);
+        }
+        return terms.size() * weight;
+    }
+
+    // Lower-cased, accent-stripped runs of letters and digits, minus stop words
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String term = normalized.substring(start, i);
+                if (!STOP_WORDS.contains(term)) {
+                    terms.add(term);
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static String snippet(String body) {
+        if (body == null || body.length() <= SNIPPET_LENGTH) {
+            return body;
+        }
+        return body.substring(0, SNIPPET_LENGTH);
+    }
+
+    private static String key(Type type, Long id) {
+        return type.name() + ":" + id;
+    }
+
+    private record Document(Type type, Long id, Long residentId, String title, String snippet, int length, Set<String> terms) {}
+}
@@ -0,0 +1,143 @@
+package com.mySociety.security;
+
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.service.AuthService;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Single place where bearer tokens are parsed and checked.
+// For every handler annotated with @RequiresRole (directly or on its controller) the token is
+// resolved to an AuthPrincipal once, the declared rule is enforced, and the principal is stored
+// as a request attribute for AuthPrincipalArgumentResolver to hand to the controller.
+// Access is denied by default: handlers must carry either @RequiresRole or @Public.
+@Component
+public class AuthInterceptor implements HandlerInterceptor, MetricsSource {
+
+    public static final String PRINCIPAL_ATTRIBUTE = AuthInterceptor.class.getName() + ".principal";
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final AuthService authService;
+
+    private final LongAdder authorized = new LongAdder();
+    private final LongAdder rejectedUnauthenticated = new LongAdder();
+    private final LongAdder rejectedForbidden = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public AuthInterceptor(AuthService authService) {
+        this.authService = authService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true; // Already checked when the async request (e.g. an event stream) started
+        }
+        // A method-level annotation overrides the controller's
+        RequiresRole rule = handlerMethod.getMethodAnnotation(RequiresRole.class);
+        if (rule == null) {
+            if (handlerMethod.hasMethodAnnotation(Public.class)) {
+                return true;
+            }
+            rule = handlerMethod.getBeanType().getAnnotation(RequiresRole.class);
+        }
+        if (rule == null) {
+            if (handlerMethod.getBeanType().isAnnotationPresent(Public.class)) {
+                return true;
+            }
+            rejectedForbidden.increment();
+            reject(response, HttpStatus.FORBIDDEN, "Access Denied: endpoint has no access rule.");
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            String header = request.getHeader("Authorization");
+            AuthPrincipal principal = header != null && header.startsWith(BEARER_PREFIX)
+                    ? authService.validateToken(header.substring(BEARER_PREFIX.length()))
+                    : null;
+            if (principal == null) {
+                rejectedUnauthenticated.increment();
+                reject(response, HttpStatus.UNAUTHORIZED, "Authentication required.");
+                return false;
+            }
+            String denial = checkRule(rule, principal, request);
+            if (denial != null) {
+                rejectedForbidden.increment();
+                reject(response, HttpStatus.FORBIDDEN, denial);
+                return false;
+            }
+            request.setAttribute(PRINCIPAL_ATTRIBUTE, principal);
+            authorized.increment();
+            return true;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            totalNanos.add(elapsed);
+            maxNanos.accumulate(elapsed);
+        }
+    }
+
+    // Returns the reason for refusing the request, or null if the rule is satisfied
+    private String checkRule(RequiresRole rule, AuthPrincipal principal, HttpServletRequest request) {
+        if (rule.value().length > 0 && !Arrays.asList(rule.value()).contains(principal.role())) {
+            return "Access Denied: " + String.join("/", rule.value()) + " role required.";
+        }
+        if (!rule.ownResident().isEmpty()) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> pathVariables =
+                    (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+            String value = pathVariables != null ? pathVariables.get(rule.ownResident()) : null;
+            if (value == null || principal.residentId() == null || !value.equals(principal.residentId().toString())) {
+                return "Access Denied: Resident role required or unauthorized access.";
+            }
+        }
+        return null;
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+
+    @Override
+    public String metricsName() {
+        return "auth";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        long ok = authorized.sum();
+        long unauthenticated = rejectedUnauthenticated.sum();
+        long forbidden = rejectedForbidden.sum();
+        long total = ok + unauthenticated + forbidden;
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("requests", total);
+        snapshot.put("authorized", ok);
+        snapshot.put("rejectedUnauthenticated", unauthenticated);
+        snapshot.put("rejectedForbidden", forbidden);
+        snapshot.put("rejectRate", total == 0 ? 0.0 : (double) (unauthenticated + forbidden) / total);
+        snapshot.put("avgMicros", total == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / total));
+        snapshot.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+        return snapshot;
+    }
+}
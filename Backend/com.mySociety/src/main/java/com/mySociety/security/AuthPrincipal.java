@@ -0,0 +1,30 @@
+package com.mySociety.security;
+
+import com.mySociety.model.Resident;
+import com.mySociety.model.User;
+
+// Immutable identity resolved once at login and carried with the token.
+// Authorization checks use this instead of User entities, so they never touch
+// a persistence context or the database.
+public record AuthPrincipal(Long userId, String role, Long residentId, String flatNumber) {
+
+    // Caller must have the user's resident loaded (see UserRepository.findByUsernameWithResident)
+    public static AuthPrincipal of(User user) {
+        Resident resident = user.getResident();
+        return new AuthPrincipal(user.getId(), user.getRole(),
+                resident != null ? resident.getId() : null,
+                resident != null ? resident.getFlatNumber() : null);
+    }
+
+    public boolean isAdmin() {
+        return "ADMIN".equals(role);
+    }
+
+    public boolean isResident() {
+        return "USER".equals(role) && residentId != null;
+    }
+
+    public boolean ownsResident(Long id) {
+        return isResident() && residentId.equals(id);
+    }
+}
@@ -0,0 +1,10 @@
+package com.mySociety.security;
+
+// Thrown when PasswordHasher cannot take more work (queue full or wait timed out).
+// Controllers turn this into a 503 so clients back off instead of holding a request thread.
+public class HashingRejectedException extends RuntimeException {
+
+    public HashingRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,214 @@
+package com.mySociety.security;
+
+import com.mySociety.metrics.MetricsSource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// BCrypt hashing and verification on a dedicated, bounded thread pool.
+// Hashing is deliberately slow, so it runs off the Tomcat threads with a fixed number of
+// workers and a bounded queue. When the queue is full, or a caller waits longer than the
+// timeout, HashingRejectedException is thrown so a login burst is shed quickly instead of
+// starving every other endpoint. Bulk imports hash on a second pool of their own, so an
+// import never takes login capacity.
+@Component
+public class PasswordHasher implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHasher.class);
+    // Imported hashes may be this much cheaper than login hashes (each step halves the cost)
+    private static final int MAX_IMPORT_STRENGTH_REDUCTION = 2;
+
+    private final BCryptPasswordEncoder encoder;
+    private final BCryptPasswordEncoder importEncoder;
+    // Checked when a login names no known user, so both outcomes cost one hash
+    private final String dummyHash;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService importExecutor;
+    private final int importThreads;
+    private final long timeoutMillis;
+
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+    private final LongAdder importHashes = new LongAdder();
+
+    public PasswordHasher(@Value("${auth.hash.bcrypt-strength:10}") int strength,
+                          @Value("${auth.hash.import-bcrypt-strength:${auth.hash.bcrypt-strength:10}}") int importStrength,
+                          @Value("${auth.hash.threads:4}") int threads,
+                          @Value("${auth.hash.queue-capacity:64}") int queueCapacity,
+                          @Value("${auth.hash.timeout-ms:5000}") long timeoutMillis,
+                          @Value("${auth.hash.import-threads:4}") int importThreads) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        int floor = Math.max(4, strength - MAX_IMPORT_STRENGTH_REDUCTION); // 4 is BCrypt's minimum
+        int effectiveImportStrength = Math.min(Math.max(importStrength, floor), strength);
+        if (effectiveImportStrength != importStrength) {
+            log.warn("auth.hash.import-bcrypt-strength {} is outside [{}, {}]; using {}",
+                    importStrength, floor, strength, effectiveImportStrength);
+        }
+        this.importEncoder = new BCryptPasswordEncoder(effectiveImportStrength);
+        this.dummyHash = encoder.encode(UUID.randomUUID().toString());
+        this.timeoutMillis = timeoutMillis;
+        this.importThreads = importThreads;
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        AtomicInteger importThreadCount = new AtomicInteger();
+        this.importExecutor = Executors.newFixedThreadPool(importThreads, runnable -> {
+            Thread thread = new Thread(runnable, "password-import-hash-" + importThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Checks a raw password against the stored value. Rows written before hashing was
+    // introduced still hold plaintext; those, and hashes with an outdated cost factor,
+    // come back with a fresh hash that the caller should persist.
+    public Verification verify(String rawPassword, String storedPassword) {
+        return run(() -> {
+            boolean hashed = isHash(storedPassword);
+            boolean matches = hashed
+                    ? encoder.matches(rawPassword, storedPassword)
+                    : MessageDigest.isEqual(rawPassword.getBytes(StandardCharsets.UTF_8),
+                                            storedPassword.getBytes(StandardCharsets.UTF_8));
+            String upgradedHash = null;
+            if (matches && (!hashed || encoder.upgradeEncoding(storedPassword))) {
+                upgradedHash = encoder.encode(rawPassword);
+                rehashed.increment();
+            }
+            return new Verification(matches, upgradedHash);
+        });
+    }
+
+    // For a login whose username does not exist: spends the same hashing work as a real
+    // verification, so response times do not reveal which usernames exist. Never matches.
+    public void verifyUnknownUser(String rawPassword) {
+        run(() -> encoder.matches(rawPassword, dummyHash));
+    }
+
+    public String hash(String rawPassword) {
+        return run(() -> encoder.encode(rawPassword));
+    }
+
+    // Initial passwords for bulk-imported accounts, hashed in parallel on the import pool and
+    // returned in input order. The import cost factor is at most two below the login one
+    // (equal by default); verify() upgrades such hashes on the account's first login.
+    public List<String> hashAllForImport(List<String> rawPasswords) {
+        List<Callable<String>> tasks = new ArrayList<>(rawPasswords.size());
+        for (String rawPassword : rawPasswords) {
+            tasks.add(() -> importEncoder.encode(rawPassword));
+        }
+        try {
+            List<String> hashes = new ArrayList<>(rawPasswords.size());
+            for (Future<String> hash : importExecutor.invokeAll(tasks)) {
+                hashes.add(hash.get());
+            }
+            importHashes.add(hashes.size());
+            return hashes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing passwords.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static boolean isHash(String storedPassword) {
+        return storedPassword.startsWith("$2a$") || storedPassword.startsWith("$2b$") || storedPassword.startsWith("$2y$");
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    hashes.increment();
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulate(elapsed);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new HashingRejectedException("Too many concurrent logins, please retry shortly.");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new HashingRejectedException("Login timed out waiting for a hashing slot, please retry shortly.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HashingRejectedException("Interrupted while hashing password.");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        importExecutor.shutdown();
+    }
+
+    @Override
+    public String metricsName() {
+        return "passwordHashing";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        long count = hashes.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("threads", executor.getMaximumPoolSize());
+        snapshot.put("active", executor.getActiveCount());
+        snapshot.put("queueDepth", executor.getQueue().size());
+        snapshot.put("queueRemaining", executor.getQueue().remainingCapacity());
+        snapshot.put("hashes", count);
+        snapshot.put("avgMillis", count == 0 ? 0.0 : hashNanos.sum() / (double) count / 1_000_000);
+        snapshot.put("maxMillis", maxHashNanos.get() / 1_000_000.0);
+        snapshot.put("rejected", rejected.sum());
+        snapshot.put("importThreads", importThreads);
+        snapshot.put("importHashes", importHashes.sum());
+        snapshot.put("rehashed", rehashed.sum());
+        return snapshot;
+    }
+
+    // upgradedHash is non-null when the stored value should be replaced
+    public record Verification(boolean matches, String upgradedHash) {}
+}
@@ -0,0 +1,13 @@
+package com.mySociety.security;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Opts a controller or handler method out of authentication. AuthInterceptor refuses every
+// handler that has neither this nor @RequiresRole, so forgetting an annotation fails closed.
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Public {
+}
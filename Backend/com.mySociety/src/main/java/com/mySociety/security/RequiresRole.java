@@ -0,0 +1,20 @@
+package com.mySociety.security;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Declares the authentication rule for a controller or handler method; AuthInterceptor enforces it.
+// A method-level annotation replaces the class-level one. Handlers without either (and without
+// @Public) are refused.
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RequiresRole {
+
+    // Roles allowed to call the handler; empty means any authenticated user
+    String[] value() default {};
+
+    // Name of a path variable that must equal the caller's residentId, e.g. "residentId"
+    String ownResident() default "";
+}
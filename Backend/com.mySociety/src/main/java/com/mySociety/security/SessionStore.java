@@ -0,0 +1,163 @@
+package com.mySociety.security;
+
+import com.mySociety.metrics.MetricsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Thread-safe token -> AuthPrincipal store used by AuthService.
+// A session expires when it has been idle longer than the idle TTL (refreshed on every hit)
+// or when it is older than the absolute TTL (fixed at login), whichever comes first.
+// Expired sessions are dropped lazily on lookup and by a scheduled sweeper.
+// When the store grows past maxSize the least recently used sessions are evicted.
+@Component
+public class SessionStore implements MetricsSource {
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long idleTtlNanos;
+    private final long absoluteTtlNanos;
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SessionStore(@Value("${auth.session.idle-ttl-minutes:30}") long idleTtlMinutes,
+                        @Value("${auth.session.absolute-ttl-minutes:720}") long absoluteTtlMinutes,
+                        @Value("${auth.session.max-size:50000}") int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("auth.session.max-size must be positive");
+        }
+        this.idleTtlNanos = TimeUnit.MINUTES.toNanos(idleTtlMinutes);
+        this.absoluteTtlNanos = TimeUnit.MINUTES.toNanos(absoluteTtlMinutes);
+        this.maxSize = maxSize;
+    }
+
+    public void put(String token, AuthPrincipal principal) {
+        sessions.put(token, new Session(principal, nanoTime()));
+        if (sessions.size() > maxSize) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    // Returns the principal for a live session, or null if the token is unknown or expired
+    public AuthPrincipal get(String token) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            misses.increment();
+            return null;
+        }
+        long now = nanoTime();
+        if (isExpired(session, now)) {
+            if (sessions.remove(token, session)) {
+                expirations.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        session.lastAccess = now;
+        hits.increment();
+        return session.principal;
+    }
+
+    // Whether the session is still live, without counting as activity that refreshes the idle TTL
+    public boolean isLive(String token) {
+        Session session = sessions.get(token);
+        return session != null && !isExpired(session, nanoTime());
+    }
+
+    public void remove(String token) {
+        sessions.remove(token);
+    }
+
+    // Ends every session of a deleted user
+    public void removeUser(Long userId) {
+        sessions.entrySet().removeIf(entry -> userId.equals(entry.getValue().principal.userId()));
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    @Scheduled(fixedDelayString = "${auth.session.sweep-interval-ms:60000}")
+    public void sweepExpired() {
+        long now = nanoTime();
+        sessions.forEach((token, session) -> {
+            if (isExpired(session, now) && sessions.remove(token, session)) {
+                expirations.increment();
+            }
+        });
+    }
+
+    // Overridden by tests to move time forward
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.lastAccess > idleTtlNanos || now - session.createdAt > absoluteTtlNanos;
+    }
+
+    // Only one thread evicts at a time. It trims the store to 90% of capacity so the
+    // snapshot and sort are paid once per batch of logins rather than on every put.
+    private synchronized void evictLeastRecentlyUsed() {
+        int excess = sessions.size() - maxSize;
+        if (excess <= 0) {
+            return;
+        }
+        int toEvict = excess + maxSize / 10;
+
+        // Copy lastAccess up front: it keeps changing under concurrent reads and the sort needs stable keys
+        List<Candidate> candidates = new ArrayList<>(sessions.size());
+        sessions.forEach((token, session) -> candidates.add(new Candidate(token, session, session.lastAccess)));
+        candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+
+        for (int i = 0; i < toEvict && i < candidates.size(); i++) {
+            Candidate candidate = candidates.get(i);
+            if (sessions.remove(candidate.token(), candidate.session())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "sessions";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("size", sessions.size());
+        snapshot.put("maxSize", maxSize);
+        snapshot.put("hits", hits.sum());
+        snapshot.put("misses", misses.sum());
+        snapshot.put("expirations", expirations.sum());
+        snapshot.put("evictions", evictions.sum());
+        return snapshot;
+    }
+
+    private static final class Session {
+        private final AuthPrincipal principal;
+        private final long createdAt;
+        private volatile long lastAccess;
+
+        private Session(AuthPrincipal principal, long createdAt) {
+            this.principal = principal;
+            this.createdAt = createdAt;
+            this.lastAccess = createdAt;
+        }
+    }
+
+    private record Candidate(String token, Session session, long lastAccess) {}
+}
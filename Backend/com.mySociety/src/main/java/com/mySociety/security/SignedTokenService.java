@@ -0,0 +1,236 @@
+package com.mySociety.security;
+
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.model.RevokedToken;
+import com.mySociety.repository.RevokedTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Issues and verifies stateless bearer tokens of the form
+//   v1.<keyId>.<base64url(claims)>.<base64url(HMAC-SHA256(v1.<keyId>.<claims>))>
+// where claims = tokenId|expiresAt|userId|role|residentId|flatNumber.
+// Verification is a signature check plus an expiry check, so any backend instance that
+// shares the keys can validate a token without a lookup.
+//
+// Keys are configured as "id:base64secret" pairs. New tokens are signed with the active key;
+// every configured key is accepted, so a key can be rotated by adding a new one, making it
+// active, and removing the old one once its tokens have expired.
+//
+// Logout adds the token id to a revocation list that is kept until the token would have
+// expired anyway. The list is checked in memory on every request; it is shared through the
+// revoked_tokens table, which each instance polls every auth.token.revocation-sync-ms for rows
+// revoked elsewhere. A token revoked on another instance can therefore still be used here for
+// up to that interval.
+//
+// With auth.token.ephemeral-key=true (the dev profile) and no keys configured, a random key is
+// generated at startup. Its tokens stop verifying on restart and on any other instance, so it is
+// only for trying signed mode on one machine; real deployments supply keys from the environment.
+@Component
+public class SignedTokenService implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(SignedTokenService.class);
+    private static final String VERSION = "v1";
+    private static final String EPHEMERAL_KEY_ID = "ephemeral";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64_DECODER = Base64.getUrlDecoder();
+    // Overlap between sync windows, so rows written by an instance whose clock lags still arrive
+    private static final long SYNC_OVERLAP_MS = 60_000;
+
+    private final Map<String, SecretKeySpec> keys = new LinkedHashMap<>();
+    private final String activeKeyId;
+    private final long ttlSeconds;
+    private final SecureRandom random = new SecureRandom();
+    private final RevokedTokenRepository revokedTokenRepository;
+
+    // tokenId -> expiresAt (epoch seconds)
+    private final ConcurrentHashMap<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private volatile long lastSyncMillis; // 0 until the first sync, which loads every live revocation
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+
+    public SignedTokenService(@Value("${auth.token.keys:}") String keySpec,
+                              @Value("${auth.token.active-key-id:}") String activeKeyId,
+                              @Value("${auth.token.ttl-minutes:720}") long ttlMinutes,
+                              @Value("${auth.token.ephemeral-key:false}") boolean ephemeralKey,
+                              RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        for (String entry : keySpec.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("auth.token.keys entries must look like id:base64secret");
+            }
+            String keyId = trimmed.substring(0, separator);
+            byte[] secret = Base64.getDecoder().decode(trimmed.substring(separator + 1));
+            keys.put(keyId, new SecretKeySpec(secret, HMAC_ALGORITHM));
+        }
+        if (keys.isEmpty() && ephemeralKey) {
+            byte[] secret = new byte[32];
+            random.nextBytes(secret);
+            keys.put(EPHEMERAL_KEY_ID, new SecretKeySpec(secret, HMAC_ALGORITHM));
+            activeKeyId = EPHEMERAL_KEY_ID;
+            log.warn("No auth.token.keys configured; signing with a key generated for this run only");
+        }
+        this.activeKeyId = activeKeyId.isEmpty() && !keys.isEmpty() ? keys.keySet().iterator().next() : activeKeyId;
+        this.ttlSeconds = TimeUnit.MINUTES.toSeconds(ttlMinutes);
+    }
+
+    public boolean isConfigured() {
+        return keys.containsKey(activeKeyId);
+    }
+
+    public String issue(AuthPrincipal principal) {
+        if (!isConfigured()) {
+            throw new IllegalStateException("No active signing key configured (auth.token.keys / auth.token.active-key-id)");
+        }
+        byte[] tokenIdBytes = new byte[12];
+        random.nextBytes(tokenIdBytes);
+        String tokenId = B64.encodeToString(tokenIdBytes);
+        long expiresAt = Instant.now().getEpochSecond() + ttlSeconds;
+
+        String claims = tokenId + "|" + expiresAt + "|" + principal.userId() + "|" + principal.role() + "|"
+                + (principal.residentId() != null ? principal.residentId() : "") + "|"
+                + (principal.flatNumber() != null ? principal.flatNumber() : "");
+
+        String signingInput = VERSION + "." + activeKeyId + "." + B64.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+        issued.increment();
+        return signingInput + "." + B64.encodeToString(sign(keys.get(activeKeyId), signingInput));
+    }
+
+    // Returns the principal carried by the token, or null if the token is malformed,
+    // signed with an unknown key, tampered with, expired or revoked.
+    public AuthPrincipal verify(String token) {
+        Claims claims = parse(token);
+        if (claims == null || revokedTokens.containsKey(claims.tokenId())) {
+            rejected.increment();
+            return null;
+        }
+        verified.increment();
+        return new AuthPrincipal(claims.userId(), claims.role(), claims.residentId(), claims.flatNumber());
+    }
+
+    public void revoke(String token) {
+        Claims claims = parse(token);
+        if (claims != null && revokedTokens.put(claims.tokenId(), claims.expiresAt()) == null) {
+            try {
+                revokedTokenRepository.save(new RevokedToken(claims.tokenId(), claims.expiresAt(), System.currentTimeMillis()));
+            } catch (DataIntegrityViolationException e) {
+                // Already revoked through another instance
+            }
+        }
+    }
+
+    // Picks up tokens revoked on other instances. Does nothing without signing keys, i.e. in session mode.
+    @Scheduled(fixedDelayString = "${auth.token.revocation-sync-ms:5000}")
+    public void syncRevocations() {
+        if (!isConfigured()) {
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        long since = lastSyncMillis == 0 ? 0 : lastSyncMillis - SYNC_OVERLAP_MS;
+        for (Object[] row : revokedTokenRepository.findRevokedSince(since)) {
+            revokedTokens.put((String) row[0], (Long) row[1]);
+        }
+        lastSyncMillis = startedAt;
+        syncs.increment();
+    }
+
+    // Revoked entries only need to outlive the token itself
+    @Scheduled(fixedDelayString = "${auth.session.sweep-interval-ms:60000}")
+    public void pruneRevocations() {
+        if (!isConfigured()) {
+            return;
+        }
+        long now = Instant.now().getEpochSecond();
+        revokedTokens.values().removeIf(expiresAt -> expiresAt < now);
+        revokedTokenRepository.deleteExpired(now);
+    }
+
+    private Claims parse(String token) {
+        if (token == null) {
+            return null;
+        }
+        String[] parts = token.split("\\.");
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            return null;
+        }
+        SecretKeySpec key = keys.get(parts[1]);
+        if (key == null) {
+            return null;
+        }
+        try {
+            byte[] expected = sign(key, parts[0] + "." + parts[1] + "." + parts[2]);
+            if (!MessageDigest.isEqual(expected, B64_DECODER.decode(parts[3]))) {
+                return null;
+            }
+            String[] fields = new String(B64_DECODER.decode(parts[2]), StandardCharsets.UTF_8).split("\\|", 6);
+            if (fields.length != 6) {
+                return null;
+            }
+            long expiresAt = Long.parseLong(fields[1]);
+            if (expiresAt < Instant.now().getEpochSecond()) {
+                return null;
+            }
+            Long residentId = fields[4].isEmpty() ? null : Long.valueOf(fields[4]);
+            String flatNumber = fields[5].isEmpty() ? null : fields[5];
+            return new Claims(fields[0], expiresAt, Long.valueOf(fields[2]), fields[3], residentId, flatNumber);
+        } catch (IllegalArgumentException e) { // Bad base64 or numbers
+            return null;
+        }
+    }
+
+    private static byte[] sign(SecretKeySpec key, String input) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(input.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC signing failed", e);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "signedTokens";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("activeKeyId", activeKeyId);
+        snapshot.put("keyCount", keys.size());
+        snapshot.put("issued", issued.sum());
+        snapshot.put("verified", verified.sum());
+        snapshot.put("rejected", rejected.sum());
+        snapshot.put("revoked", revokedTokens.size());
+        snapshot.put("revocationSyncs", syncs.sum());
+        return snapshot;
+    }
+
+    private record Claims(String tokenId, long expiresAt, Long userId, String role, Long residentId, String flatNumber) {}
+}
@@ -11,9 +11,11 @@ import java.util.Optional;
 public class AnnouncementService {
 
     private final AnnouncementRepository announcementRepository;
+    private final SearchService searchService;
 
-    public AnnouncementService(AnnouncementRepository announcementRepository) {
+    public AnnouncementService(AnnouncementRepository announcementRepository, SearchService searchService) {
         this.announcementRepository = announcementRepository;
+        this.searchService = searchService;
     }
 
     public List<Announcement> getAllAnnouncements() {
@@ -25,7 +27,9 @@ public class AnnouncementService {
     }
 
     public Announcement createAnnouncement(Announcement announcement) {
-        return announcementRepository.save(announcement);
+        Announcement savedAnnouncement = announcementRepository.save(announcement);
+        searchService.announcementSaved(savedAnnouncement);
+        return savedAnnouncement;
     }
 
     public Optional<Announcement> updateAnnouncement(Long id, Announcement announcementDetails) {
@@ -34,13 +38,16 @@ public class AnnouncementService {
                     announcement.setTitle(announcementDetails.getTitle());
                     announcement.setContent(announcementDetails.getContent());
                     announcement.setAnnouncementDate(announcementDetails.getAnnouncementDate());
-                    return announcementRepository.save(announcement);
+                    Announcement savedAnnouncement = announcementRepository.save(announcement);
+                    searchService.announcementSaved(savedAnnouncement);
+                    return savedAnnouncement;
                 });
     }
 
     public boolean deleteAnnouncement(Long id) {
         if (announcementRepository.existsById(id)) {
             announcementRepository.deleteById(id);
+            searchService.announcementDeleted(id);
             return true;
         }
         return false;
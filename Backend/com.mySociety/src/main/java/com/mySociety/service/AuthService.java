@@ -2,10 +2,13 @@ package com.mySociety.service;
 
 import com.mySociety.model.User;
 import com.mySociety.repository.UserRepository;
+import com.mySociety.security.AuthPrincipal;
+import com.mySociety.security.PasswordHasher;
+import com.mySociety.security.SessionStore;
+import com.mySociety.security.SignedTokenService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -13,33 +16,79 @@ import java.util.UUID;
 public class AuthService {
 
     private final UserRepository userRepository;
-    // In a real application, use a proper JWT library or Spring Security for tokens.
-    // This is a very basic in-memory token store for demonstration.
-    private final Map<String, User> activeTokens = new HashMap<>();
+    // Tokens live in a concurrent store with idle/absolute expiry and LRU eviction
+    private final SessionStore sessionStore;
+    // "session" keeps tokens in the local SessionStore; "signed" issues HMAC-signed tokens
+    // that any instance sharing the signing keys can validate without a lookup
+    private final SignedTokenService signedTokenService;
+    private final boolean signedTokens;
+    private final PasswordHasher passwordHasher;
+    private final EventStreamService eventStreamService; // Streams opened with a token end with it
 
-    public AuthService(UserRepository userRepository) {
+    public AuthService(UserRepository userRepository, SessionStore sessionStore,
+                       SignedTokenService signedTokenService, PasswordHasher passwordHasher,
+                       EventStreamService eventStreamService,
+                       @Value("${auth.token.mode:session}") String tokenMode) {
         this.userRepository = userRepository;
+        this.eventStreamService = eventStreamService;
+        this.sessionStore = sessionStore;
+        this.signedTokenService = signedTokenService;
+        this.passwordHasher = passwordHasher;
+        this.signedTokens = "signed".equalsIgnoreCase(tokenMode);
+        if (signedTokens && !signedTokenService.isConfigured()) {
+            throw new IllegalStateException("auth.token.mode=signed requires auth.token.keys and auth.token.active-key-id");
+        }
     }
 
+    // Throws HashingRejectedException when the hashing pool is saturated
     public String login(String username, String password) {
-        Optional<User> userOptional = userRepository.findByUsername(username);
-        if (userOptional.isPresent()) {
-            User user = userOptional.get();
-            // IMPORTANT: In a real application, compare hashed passwords (e.g., using BCrypt)
-            if (user.getPassword().equals(password)) { // Simple string comparison for this example
-                String token = UUID.randomUUID().toString();
-                activeTokens.put(token, user);
-                return token;
+        if (password == null) {
+            return null;
+        }
+        Optional<User> userOptional = userRepository.findByUsernameWithResident(username);
+        if (userOptional.isEmpty()) {
+            passwordHasher.verifyUnknownUser(password); // Unknown usernames take as long as wrong passwords
+            return null;
+        }
+        User user = userOptional.get();
+        PasswordHasher.Verification verification = passwordHasher.verify(password, user.getPassword());
+        if (verification.matches()) {
+            // Plaintext rows from before hashing, or hashes with an old cost, are upgraded on login
+            if (verification.upgradedHash() != null) {
+                userRepository.updatePassword(user.getId(), verification.upgradedHash());
             }
+            AuthPrincipal principal = AuthPrincipal.of(user);
+            if (signedTokens) {
+                return signedTokenService.issue(principal);
+            }
+            String token = UUID.randomUUID().toString();
+            sessionStore.put(token, principal);
+            return token;
         }
         return null; // Authentication failed
     }
 
-    public User validateToken(String token) {
-        return activeTokens.get(token);
+    public AuthPrincipal validateToken(String token) {
+        if (signedTokens) {
+            return signedTokenService.verify(token);
+        }
+        return sessionStore.get(token);
+    }
+
+    // Like validateToken, but a check alone does not keep an idle session alive
+    public boolean isTokenActive(String token) {
+        if (signedTokens) {
+            return signedTokenService.verify(token) != null;
+        }
+        return sessionStore.isLive(token);
     }
 
     public void logout(String token) {
-        activeTokens.remove(token);
+        if (signedTokens) {
+            signedTokenService.revoke(token);
+        } else {
+            sessionStore.remove(token);
+        }
+        eventStreamService.closeToken(token);
     }
 }
\ No newline at end of file
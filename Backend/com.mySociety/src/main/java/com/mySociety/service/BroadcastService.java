@@ -0,0 +1,139 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.BroadcastRequest;
+import com.mySociety.dto.BroadcastResult;
+import com.mySociety.model.Message;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.ResidentSpecifications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Sends the same admin message to many residents at once.
+// Recipients are resolved with a single id/flat-number query, then messages and their
+// message_threads rows are inserted as JDBC batches (pooled ids plus hibernate.jdbc.batch_size),
+// one transaction per chunk so a large broadcast never holds one huge transaction open.
+// A failure stops the remaining chunks; chunks that already committed stay delivered.
+@Service
+public class BroadcastService {
+
+    private static final Logger log = LoggerFactory.getLogger(BroadcastService.class);
+
+    private final ResidentRepository residentRepository;
+    private final MessageRepository messageRepository;
+    private final InboxService inboxService;
+    private final UnreadCounterService unreadCounterService;
+    private final EventStreamService eventStreamService;
+    private final SearchService searchService;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public BroadcastService(ResidentRepository residentRepository, MessageRepository messageRepository,
+                            InboxService inboxService, UnreadCounterService unreadCounterService,
+                            EventStreamService eventStreamService, SearchService searchService,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${messages.broadcast.chunk-size:500}") int chunkSize) {
+        this.residentRepository = residentRepository;
+        this.messageRepository = messageRepository;
+        this.inboxService = inboxService;
+        this.unreadCounterService = unreadCounterService;
+        this.eventStreamService = eventStreamService;
+        this.searchService = searchService;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    // Throws IllegalArgumentException for an invalid request
+    public BroadcastResult broadcast(Long adminUserId, BroadcastRequest request) {
+        if (request.subject() == null || request.subject().isBlank() || request.content() == null) {
+            throw new IllegalArgumentException("subject and content are required.");
+        }
+        long start = System.nanoTime();
+
+        List<Object[]> recipients;
+        List<String> unknownFlatNumbers = List.of();
+        String target = request.target() == null ? "" : request.target().toUpperCase();
+        switch (target) {
+            case "ALL" -> recipients = residentRepository.findAllIdsAndFlatNumbers();
+            case "PREFIX" -> {
+                if (request.flatPrefix() == null || request.flatPrefix().isEmpty()) {
+                    throw new IllegalArgumentException("flatPrefix is required for target PREFIX.");
+                }
+                recipients = residentRepository.findIdsAndFlatNumbersByFlatPrefix(ResidentSpecifications.escapeLike(request.flatPrefix()));
+            }
+            case "LIST" -> {
+                if (request.flatNumbers() == null || request.flatNumbers().isEmpty()) {
+                    throw new IllegalArgumentException("flatNumbers is required for target LIST.");
+                }
+                Set<String> requested = new LinkedHashSet<>(request.flatNumbers());
+                recipients = residentRepository.findIdsAndFlatNumbersByFlatNumberIn(requested);
+                for (Object[] row : recipients) {
+                    requested.remove((String) row[1]);
+                }
+                unknownFlatNumbers = List.copyOf(requested);
+            }
+            default -> throw new IllegalArgumentException("target must be ALL, PREFIX or LIST.");
+        }
+
+        List<Long> residentIds = recipients.stream().map(row -> (Long) row[0]).toList();
+        LocalDateTime createdAt = LocalDateTime.now();
+        int inserted = 0;
+        int chunks = 0;
+        for (int from = 0; from < residentIds.size(); from += chunkSize) {
+            List<Long> chunk = residentIds.subList(from, Math.min(from + chunkSize, residentIds.size()));
+            Integer written = transactionTemplate.execute(status ->
+                    insertChunk(adminUserId, chunk, request.subject(), request.content(), createdAt));
+            inserted += written == null ? 0 : written;
+            chunks++;
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Broadcast '{}' to {} residents in {} chunks ({} ms)", request.subject(), inserted, chunks, elapsedMillis);
+        return new BroadcastResult(residentIds.size(), inserted, chunks, elapsedMillis, unknownFlatNumbers);
+    }
+
+    private int insertChunk(Long adminUserId, List<Long> residentIds, String subject, String content, LocalDateTime createdAt) {
+        List<Message> messages = new ArrayList<>(residentIds.size());
+        for (Long residentId : residentIds) {
+            Message message = new Message();
+            message.setSenderUserId(adminUserId);
+            message.setSenderRole("ADMIN");
+            message.setRecipientResident(residentRepository.getReferenceById(residentId)); // No select, just the key
+            message.setSubject(subject);
+            message.setContent(content);
+            message.setStatus("UNREAD");
+            message.setCreatedAt(createdAt);
+            message.setUpdatedAt(createdAt);
+            messages.add(message);
+        }
+        // Pooled ids are assigned without touching the messages table, so the inserts are batched at flush.
+        // Each message starts its own thread and is numbered as it is persisted (ThreadRootInterceptor).
+        messageRepository.saveAll(messages);
+        inboxService.recordThreadsStarted(messages);
+
+        unreadCounterService.adminMessagesAdded(residentIds);
+        searchService.messagesSaved(messages);
+        for (Message message : messages) {
+            Map<String, Object> event = new HashMap<>();
+            event.put("messageId", message.getId());
+            event.put("rootMessageId", message.getId());
+            event.put("residentId", message.getRecipientResident().getId());
+            event.put("senderRole", "ADMIN");
+            event.put("subject", subject);
+            event.put("createdAt", createdAt);
+            eventStreamService.publishToResident(message.getRecipientResident().getId(), "message", event);
+        }
+        return messages.size();
+    }
+}
@@ -1,52 +1,119 @@
 package com.mySociety.service;
 
+import com.mySociety.dto.ComplaintView;
+import com.mySociety.dto.Cursor;
+import com.mySociety.dto.CursorPage;
+import com.mySociety.dto.PageSizes;
+import com.mySociety.dto.ResidentRef;
+import com.mySociety.dto.ResidentView;
 import com.mySociety.model.Complaint;
 import com.mySociety.model.Resident;
 import com.mySociety.repository.ComplaintRepository;
 import com.mySociety.repository.ResidentRepository;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static com.mySociety.repository.ComplaintSpecifications.*;
+
 @Service
 public class ComplaintService {
 
     private final ComplaintRepository complaintRepository;
     private final ResidentRepository residentRepository;
+    private final EventStreamService eventStreamService; // Pushes status changes to connected clients
+    private final SearchService searchService;
+    private final ResidentCache residentCache;
+    private final DashboardSummaryService dashboardSummaryService;
 
-    public ComplaintService(ComplaintRepository complaintRepository, ResidentRepository residentRepository) {
+    public ComplaintService(ComplaintRepository complaintRepository, ResidentRepository residentRepository,
+                            EventStreamService eventStreamService, SearchService searchService,
+                            ResidentCache residentCache, DashboardSummaryService dashboardSummaryService) {
         this.complaintRepository = complaintRepository;
         this.residentRepository = residentRepository;
+        this.eventStreamService = eventStreamService;
+        this.searchService = searchService;
+        this.residentCache = residentCache;
+        this.dashboardSummaryService = dashboardSummaryService;
+    }
+
+    public List<ComplaintView> getAllComplaints() {
+        return complaintRepository.findAllViews();
+    }
+
+    // Keyset page of complaints, newest first, with each resident fetched in the same select.
+    // Every filter is optional and applied in SQL, so a page is one statement however many
+    // complaints or residents there are. Ordered by filing time rather than id, since pooled
+    // ids are only roughly in insert order across instances.
+    @Transactional(readOnly = true)
+    public CursorPage<ComplaintView> getComplaintPage(Cursor cursor, Integer limit, String status, Long residentId) {
+        int pageSize = PageSizes.clamp(limit);
+        Specification<Complaint> filter = Specification.allOf(
+                hasStatus(status == null || status.isBlank() ? null : status), hasResident(residentId), after(cursor), fetchResident());
+        // One extra row tells us whether another page exists
+        List<Complaint> rows = complaintRepository.findBy(filter, query -> query
+                .sortBy(Sort.by(Sort.Direction.DESC, "createdAt", "id"))
+                .limit(pageSize + 1)
+                .all());
+
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows.stream().map(ComplaintService::view).toList(), null);
+        }
+        List<Complaint> items = rows.subList(0, pageSize);
+        Complaint last = items.get(pageSize - 1);
+        return new CursorPage<>(items.stream().map(ComplaintService::view).toList(), new Cursor(last.getCreatedAt(), last.getId()).encode());
     }
 
-    public List<Complaint> getAllComplaints() {
-        return complaintRepository.findAll();
+    // The resident must have been fetched with the complaint
+    private static ComplaintView view(Complaint complaint) {
+        Resident resident = complaint.getResident();
+        return new ComplaintView(complaint.getId(), complaint.getSubject(), complaint.getDescription(), complaint.getStatus(),
+                new ResidentRef(resident.getId(), resident.getName(), resident.getFlatNumber()));
     }
 
     public Optional<Complaint> getComplaintById(Long id) {
         return complaintRepository.findById(id);
     }
 
-    public Complaint submitComplaint(Long residentId, Complaint complaint) {
-        Optional<Resident> residentOptional = residentRepository.findById(residentId);
+    // The resident is checked against ResidentCache and referenced by key, so no resident row is read
+    public ComplaintView submitComplaint(Long residentId, Complaint complaint) {
+        Optional<ResidentView> residentOptional = residentCache.findById(residentId);
         if (residentOptional.isPresent()) {
-            complaint.setResident(residentOptional.get());
+            complaint.setResident(residentRepository.getReferenceById(residentId));
             complaint.setStatus("PENDING"); // Default status
-            return complaintRepository.save(complaint);
+            complaint.setCreatedAt(LocalDateTime.now()); // Filing time is the server's, whatever the body said
+            Complaint savedComplaint = complaintRepository.save(complaint);
+            searchService.complaintSaved(savedComplaint);
+            dashboardSummaryService.complaintStatusChanged(null, savedComplaint.getStatus());
+            return new ComplaintView(savedComplaint.getId(), savedComplaint.getSubject(), savedComplaint.getDescription(),
+                    savedComplaint.getStatus(), residentOptional.get().ref());
         }
         throw new RuntimeException("Resident not found with ID: " + residentId);
     }
 
-    public Optional<Complaint> updateComplaintStatus(Long id, String status) {
-        return complaintRepository.findById(id)
+    // The complaint and its resident are read in one select
+    public Optional<ComplaintView> updateComplaintStatus(Long id, String status) {
+        return complaintRepository.findWithResidentById(id)
                 .map(complaint -> {
+                    String oldStatus = complaint.getStatus();
                     complaint.setStatus(status);
-                    return complaintRepository.save(complaint);
+                    Complaint savedComplaint = complaintRepository.save(complaint);
+                    dashboardSummaryService.complaintStatusChanged(oldStatus, status);
+                    Long residentId = savedComplaint.getResident().getId();
+                    Map<String, Object> event = Map.of("complaintId", savedComplaint.getId(), "residentId", residentId, "status", status);
+                    eventStreamService.publishToResident(residentId, "complaint-status", event);
+                    eventStreamService.publishToAdmins("complaint-status", event);
+                    return view(complaint); // Its resident was loaded above; the merged copy's may not be
                 });
     }
 
-    public List<Complaint> getComplaintsByResident(Long residentId) {
-        return complaintRepository.findByResidentId(residentId);
+    public List<ComplaintView> getComplaintsByResident(Long residentId) {
+        return complaintRepository.findViewsByResidentId(residentId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.mySociety.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+// Complaints filed before complaints.created_at existed have no filing time. Keyset pages compare
+// on (created_at, id), which a NULL would drop out of, so those rows are set to the epoch: they
+// sort after every dated complaint and among themselves by id. Runs before the web server accepts
+// requests (like ThreadPositionBackfill); a no-op once every row has a value.
+@Service
+public class ComplaintTimestampBackfill implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(ComplaintTimestampBackfill.class);
+    static final LocalDateTime UNKNOWN_FILING_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ComplaintTimestampBackfill(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        int updated = jdbcTemplate.update("UPDATE complaints SET created_at = ? WHERE created_at IS NULL",
+                Timestamp.valueOf(UNKNOWN_FILING_TIME));
+        if (updated > 0) {
+            log.info("Set the filing time of {} older complaints to {}", updated, UNKNOWN_FILING_TIME);
+        }
+    }
+}
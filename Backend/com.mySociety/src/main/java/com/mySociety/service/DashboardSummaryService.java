@@ -0,0 +1,199 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.AdminSummary;
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.EventRepository;
+import com.mySociety.repository.MaintenanceInvoiceRepository;
+import com.mySociety.repository.ResidentRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-memory totals behind the admin dashboard, so loading it is one call that reads no tables.
+// The services that write residents, complaints, events and maintenance invoices report each
+// change here, and it is applied once the surrounding transaction commits. Unread messages come
+// from UnreadCounterService. Events are counted per date, so events drop out of "upcoming" as
+// their day passes without any write. A full recount runs at startup and periodically to
+// correct any drift.
+@Service
+public class DashboardSummaryService implements MetricsSource {
+
+    private final ResidentRepository residentRepository;
+    private final ComplaintRepository complaintRepository;
+    private final EventRepository eventRepository;
+    private final MaintenanceInvoiceRepository invoiceRepository;
+    private final UnreadCounterService unreadCounterService;
+
+    private final AtomicLong residents = new AtomicLong();
+    private volatile ConcurrentHashMap<String, AtomicLong> complaintsByStatus = new ConcurrentHashMap<>();
+    private volatile ConcurrentSkipListMap<LocalDate, AtomicLong> eventsByDate = new ConcurrentSkipListMap<>();
+    // Guarded by this: the open invoice count and the amount left on them move together
+    private long openInvoices;
+    private BigDecimal outstandingDues = BigDecimal.ZERO;
+    private volatile LocalDateTime reconciledAt;
+
+    private final LongAdder reconciliations = new LongAdder();
+    private final LongAdder driftCorrections = new LongAdder();
+
+    public DashboardSummaryService(ResidentRepository residentRepository, ComplaintRepository complaintRepository,
+                                   EventRepository eventRepository, MaintenanceInvoiceRepository invoiceRepository,
+                                   UnreadCounterService unreadCounterService) {
+        this.residentRepository = residentRepository;
+        this.complaintRepository = complaintRepository;
+        this.eventRepository = eventRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.unreadCounterService = unreadCounterService;
+    }
+
+    public AdminSummary getSummary() {
+        Map<String, Long> complaints = new TreeMap<>();
+        complaintsByStatus.forEach((status, count) -> {
+            if (count.get() > 0) {
+                complaints.put(status, count.get());
+            }
+        });
+        long upcoming = 0;
+        for (AtomicLong count : eventsByDate.tailMap(LocalDate.now()).values()) {
+            upcoming += count.get();
+        }
+        long invoices;
+        BigDecimal dues;
+        synchronized (this) {
+            invoices = openInvoices;
+            dues = outstandingDues;
+        }
+        return new AdminSummary(residents.get(), invoices, dues, complaints,
+                unreadCounterService.getAdminUnreadCount(), upcoming, reconciledAt);
+    }
+
+    public void residentsAdded(int count) {
+        TransactionCallbacks.afterCommit(() -> adjust(residents, count));
+    }
+
+    public void residentsRemoved(int count) {
+        TransactionCallbacks.afterCommit(() -> adjust(residents, -count));
+    }
+
+    // oldStatus is null for a new complaint and newStatus null for a removed one
+    public void complaintStatusChanged(String oldStatus, String newStatus) {
+        TransactionCallbacks.afterCommit(() -> {
+            if (oldStatus != null) {
+                adjust(complaintsByStatus.computeIfAbsent(oldStatus, status -> new AtomicLong()), -1);
+            }
+            if (newStatus != null) {
+                adjust(complaintsByStatus.computeIfAbsent(newStatus, status -> new AtomicLong()), 1);
+            }
+        });
+    }
+
+    // Complaints deleted with their resident, as counts by status
+    public void complaintsRemoved(Map<String, Long> countsByStatus) {
+        TransactionCallbacks.afterCommit(() -> countsByStatus.forEach((status, count) ->
+                adjust(complaintsByStatus.computeIfAbsent(status, key -> new AtomicLong()), -count)));
+    }
+
+    // oldDate is null for a new event and newDate null for a removed one
+    public void eventDateChanged(LocalDate oldDate, LocalDate newDate) {
+        TransactionCallbacks.afterCommit(() -> {
+            if (oldDate != null) {
+                adjust(eventsByDate.computeIfAbsent(oldDate, date -> new AtomicLong()), -1);
+            }
+            if (newDate != null) {
+                adjust(eventsByDate.computeIfAbsent(newDate, date -> new AtomicLong()), 1);
+            }
+        });
+    }
+
+    // New invoices were issued for this total
+    public void invoicesIssued(int count, BigDecimal total) {
+        TransactionCallbacks.afterCommit(() -> adjustDues(count, total));
+    }
+
+    // A payment reduced what is owed; settled when it paid an invoice off
+    public void paymentApplied(BigDecimal amount, boolean settled) {
+        TransactionCallbacks.afterCommit(() -> adjustDues(settled ? -1 : 0, amount.negate()));
+    }
+
+    // Invoices were removed with this much still owed on the open ones
+    public void invoicesRemoved(int openCount, BigDecimal outstanding) {
+        TransactionCallbacks.afterCommit(() -> adjustDues(-openCount, outstanding.negate()));
+    }
+
+    private synchronized void adjustDues(int invoices, BigDecimal amount) {
+        openInvoices = Math.max(0, openInvoices + invoices);
+        outstandingDues = outstandingDues.add(amount).max(BigDecimal.ZERO);
+    }
+
+    private static void adjust(AtomicLong counter, long delta) {
+        counter.updateAndGet(value -> Math.max(0, value + delta));
+    }
+
+    // Replaces the counters with fresh counts from the database. A change that commits while
+    // the recount is running may be missed until the next run.
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${dashboard.summary.reconcile-interval-ms:300000}",
+               fixedDelayString = "${dashboard.summary.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        long residentCount = residentRepository.count();
+
+        ConcurrentHashMap<String, AtomicLong> complaints = new ConcurrentHashMap<>();
+        for (Object[] row : complaintRepository.countByStatus()) {
+            if (row[0] != null) {
+                complaints.put((String) row[0], new AtomicLong((Long) row[1]));
+            }
+        }
+
+        ConcurrentSkipListMap<LocalDate, AtomicLong> events = new ConcurrentSkipListMap<>();
+        for (Object[] row : eventRepository.countByDateFrom(LocalDate.now())) {
+            events.put((LocalDate) row[0], new AtomicLong((Long) row[1]));
+        }
+
+        Object[] dues = invoiceRepository.summarizeOutstanding().get(0);
+        long invoiceCount = (Long) dues[0];
+        BigDecimal outstanding = (BigDecimal) dues[1];
+
+        long drift = Math.abs(residents.getAndSet(residentCount) - residentCount);
+        for (Map.Entry<String, AtomicLong> entry : complaints.entrySet()) {
+            AtomicLong current = complaintsByStatus.get(entry.getKey());
+            drift += Math.abs((current == null ? 0 : current.get()) - entry.getValue().get());
+        }
+        complaintsByStatus = complaints;
+        eventsByDate = events;
+        synchronized (this) {
+            drift += Math.abs(openInvoices - invoiceCount);
+            openInvoices = invoiceCount;
+            outstandingDues = outstanding;
+        }
+        reconciledAt = LocalDateTime.now();
+
+        reconciliations.increment();
+        driftCorrections.add(drift);
+    }
+
+    @Override
+    public String metricsName() {
+        return "dashboardSummary";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("reconciliations", reconciliations.sum());
+        snapshot.put("driftCorrected", driftCorrections.sum());
+        snapshot.put("eventDatesTracked", eventsByDate.size());
+        return snapshot;
+    }
+}
@@ -4,6 +4,7 @@ import com.mySociety.model.Event;
 import com.mySociety.repository.EventRepository;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,9 +12,11 @@ import java.util.Optional;
 public class EventService {
 
     private final EventRepository eventRepository;
+    private final DashboardSummaryService dashboardSummaryService;
 
-    public EventService(EventRepository eventRepository) {
+    public EventService(EventRepository eventRepository, DashboardSummaryService dashboardSummaryService) {
         this.eventRepository = eventRepository;
+        this.dashboardSummaryService = dashboardSummaryService;
     }
 
     public List<Event> getAllEvents() {
@@ -25,22 +28,29 @@ public class EventService {
     }
 
     public Event createEvent(Event event) {
-        return eventRepository.save(event);
+        Event savedEvent = eventRepository.save(event);
+        dashboardSummaryService.eventDateChanged(null, savedEvent.getEventDate());
+        return savedEvent;
     }
 
     public Optional<Event> updateEvent(Long id, Event eventDetails) {
         return eventRepository.findById(id)
                 .map(event -> {
+                    LocalDate oldDate = event.getEventDate();
                     event.setTitle(eventDetails.getTitle());
                     event.setDescription(eventDetails.getDescription());
                     event.setEventDate(eventDetails.getEventDate());
-                    return eventRepository.save(event);
+                    Event savedEvent = eventRepository.save(event);
+                    dashboardSummaryService.eventDateChanged(oldDate, savedEvent.getEventDate());
+                    return savedEvent;
                 });
     }
 
     public boolean deleteEvent(Long id) {
-        if (eventRepository.existsById(id)) {
-            eventRepository.deleteById(id);
+        Optional<Event> event = eventRepository.findById(id);
+        if (event.isPresent()) {
+            eventRepository.delete(event.get());
+            dashboardSummaryService.eventDateChanged(event.get().getEventDate(), null);
             return true;
         }
         return false;
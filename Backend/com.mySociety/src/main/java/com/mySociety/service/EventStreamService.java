@@ -0,0 +1,242 @@
+package com.mySociety.service;
+
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.security.AuthPrincipal;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+// Server-Sent Events push channel so clients learn about new messages and complaint updates
+// without polling. Each connection is subscribed to one channel: "admin" for every admin, or
+// "resident:<id>" for one resident.
+//
+// Publishing never blocks the caller: events are queued on each connection's bounded buffer
+// and written by a small sender pool. A connection whose buffer overflows is closed; the
+// client reconnects and refetches. Events raised inside a transaction are published only
+// after it commits.
+//
+// A stream lives only as long as the token that opened it: logging out closes the token's
+// streams at once, deleting a resident closes their users' streams, and each heartbeat
+// re-checks the token so expiry or revocation on another instance ends the stream too.
+@Service
+public class EventStreamService implements MetricsSource {
+
+    private static final String ADMIN_CHANNEL = "admin";
+
+    private final ConcurrentHashMap<String, Set<Connection>> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final ExecutorService sender;
+    private final int maxConnections;
+    private final int bufferSize;
+    private final long timeoutMillis;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder unauthorizedClosed = new LongAdder();
+
+    public EventStreamService(@Value("${events.max-connections:2000}") int maxConnections,
+                              @Value("${events.buffer-size:32}") int bufferSize,
+                              @Value("${events.timeout-ms:1800000}") long timeoutMillis,
+                              @Value("${events.sender-threads:2}") int senderThreads) {
+        this.maxConnections = maxConnections;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sse-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Returns null when the connection cap has been reached. stillAuthorized is re-checked on
+    // every heartbeat and the stream closed once it returns false.
+    public SseEmitter subscribe(AuthPrincipal principal, String token, BooleanSupplier stillAuthorized) {
+        if (!principal.isAdmin() && principal.residentId() == null) {
+            throw new IllegalArgumentException("No resident is linked to this account.");
+        }
+        if (connectionCount.incrementAndGet() > maxConnections) {
+            connectionCount.decrementAndGet();
+            rejectedConnections.increment();
+            return null;
+        }
+        String channel = principal.isAdmin() ? ADMIN_CHANNEL : residentChannel(principal.residentId());
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Connection connection = new Connection(channel, emitter, bufferSize, principal.userId(), token, stillAuthorized);
+        channels.computeIfAbsent(channel, key -> ConcurrentHashMap.newKeySet()).add(connection);
+
+        emitter.onCompletion(() -> remove(connection));
+        emitter.onTimeout(() -> remove(connection));
+        emitter.onError(error -> remove(connection));
+
+        enqueue(connection, SseEmitter.event().name("connected").data(Map.of("channel", channel)));
+        return emitter;
+    }
+
+    // Called on logout
+    public void closeToken(String token) {
+        closeWhere(connection -> connection.token.equals(token));
+    }
+
+    // Called once a user's account is gone
+    public void closeUser(Long userId) {
+        closeWhere(connection -> userId.equals(connection.userId));
+    }
+
+    public void publishToResident(Long residentId, String eventName, Map<String, Object> payload) {
+        if (residentId != null) {
+            TransactionCallbacks.afterCommit(() -> publish(residentChannel(residentId), eventName, payload));
+        }
+    }
+
+    public void publishToAdmins(String eventName, Map<String, Object> payload) {
+        TransactionCallbacks.afterCommit(() -> publish(ADMIN_CHANNEL, eventName, payload));
+    }
+
+    // Comment lines keep proxies from closing idle streams and flush out dead connections.
+    // Streams whose token has expired or been revoked are closed instead.
+    @Scheduled(fixedDelayString = "${events.heartbeat-interval-ms:25000}")
+    public void sendHeartbeats() {
+        for (Set<Connection> connections : channels.values()) {
+            for (Connection connection : connections) {
+                if (connection.stillAuthorized.getAsBoolean()) {
+                    enqueue(connection, SseEmitter.event().comment("heartbeat"));
+                } else {
+                    unauthorizedClosed.increment();
+                    close(connection);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        channels.values().forEach(connections -> connections.forEach(connection -> connection.emitter.complete()));
+        sender.shutdown();
+    }
+
+    private void publish(String channel, String eventName, Map<String, Object> payload) {
+        Set<Connection> connections = channels.get(channel);
+        if (connections == null) {
+            return;
+        }
+        published.increment();
+        for (Connection connection : connections) {
+            enqueue(connection, SseEmitter.event().name(eventName).data(payload));
+        }
+    }
+
+    private void enqueue(Connection connection, SseEmitter.SseEventBuilder event) {
+        if (!connection.pending.offer(event)) {
+            // Client is not keeping up; drop it rather than buffer without bound
+            overflowed.increment();
+            close(connection);
+            return;
+        }
+        if (connection.draining.compareAndSet(false, true)) {
+            sender.execute(() -> drain(connection));
+        }
+    }
+
+    private void drain(Connection connection) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while ((event = connection.pending.poll()) != null) {
+                connection.emitter.send(event);
+                delivered.increment();
+            }
+        } catch (IOException | IllegalStateException e) {
+            remove(connection); // Client went away
+            connection.pending.clear();
+        } finally {
+            connection.draining.set(false);
+        }
+        // An event may have arrived after the last poll but before draining was cleared
+        if (!connection.pending.isEmpty() && connection.draining.compareAndSet(false, true)) {
+            sender.execute(() -> drain(connection));
+        }
+    }
+
+    private void closeWhere(Predicate<Connection> predicate) {
+        for (Set<Connection> connections : channels.values()) {
+            for (Connection connection : connections) {
+                if (predicate.test(connection)) {
+                    close(connection);
+                }
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        remove(connection);
+        connection.emitter.complete();
+    }
+
+    private void remove(Connection connection) {
+        Set<Connection> connections = channels.get(connection.channel);
+        if (connections != null && connections.remove(connection)) {
+            connectionCount.decrementAndGet();
+        }
+    }
+
+    private static String residentChannel(Long residentId) {
+        return "resident:" + residentId;
+    }
+
+    @Override
+    public String metricsName() {
+        return "eventStream";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("connections", connectionCount.get());
+        snapshot.put("maxConnections", maxConnections);
+        snapshot.put("published", published.sum());
+        snapshot.put("delivered", delivered.sum());
+        snapshot.put("overflowed", overflowed.sum());
+        snapshot.put("rejectedConnections", rejectedConnections.sum());
+        snapshot.put("unauthorizedClosed", unauthorizedClosed.sum());
+        return snapshot;
+    }
+
+    private static final class Connection {
+        private final String channel;
+        private final SseEmitter emitter;
+        private final Queue<SseEmitter.SseEventBuilder> pending;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final Long userId;
+        private final String token;
+        private final BooleanSupplier stillAuthorized;
+
+        private Connection(String channel, SseEmitter emitter, int bufferSize, Long userId, String token,
+                           BooleanSupplier stillAuthorized) {
+            this.channel = channel;
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(bufferSize);
+            this.userId = userId;
+            this.token = token;
+            this.stillAuthorized = stillAuthorized;
+        }
+    }
+}
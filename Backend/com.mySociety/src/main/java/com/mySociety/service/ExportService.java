@@ -0,0 +1,284 @@
+package com.mySociety.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mySociety.csv.CsvWriter;
+import com.mySociety.dto.ComplaintView;
+import com.mySociety.dto.MessageView;
+import com.mySociety.dto.ResidentRef;
+import com.mySociety.dto.ResidentView;
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.ResidentRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// Full-table exports of residents, complaints and messages as CSV or NDJSON, optionally gzipped.
+// Rows are streamed from the database with a per-statement fetch size (exports.fetch-size), are
+// written as they arrive and flushed to the client every FLUSH_ROWS rows, so the heap holds a few
+// rows no matter how large the table is. On MySQL the default of Integer.MIN_VALUE makes
+// Connector/J stream the result row by row; only these statements are affected, so the rest of
+// the application keeps the driver's ordinary buffered, client-prepared statements. The queries select DTO projections, which leaves
+// nothing in the persistence context to detach. An export holds a database connection for the
+// whole download, so at most exports.max-concurrent run at once.
+@Service
+public class ExportService implements MetricsSource {
+
+    public enum Dataset { RESIDENTS, COMPLAINTS, MESSAGES }
+
+    public enum Format { CSV, NDJSON }
+
+    private static final Logger log = LoggerFactory.getLogger(ExportService.class);
+    private static final int FLUSH_ROWS = 1000;
+
+    private record Column<T>(String name, Function<T, Object> value) {}
+
+    private static final List<Column<ResidentView>> RESIDENT_COLUMNS = List.of(
+            new Column<>("id", ResidentView::id),
+            new Column<>("name", ResidentView::name),
+            new Column<>("email", ResidentView::email),
+            new Column<>("phone", ResidentView::phone),
+            new Column<>("flatNumber", ResidentView::flatNumber),
+            new Column<>("maintenanceCharge", r -> plain(r.maintenanceCharge())));
+
+    private static final List<Column<ComplaintView>> COMPLAINT_COLUMNS = List.of(
+            new Column<>("id", ComplaintView::id),
+            new Column<>("subject", ComplaintView::subject),
+            new Column<>("description", ComplaintView::description),
+            new Column<>("status", ComplaintView::status),
+            new Column<>("residentId", c -> residentField(c.resident(), ResidentRef::id)),
+            new Column<>("residentName", c -> residentField(c.resident(), ResidentRef::name)),
+            new Column<>("flatNumber", c -> residentField(c.resident(), ResidentRef::flatNumber)));
+
+    private static final List<Column<MessageView>> MESSAGE_COLUMNS = List.of(
+            new Column<>("id", MessageView::id),
+            new Column<>("senderUserId", MessageView::senderUserId),
+            new Column<>("senderRole", MessageView::senderRole),
+            new Column<>("recipientResidentId", m -> residentField(m.recipientResident(), ResidentRef::id)),
+            new Column<>("recipientFlatNumber", m -> residentField(m.recipientResident(), ResidentRef::flatNumber)),
+            new Column<>("parentMessageId", MessageView::parentMessageId),
+            new Column<>("threadRootId", MessageView::threadRootId),
+            new Column<>("threadSeq", MessageView::threadSeq),
+            new Column<>("subject", MessageView::subject),
+            new Column<>("content", MessageView::content),
+            new Column<>("status", MessageView::status),
+            new Column<>("createdAt", MessageView::createdAt),
+            new Column<>("updatedAt", MessageView::updatedAt));
+
+    // An export that has been admitted but not written yet; writeTo must be called exactly once
+    public final class Export {
+
+        private final Dataset dataset;
+        private final Format format;
+        private final boolean gzip;
+
+        private Export(Dataset dataset, Format format, boolean gzip) {
+            this.dataset = dataset;
+            this.format = format;
+            this.gzip = gzip;
+        }
+
+        public String filename() {
+            return dataset.name().toLowerCase(Locale.ROOT) + (format == Format.CSV ? ".csv" : ".ndjson") + (gzip ? ".gz" : "");
+        }
+
+        public String contentType() {
+            if (gzip) {
+                return "application/gzip";
+            }
+            return format == Format.CSV ? "text/csv; charset=UTF-8" : "application/x-ndjson";
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            long start = System.nanoTime();
+            CountingOutputStream counted = new CountingOutputStream(out);
+            try {
+                // Sync flush makes each flush push the compressed bytes so far to the client
+                GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(counted, 8192, true) : null;
+                Writer writer = new BufferedWriter(new OutputStreamWriter(gzip ? gzipStream : counted, StandardCharsets.UTF_8));
+                long rows = switch (dataset) {
+                    case RESIDENTS -> write(() -> stream(ResidentRepository.VIEW_SELECT + "ORDER BY r.id", ResidentView.class),
+                            RESIDENT_COLUMNS, writer);
+                    case COMPLAINTS -> write(() -> stream(ComplaintRepository.VIEW_SELECT + "ORDER BY c.id", ComplaintView.class),
+                            COMPLAINT_COLUMNS, writer);
+                    case MESSAGES -> write(() -> stream(MessageRepository.VIEW_SELECT + "ORDER BY m.id", MessageView.class),
+                            MESSAGE_COLUMNS, writer);
+                };
+                writer.flush();
+                if (gzipStream != null) {
+                    gzipStream.finish();
+                }
+                rowsExported.add(rows);
+                log.info("Exported {} rows to {} ({} bytes, {} ms)", rows, filename(),
+                        counted.count, (System.nanoTime() - start) / 1_000_000);
+            } finally {
+                bytesWritten.add(counted.count);
+                exports.increment();
+                slots.release();
+            }
+        }
+
+        private <T> long write(Supplier<Stream<T>> query, List<Column<T>> columns, Writer writer) throws IOException {
+            CsvWriter csv = format == Format.CSV ? new CsvWriter(writer) : null;
+            if (csv != null) {
+                csv.writeRecord(columns.stream().map(Column::name).toList());
+            }
+            try {
+                Long rows = readOnlyTransaction.execute(status -> {
+                    long count = 0;
+                    try (Stream<T> stream = query.get()) {
+                        Iterator<T> iterator = stream.iterator();
+                        List<Object> fields = new ArrayList<>(columns.size());
+                        while (iterator.hasNext()) {
+                            T row = iterator.next();
+                            if (csv != null) {
+                                fields.clear();
+                                for (Column<T> column : columns) {
+                                    fields.add(column.value().apply(row));
+                                }
+                                csv.writeRecord(fields);
+                            } else {
+                                writer.write(objectMapper.writeValueAsString(row));
+                                writer.write('\n');
+                            }
+                            if (++count % FLUSH_ROWS == 0) {
+                                writer.flush();
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e); // Usually the client went away
+                    }
+                    return count;
+                });
+                return rows == null ? 0 : rows;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int maxConcurrent;
+    private final Semaphore slots;
+
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder rowsExported = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ExportService(EntityManager entityManager, ObjectMapper objectMapper, TransactionTemplate transactionTemplate,
+                         @Value("${exports.max-concurrent:2}") int maxConcurrent,
+                         @Value("${exports.fetch-size:-2147483648}") int fetchSize) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxConcurrent = maxConcurrent;
+        this.slots = new Semaphore(maxConcurrent);
+    }
+
+    // Needs an open transaction; the caller closes the stream
+    private <T> Stream<T> stream(String jpql, Class<T> type) {
+        return entityManager.createQuery(jpql, type)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .getResultStream();
+    }
+
+    // Checks the request and reserves an export slot; the slot is released when writeTo finishes.
+    // Throws IllegalArgumentException for an unknown dataset or format, and IllegalStateException
+    // when the maximum number of exports is already running.
+    public Export open(String dataset, String format, boolean gzip) {
+        Dataset parsedDataset = parse(Dataset.class, dataset, "dataset must be residents, complaints or messages.");
+        Format parsedFormat = parse(Format.class, format, "format must be csv or ndjson.");
+        if (!slots.tryAcquire()) {
+            rejected.increment();
+            throw new IllegalStateException("Too many exports are running, try again later.");
+        }
+        return new Export(parsedDataset, parsedFormat, gzip);
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value, String error) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    private static String plain(BigDecimal value) {
+        return value == null ? null : value.toPlainString();
+    }
+
+    private static Object residentField(ResidentRef resident, Function<ResidentRef, Object> field) {
+        return resident == null ? null : field.apply(resident);
+    }
+
+    // Bytes actually sent, after compression
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "exports";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("active", maxConcurrent - slots.availablePermits());
+        snapshot.put("exports", exports.sum());
+        snapshot.put("rows", rowsExported.sum());
+        snapshot.put("bytes", bytesWritten.sum());
+        snapshot.put("rejected", rejected.sum());
+        return snapshot;
+    }
+}
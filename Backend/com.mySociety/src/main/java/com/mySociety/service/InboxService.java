@@ -0,0 +1,231 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.Cursor;
+import com.mySociety.dto.CursorPage;
+import com.mySociety.dto.PageSizes;
+import com.mySociety.model.Message;
+import com.mySociety.model.MessageThread;
+import com.mySociety.model.User;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.MessageThreadRepository;
+import com.mySociety.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Maintains the message_threads summary table.
+// The record* methods are called by MessageService inside its own transaction so the summary
+// commits or rolls back together with the message write. rebuild() recomputes everything
+// from the messages table for data written before the summary existed.
+@Service
+public class InboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(InboxService.class);
+    private static final int SNIPPET_LENGTH = 100;
+    private static final int REBUILD_CHUNK_SIZE = 500;
+
+    private final MessageThreadRepository messageThreadRepository;
+    private final MessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public InboxService(MessageThreadRepository messageThreadRepository, MessageRepository messageRepository,
+                        UserRepository userRepository, TransactionTemplate transactionTemplate) {
+        this.messageThreadRepository = messageThreadRepository;
+        this.messageRepository = messageRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // Inbox pages, most recently active first; a null cursor starts at the top
+    public CursorPage<MessageThread> getResidentInbox(Long residentId, Cursor cursor, Integer limit) {
+        PageRequest firstRows = PageRequest.of(0, PageSizes.clamp(limit) + 1);
+        return toPage(cursor == null
+                ? messageThreadRepository.findByResidentIdOrderByLastMessageAtDescRootMessageIdDesc(residentId, firstRows)
+                : messageThreadRepository.findResidentPageAfter(residentId, cursor.timestamp(), cursor.id(), firstRows),
+                limit);
+    }
+
+    public CursorPage<MessageThread> getAdminInbox(Cursor cursor, Integer limit) {
+        PageRequest firstRows = PageRequest.of(0, PageSizes.clamp(limit) + 1);
+        return toPage(cursor == null
+                ? messageThreadRepository.findAllByOrderByLastMessageAtDescRootMessageIdDesc(firstRows)
+                : messageThreadRepository.findPageAfter(cursor.timestamp(), cursor.id(), firstRows),
+                limit);
+    }
+
+    // The rows were fetched with one extra, which tells whether another page exists
+    private static CursorPage<MessageThread> toPage(List<MessageThread> rows, Integer limit) {
+        int pageSize = PageSizes.clamp(limit);
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows, null);
+        }
+        MessageThread last = rows.get(pageSize - 1);
+        return new CursorPage<>(rows.subList(0, pageSize), new Cursor(last.getLastMessageAt(), last.getRootMessageId()).encode());
+    }
+
+    // A new thread was started by the admin
+    @Transactional
+    public void recordThreadStarted(Message root) {
+        messageThreadRepository.save(newThread(root));
+    }
+
+    // Many threads started at once; saved together so Hibernate can send them as one JDBC batch
+    @Transactional
+    public void recordThreadsStarted(List<Message> roots) {
+        messageThreadRepository.saveAll(roots.stream().map(InboxService::newThread).toList());
+    }
+
+    // A reply was added; parentMarkedRead is true when writing the reply also marked its parent READ.
+    // Returns the reply's position in the thread. The UPDATE locks the summary row, so concurrent
+    // replies to the same thread are numbered one after another.
+    @Transactional
+    public int recordReply(Long rootMessageId, Message reply, Message parent, boolean parentMarkedRead) {
+        int residentDelta = "ADMIN".equals(reply.getSenderRole()) ? 1 : 0;
+        int adminDelta = "USER".equals(reply.getSenderRole()) ? 1 : 0;
+        if (parentMarkedRead) {
+            residentDelta -= "ADMIN".equals(parent.getSenderRole()) ? 1 : 0;
+            adminDelta -= "USER".equals(parent.getSenderRole()) ? 1 : 0;
+        }
+        int updated = messageThreadRepository.recordReply(rootMessageId, reply.getCreatedAt(), snippet(reply.getContent()), residentDelta, adminDelta);
+        if (updated == 0) {
+            // No summary row yet (it is created by the next rebuild). Number from the messages
+            // themselves, holding the root row so concurrent replies cannot read the same maximum.
+            messageRepository.lockThreadRoot(rootMessageId);
+            return messageRepository.findMaxThreadSeq(rootMessageId) + 1;
+        }
+        return messageThreadRepository.findReplyCount(rootMessageId);
+    }
+
+    // A message went from UNREAD to READ
+    @Transactional
+    public void recordMarkedRead(Long rootMessageId, Message message) {
+        int residentDelta = "ADMIN".equals(message.getSenderRole()) ? -1 : 0;
+        int adminDelta = "USER".equals(message.getSenderRole()) ? -1 : 0;
+        messageThreadRepository.adjustUnread(rootMessageId, residentDelta, adminDelta);
+    }
+
+    // Several messages of each thread went from UNREAD to READ; readsByRoot maps root id -> count
+    @Transactional
+    public void recordManyMarkedRead(Map<Long, Integer> readsByRoot, String senderRole) {
+        readsByRoot.forEach((rootMessageId, count) -> messageThreadRepository.adjustUnread(rootMessageId,
+                "ADMIN".equals(senderRole) ? -count : 0, "USER".equals(senderRole) ? -count : 0));
+    }
+
+    // Recompute every summary from the messages table, one chunk of threads per transaction.
+    // Returns the number of threads written.
+    public int rebuild() {
+        long afterId = 0L;
+        int total = 0;
+        while (true) {
+            final long cursor = afterId;
+            List<MessageThread> chunk = transactionTemplate.execute(status -> rebuildChunk(cursor));
+            if (chunk == null || chunk.isEmpty()) {
+                break;
+            }
+            total += chunk.size();
+            afterId = chunk.get(chunk.size() - 1).getRootMessageId();
+        }
+        log.info("Rebuilt {} message thread summaries", total);
+        return total;
+    }
+
+    // Populate the summary table on first start after upgrading
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (messageThreadRepository.count() == 0 && !messageRepository.findRootsAfter(0L, PageRequest.of(0, 1)).isEmpty()) {
+            rebuild();
+        }
+    }
+
+    private List<MessageThread> rebuildChunk(long afterId) {
+        List<Message> roots = messageRepository.findRootsAfter(afterId, PageRequest.of(0, REBUILD_CHUNK_SIZE));
+        if (roots.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, MessageThread> threads = new HashMap<>();
+        List<MessageThread> ordered = new ArrayList<>(roots.size());
+        Map<Long, Long> residentIdsBySender = residentIdsOfSenders(roots);
+        for (Message root : roots) {
+            Long residentId = root.getRecipientResident() != null
+                    ? root.getRecipientResident().getId()
+                    : residentIdsBySender.get(root.getSenderUserId());
+            MessageThread thread = new MessageThread(root.getId(), residentId, root.getSubject());
+            thread.setLastMessageAt(root.getCreatedAt());
+            thread.setLastSnippet(snippet(root.getContent()));
+            countUnread(thread, root);
+            threads.put(root.getId(), thread);
+            ordered.add(thread);
+        }
+
+        // Replies at any depth come back in thread order, so the last one applied sets lastMessageAt/lastSnippet
+        for (Message reply : messageRepository.findRepliesInThreads(threads.keySet())) {
+            MessageThread thread = threads.get(reply.getThreadRootId());
+            thread.setReplyCount(thread.getReplyCount() + 1);
+            thread.setLastMessageAt(reply.getCreatedAt());
+            thread.setLastSnippet(snippet(reply.getContent()));
+            countUnread(thread, reply);
+        }
+
+        // Replace the chunk's existing rows so the inserts below never collide
+        messageThreadRepository.deleteAllByIdInBatch(threads.keySet());
+        messageThreadRepository.saveAll(ordered);
+        return ordered;
+    }
+
+    // Legacy resident-started threads have no recipient; resolve the resident via the sender's user row
+    private Map<Long, Long> residentIdsOfSenders(List<Message> roots) {
+        Set<Long> senderIds = roots.stream()
+                .filter(root -> root.getRecipientResident() == null && "USER".equals(root.getSenderRole()))
+                .map(Message::getSenderUserId)
+                .collect(Collectors.toSet());
+        Map<Long, Long> residentIds = new HashMap<>();
+        if (!senderIds.isEmpty()) {
+            for (User user : userRepository.findAllById(senderIds)) {
+                if (user.getResident() != null) {
+                    residentIds.put(user.getId(), user.getResident().getId());
+                }
+            }
+        }
+        return residentIds;
+    }
+
+    private static MessageThread newThread(Message root) {
+        MessageThread thread = new MessageThread(root.getId(), root.getRecipientResident().getId(), root.getSubject());
+        thread.setLastMessageAt(root.getCreatedAt());
+        thread.setLastSnippet(snippet(root.getContent()));
+        thread.setUnreadForResident("ADMIN".equals(root.getSenderRole()) ? 1 : 0);
+        thread.setUnreadForAdmin("USER".equals(root.getSenderRole()) ? 1 : 0);
+        return thread;
+    }
+
+    private static void countUnread(MessageThread thread, Message message) {
+        if ("UNREAD".equals(message.getStatus())) {
+            if ("ADMIN".equals(message.getSenderRole())) {
+                thread.setUnreadForResident(thread.getUnreadForResident() + 1);
+            } else if ("USER".equals(message.getSenderRole())) {
+                thread.setUnreadForAdmin(thread.getUnreadForAdmin() + 1);
+            }
+        }
+    }
+
+    private static String snippet(String content) {
+        if (content == null || content.length() <= SNIPPET_LENGTH) {
+            return content;
+        }
+        return content.substring(0, SNIPPET_LENGTH);
+    }
+}
@@ -0,0 +1,309 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.BillingRunStatus;
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.model.MaintenanceInvoice;
+import com.mySociety.repository.MaintenanceInvoiceRepository;
+import com.mySociety.repository.ResidentRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Issues one maintenance invoice per resident for a billing month.
+// Residents are read in id order as keyset pages of maintenance.billing.chunk-size [id, charge]
+// rows; each page is billed on a pool of maintenance.billing.threads, one transaction per chunk
+// with the invoices inserted as JDBC batches. At most two chunks per thread are queued, so a run
+// holds a bounded number of pages in memory however many residents there are.
+// Runs are idempotent: a chunk skips residents that already have an invoice for the period, and
+// the (resident_id, period) unique key catches a concurrent writer, after which the chunk is
+// retried once. A failed chunk is reported and left for the next run to pick up.
+// Residents without a positive maintenance charge are not billed.
+@Service
+public class MaintenanceBillingService implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(MaintenanceBillingService.class);
+
+    private final ResidentRepository residentRepository;
+    private final MaintenanceInvoiceRepository invoiceRepository;
+    private final DashboardSummaryService dashboardSummaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int threads;
+    private final int dueDay;
+    private final ExecutorService chunkPool;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder invoicesCreated = new LongAdder();
+    private final LongAdder chunkRetries = new LongAdder();
+    private volatile Run latestRun;
+
+    // Counters of one run, updated by the chunk threads
+    private static final class Run {
+
+        final YearMonth period;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final long startNanos = System.nanoTime();
+        final LongAdder residentsScanned = new LongAdder();
+        final LongAdder invoicesCreated = new LongAdder();
+        final LongAdder alreadyBilled = new LongAdder();
+        final LongAdder withoutCharge = new LongAdder();
+        final AtomicInteger chunksCompleted = new AtomicInteger();
+        final AtomicInteger chunksFailed = new AtomicInteger();
+        volatile String state = "RUNNING";
+        volatile LocalDateTime finishedAt;
+        volatile long elapsedMillis;
+        volatile String error;
+
+        Run(YearMonth period) {
+            this.period = period;
+        }
+
+        BillingRunStatus status() {
+            long elapsed = finishedAt == null ? (System.nanoTime() - startNanos) / 1_000_000 : elapsedMillis;
+            return new BillingRunStatus(period.toString(), state, residentsScanned.sum(), invoicesCreated.sum(),
+                    alreadyBilled.sum(), withoutCharge.sum(), chunksCompleted.get(), chunksFailed.get(),
+                    startedAt, finishedAt, elapsed, error);
+        }
+    }
+
+    public MaintenanceBillingService(ResidentRepository residentRepository, MaintenanceInvoiceRepository invoiceRepository,
+                                     DashboardSummaryService dashboardSummaryService, TransactionTemplate transactionTemplate,
+                                     @Value("${maintenance.billing.enabled:false}") boolean enabled,
+                                     @Value("${maintenance.billing.chunk-size:1000}") int chunkSize,
+                                     @Value("${maintenance.billing.threads:4}") int threads,
+                                     @Value("${maintenance.billing.due-day:10}") int dueDay) {
+        if (chunkSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("maintenance.billing.chunk-size and threads must be positive");
+        }
+        if (dueDay < 1 || dueDay > 28) {
+            throw new IllegalArgumentException("maintenance.billing.due-day must be between 1 and 28");
+        }
+        this.residentRepository = residentRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.dashboardSummaryService = dashboardSummaryService;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+        this.dueDay = dueDay;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.chunkPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "maintenance-billing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Bills the current month at the start of each month
+    @Scheduled(cron = "${maintenance.billing.cron:0 0 1 1 * *}")
+    public void billOnSchedule() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            billPeriod(YearMonth.now());
+        } catch (IllegalStateException e) {
+            log.warn("Skipped scheduled maintenance billing: {}", e.getMessage());
+        }
+    }
+
+    // Parses a yyyy-MM period; null or blank means the current month.
+    // Throws IllegalArgumentException for anything else.
+    public static YearMonth parsePeriod(String period) {
+        if (period == null || period.isBlank()) {
+            return YearMonth.now();
+        }
+        try {
+            return YearMonth.parse(period.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("period must be formatted as yyyy-MM.");
+        }
+    }
+
+    // Bills the period on the calling thread and returns the final status.
+    // Throws IllegalStateException when a run is already in progress.
+    public BillingRunStatus billPeriod(YearMonth period) {
+        Run run = begin(period);
+        execute(run);
+        return run.status();
+    }
+
+    // Starts billing the period in the background and returns its status so far; progress is
+    // available from latestRun(). Throws IllegalStateException when a run is already in progress.
+    public BillingRunStatus start(YearMonth period) {
+        Run run = begin(period);
+        Thread coordinator = new Thread(() -> execute(run), "maintenance-billing-run");
+        coordinator.setDaemon(true);
+        coordinator.start();
+        return run.status();
+    }
+
+    // The run in progress, or the last one to finish since startup
+    public Optional<BillingRunStatus> latestRun() {
+        Run run = latestRun;
+        return run == null ? Optional.empty() : Optional.of(run.status());
+    }
+
+    private Run begin(YearMonth period) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A maintenance billing run is already in progress.");
+        }
+        Run run = new Run(period);
+        latestRun = run;
+        runs.increment();
+        return run;
+    }
+
+    private void execute(Run run) {
+        Semaphore window = new Semaphore(threads * 2);
+        try {
+            LocalDateTime issuedAt = LocalDateTime.now();
+            LocalDate dueDate = run.period.atDay(dueDay);
+            long afterId = 0L;
+            while (true) {
+                List<Object[]> rows = residentRepository.findBillingRowsAfter(afterId, PageRequest.of(0, chunkSize));
+                if (rows.isEmpty()) {
+                    break;
+                }
+                afterId = (Long) rows.get(rows.size() - 1)[0];
+                window.acquire();
+                try {
+                    chunkPool.execute(() -> {
+                        try {
+                            billChunkWithRetry(run, rows, issuedAt, dueDate);
+                        } finally {
+                            window.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    window.release();
+                    throw e;
+                }
+                if (rows.size() < chunkSize) {
+                    break;
+                }
+            }
+            window.acquire(threads * 2); // Wait for the chunks still in flight
+            run.state = run.chunksFailed.get() == 0 ? "COMPLETED" : "FAILED";
+            if (run.chunksFailed.get() > 0) {
+                run.error = run.chunksFailed.get() + " chunks failed; run again to bill the residents they held.";
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.state = "FAILED";
+            run.error = "Interrupted";
+        } catch (RuntimeException e) {
+            log.error("Maintenance billing for {} failed", run.period, e);
+            run.state = "FAILED";
+            run.error = e.getMessage();
+        } finally {
+            run.elapsedMillis = (System.nanoTime() - run.startNanos) / 1_000_000;
+            run.finishedAt = LocalDateTime.now();
+            running.set(false);
+        }
+        log.info("Maintenance billing for {}: {} invoices for {} residents in {} ms ({})", run.period,
+                run.invoicesCreated.sum(), run.residentsScanned.sum(), run.elapsedMillis, run.state);
+    }
+
+    private void billChunkWithRetry(Run run, List<Object[]> rows, LocalDateTime issuedAt, LocalDate dueDate) {
+        try {
+            try {
+                billChunk(run, rows, issuedAt, dueDate);
+            } catch (DataIntegrityViolationException e) {
+                // Someone else billed part of this chunk after we looked; the retry skips those rows
+                chunkRetries.increment();
+                billChunk(run, rows, issuedAt, dueDate);
+            }
+            run.residentsScanned.add(rows.size());
+            run.chunksCompleted.incrementAndGet();
+        } catch (RuntimeException e) {
+            log.warn("Maintenance billing chunk starting at resident {} failed", rows.get(0)[0], e);
+            run.chunksFailed.incrementAndGet();
+        }
+    }
+
+    private void billChunk(Run run, List<Object[]> rows, LocalDateTime issuedAt, LocalDate dueDate) {
+        String period = run.period.toString();
+        int[] counts = transactionTemplate.execute(status -> {
+            List<Long> residentIds = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                residentIds.add((Long) row[0]);
+            }
+            Set<Long> billed = new HashSet<>(invoiceRepository.findBilledResidentIds(period, residentIds));
+            List<MaintenanceInvoice> invoices = new ArrayList<>(rows.size() - billed.size());
+            BigDecimal total = BigDecimal.ZERO;
+            int withoutCharge = 0;
+            for (Object[] row : rows) {
+                Long residentId = (Long) row[0];
+                BigDecimal charge = (BigDecimal) row[1];
+                if (billed.contains(residentId)) {
+                    continue;
+                }
+                if (charge == null || charge.signum() <= 0) {
+                    withoutCharge++;
+                    continue;
+                }
+                invoices.add(new MaintenanceInvoice(residentId, period, charge, issuedAt, dueDate));
+                total = total.add(charge);
+            }
+            // Pooled ids, so these go out as JDBC batches when the transaction commits
+            invoiceRepository.saveAll(invoices);
+            dashboardSummaryService.invoicesIssued(invoices.size(), total);
+            return new int[] {invoices.size(), billed.size(), withoutCharge};
+        });
+        // Only counted once the chunk has committed
+        run.invoicesCreated.add(counts[0]);
+        run.alreadyBilled.add(counts[1]);
+        run.withoutCharge.add(counts[2]);
+        invoicesCreated.add(counts[0]);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        chunkPool.shutdown();
+    }
+
+    @Override
+    public String metricsName() {
+        return "maintenanceBilling";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("running", running.get());
+        snapshot.put("runs", runs.sum());
+        snapshot.put("invoicesCreated", invoicesCreated.sum());
+        snapshot.put("chunkRetries", chunkRetries.sum());
+        Run run = latestRun;
+        snapshot.put("lastRunMillis", run == null || run.finishedAt == null ? 0L : run.elapsedMillis);
+        return snapshot;
+    }
+}
@@ -0,0 +1,124 @@
+package com.mySociety.service;
+
+import com.mySociety.model.MaintenanceInvoice;
+import com.mySociety.model.MaintenancePayment;
+import com.mySociety.repository.MaintenanceInvoiceRepository;
+import com.mySociety.repository.MaintenancePaymentRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// A resident's maintenance invoices and the payments against them.
+// A payment is applied with one conditional UPDATE (MaintenanceInvoiceRepository.applyPayment)
+// and recorded in maintenance_payments in the same transaction, so two payments arriving
+// together can neither lose one another nor push an invoice past its amount.
+// Only admins apply payments; a resident can only report one, which waits for an admin to confirm it.
+@Service
+public class MaintenanceLedgerService {
+
+    private final MaintenanceInvoiceRepository invoiceRepository;
+    private final MaintenancePaymentRepository paymentRepository;
+    private final DashboardSummaryService dashboardSummaryService;
+
+    public MaintenanceLedgerService(MaintenanceInvoiceRepository invoiceRepository,
+                                    MaintenancePaymentRepository paymentRepository,
+                                    DashboardSummaryService dashboardSummaryService) {
+        this.invoiceRepository = invoiceRepository;
+        this.paymentRepository = paymentRepository;
+        this.dashboardSummaryService = dashboardSummaryService;
+    }
+
+    // Newest period first
+    public List<MaintenanceInvoice> listInvoices(Long residentId) {
+        return invoiceRepository.findByResidentIdOrderByPeriodDesc(residentId);
+    }
+
+    // Admin-only: records a payment and applies it at once. Pays invoiceId, or the resident's
+    // oldest outstanding invoice when it is null; a null amount pays whatever is left on it.
+    // Returns the updated invoice.
+    // Throws IllegalArgumentException for an unknown invoice or an invalid amount, and
+    // IllegalStateException when there is nothing left to pay or the invoice changed meanwhile.
+    @Transactional
+    public MaintenanceInvoice pay(Long residentId, Long invoiceId, BigDecimal amount, String reference, Long recordedByUserId) {
+        MaintenanceInvoice invoice = findPayableInvoice(residentId, invoiceId);
+        BigDecimal paying = checkAmount(invoice, amount);
+        LocalDateTime now = LocalDateTime.now();
+        MaintenanceInvoice updated = apply(invoice, paying, now);
+        paymentRepository.save(new MaintenancePayment(invoice.getId(), residentId, paying, reference, recordedByUserId, now));
+        return updated;
+    }
+
+    // A resident's own report of a payment, resolved like pay(). It is stored as pending and the
+    // invoice is left unchanged until an admin confirms it with confirmPayment.
+    @Transactional
+    public MaintenancePayment reportPayment(Long residentId, Long invoiceId, BigDecimal amount, String reference,
+                                            Long reportedByUserId) {
+        MaintenanceInvoice invoice = findPayableInvoice(residentId, invoiceId);
+        BigDecimal paying = checkAmount(invoice, amount);
+        MaintenancePayment payment = new MaintenancePayment(invoice.getId(), residentId, paying, reference,
+                reportedByUserId, LocalDateTime.now());
+        payment.setPending(true);
+        return paymentRepository.save(payment);
+    }
+
+    public List<MaintenancePayment> listPendingPayments() {
+        return paymentRepository.findByPendingTrueOrderByPaidAtAsc();
+    }
+
+    // Admin-only: applies a pending payment to its invoice; recordedByUserId becomes the confirming admin.
+    // Throws IllegalArgumentException for an unknown payment, and IllegalStateException when it was
+    // already confirmed or no longer fits what is left on the invoice.
+    @Transactional
+    public MaintenanceInvoice confirmPayment(Long residentId, Long paymentId, Long confirmedByUserId) {
+        MaintenancePayment payment = paymentRepository.findByIdAndResidentId(paymentId, residentId)
+                .orElseThrow(() -> new IllegalArgumentException("Payment not found: " + paymentId));
+        if (!payment.isPending()) {
+            throw new IllegalStateException("Payment " + paymentId + " is already confirmed.");
+        }
+        MaintenanceInvoice invoice = invoiceRepository.findByIdAndResidentId(payment.getInvoiceId(), residentId)
+                .orElseThrow(() -> new IllegalArgumentException("Invoice not found: " + payment.getInvoiceId()));
+        LocalDateTime now = LocalDateTime.now();
+        MaintenanceInvoice updated = apply(invoice, payment.getAmount(), now);
+        payment.setPending(false);
+        payment.setRecordedByUserId(confirmedByUserId);
+        payment.setPaidAt(now);
+        paymentRepository.save(payment);
+        return updated;
+    }
+
+    private MaintenanceInvoice findPayableInvoice(Long residentId, Long invoiceId) {
+        return invoiceId == null
+                ? invoiceRepository.findFirstByResidentIdAndStatusNotOrderByPeriodAsc(residentId, MaintenanceInvoice.PAID)
+                        .orElseThrow(() -> new IllegalStateException("No maintenance is outstanding."))
+                : invoiceRepository.findByIdAndResidentId(invoiceId, residentId)
+                        .orElseThrow(() -> new IllegalArgumentException("Invoice not found: " + invoiceId));
+    }
+
+    // The amount to pay: what is left on the invoice when amount is null
+    private BigDecimal checkAmount(MaintenanceInvoice invoice, BigDecimal amount) {
+        BigDecimal outstanding = invoice.getAmount().subtract(invoice.getAmountPaid());
+        if (outstanding.signum() <= 0) {
+            throw new IllegalStateException("Invoice " + invoice.getId() + " is already paid.");
+        }
+        BigDecimal paying = amount == null ? outstanding : amount;
+        if (paying.signum() <= 0 || paying.scale() > 2) {
+            throw new IllegalArgumentException("amount must be positive with at most two decimals.");
+        }
+        if (paying.compareTo(outstanding) > 0) {
+            throw new IllegalArgumentException("amount is more than the " + outstanding.toPlainString() + " outstanding.");
+        }
+        return paying;
+    }
+
+    private MaintenanceInvoice apply(MaintenanceInvoice invoice, BigDecimal paying, LocalDateTime now) {
+        if (invoiceRepository.applyPayment(invoice.getId(), invoice.getResidentId(), paying, now) == 0) {
+            throw new IllegalStateException("Invoice " + invoice.getId() + " was paid meanwhile; reload it and try again.");
+        }
+        MaintenanceInvoice updated = invoiceRepository.findById(invoice.getId()).orElseThrow();
+        dashboardSummaryService.paymentApplied(paying, MaintenanceInvoice.PAID.equals(updated.getStatus()));
+        return updated;
+    }
+}
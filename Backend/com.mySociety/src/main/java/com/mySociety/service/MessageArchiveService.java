@@ -0,0 +1,231 @@
+package com.mySociety.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mySociety.dto.MessageView;
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.model.ArchivedThread;
+import com.mySociety.model.MessageThread;
+import com.mySociety.repository.ArchivedThreadRepository;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.MessageThreadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Moves threads nobody has touched for messages.archive.inactive-days out of the messages
+// table into message_archive, one compressed row per thread, so the hot table and its indexes
+// only hold live conversations. Runs nightly when enabled, one chunk of threads per transaction
+// with a pause between chunks to leave the database room for regular traffic.
+// Threads with unread messages are left alone so archiving never hides something unseen.
+// Archived threads are read-only; MessageService only reads them when a caller asks for them.
+@Service
+public class MessageArchiveService implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchiveService.class);
+    private static final TypeReference<List<MessageView>> THREAD_TYPE = new TypeReference<>() {};
+
+    private final MessageThreadRepository messageThreadRepository;
+    private final MessageRepository messageRepository;
+    private final ArchivedThreadRepository archivedThreadRepository;
+    private final SearchService searchService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int inactiveDays;
+    private final int chunkSize;
+    private final long pauseMillis;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder threadsArchived = new LongAdder();
+    private final LongAdder messagesArchived = new LongAdder();
+    private final LongAdder jsonBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder archiveReads = new LongAdder();
+    private volatile long lastRunMillis;
+
+    public MessageArchiveService(MessageThreadRepository messageThreadRepository, MessageRepository messageRepository,
+                                 ArchivedThreadRepository archivedThreadRepository, SearchService searchService,
+                                 TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                                 @Value("${messages.archive.enabled:false}") boolean enabled,
+                                 @Value("${messages.archive.inactive-days:365}") int inactiveDays,
+                                 @Value("${messages.archive.chunk-size:100}") int chunkSize,
+                                 @Value("${messages.archive.pause-ms:250}") long pauseMillis) {
+        this.messageThreadRepository = messageThreadRepository;
+        this.messageRepository = messageRepository;
+        this.archivedThreadRepository = archivedThreadRepository;
+        this.searchService = searchService;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.inactiveDays = inactiveDays;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    @Scheduled(cron = "${messages.archive.cron:0 30 3 * * *}")
+    public void archiveOnSchedule() {
+        if (enabled) {
+            archive();
+        }
+    }
+
+    // Archives every eligible thread using the configured age; returns the number of threads moved
+    public int archive() {
+        return archiveInactiveSince(LocalDateTime.now().minusDays(inactiveDays));
+    }
+
+    // Throws IllegalStateException when a run is already in progress
+    public int archiveInactiveSince(LocalDateTime cutoff) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Message archival is already running.");
+        }
+        long start = System.nanoTime();
+        int total = 0;
+        try {
+            long afterId = 0L;
+            while (true) {
+                final long cursor = afterId;
+                List<Long> archived = transactionTemplate.execute(status -> archiveChunk(cutoff, cursor));
+                if (archived == null || archived.isEmpty()) {
+                    break;
+                }
+                total += archived.size();
+                afterId = archived.get(archived.size() - 1);
+                if (archived.size() < chunkSize || !pause()) {
+                    break;
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+        lastRunMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Archived {} message threads inactive since {} in {} ms", total, cutoff, lastRunMillis);
+        return total;
+    }
+
+    // An archived thread by its initial message id, in thread order
+    public Optional<List<MessageView>> findThread(Long rootMessageId) {
+        return archivedThreadRepository.findById(rootMessageId).map(this::read);
+    }
+
+    // A resident's archived threads, most recently active first
+    public List<List<MessageView>> findThreadsForResident(Long residentId) {
+        return archivedThreadRepository.findByResidentIdOrderByLastMessageAtDesc(residentId).stream()
+                .map(this::read)
+                .toList();
+    }
+
+    // Returns the root ids archived, in ascending order
+    private List<Long> archiveChunk(LocalDateTime cutoff, long afterId) {
+        List<MessageThread> threads = messageThreadRepository.lockArchivableAfter(cutoff, afterId, PageRequest.of(0, chunkSize));
+        if (threads.isEmpty()) {
+            return List.of();
+        }
+        List<Long> rootIds = threads.stream().map(MessageThread::getRootMessageId).toList();
+
+        Map<Long, List<MessageView>> messagesByRoot = new HashMap<>();
+        for (MessageView message : messageRepository.findThreadViews(rootIds)) {
+            messagesByRoot.computeIfAbsent(message.threadRootId(), id -> new ArrayList<>()).add(message);
+        }
+
+        List<ArchivedThread> archive = new ArrayList<>(threads.size());
+        List<Long> messageIds = new ArrayList<>();
+        for (MessageThread thread : threads) {
+            List<MessageView> messages = messagesByRoot.getOrDefault(thread.getRootMessageId(), List.of());
+            messages.forEach(message -> messageIds.add(message.id()));
+            archive.add(new ArchivedThread(thread.getRootMessageId(), thread.getResidentId(), thread.getSubject(),
+                    thread.getLastMessageAt(), messages.size(), write(messages)));
+        }
+        archivedThreadRepository.saveAll(archive);
+
+        messageRepository.clearParentLinksInThreads(rootIds);
+        messageRepository.deleteThreads(rootIds);
+        messageThreadRepository.deleteAllByIdInBatch(rootIds);
+        searchService.messagesRemoved(messageIds);
+
+        threadsArchived.add(rootIds.size());
+        messagesArchived.add(messageIds.size());
+        return rootIds;
+    }
+
+    // Sleeps between chunks; returns false if the thread was interrupted and the run should stop
+    private boolean pause() {
+        if (pauseMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private byte[] write(List<MessageView> messages) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(messages);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (OutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(json);
+            }
+            jsonBytes.add(json.length);
+            storedBytes.add(compressed.size());
+            return compressed.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<MessageView> read(ArchivedThread thread) {
+        archiveReads.increment();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(thread.getPayload()))) {
+            return objectMapper.readValue(in, THREAD_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable archive for thread " + thread.getRootMessageId(), e);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "messageArchive";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("running", running.get());
+        snapshot.put("threadsArchived", threadsArchived.sum());
+        snapshot.put("messagesArchived", messagesArchived.sum());
+        snapshot.put("jsonBytes", jsonBytes.sum());
+        snapshot.put("storedBytes", storedBytes.sum());
+        snapshot.put("archiveReads", archiveReads.sum());
+        snapshot.put("lastRunMillis", lastRunMillis);
+        return snapshot;
+    }
+}
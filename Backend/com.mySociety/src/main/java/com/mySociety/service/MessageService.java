@@ -1,18 +1,32 @@
 package com.mySociety.service;
 
+import com.mySociety.dto.Cursor;
+import com.mySociety.dto.CursorPage;
+import com.mySociety.dto.MessageView;
+import com.mySociety.dto.PageSizes;
+import com.mySociety.dto.ResidentView;
 import com.mySociety.model.Message;
-import com.mySociety.model.Resident;
+import com.mySociety.model.MessageThread;
 import com.mySociety.model.User;
 import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.MessageThreadRepository;
 import com.mySociety.repository.ResidentRepository;
 import com.mySociety.repository.UserRepository; // Inject UserRepository to get User details
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+
+import static com.mySociety.repository.MessageSpecifications.*;
 
 @Service
 public class MessageService {
@@ -20,24 +34,99 @@ public class MessageService {
     private final MessageRepository messageRepository;
     private final ResidentRepository residentRepository;
     private final UserRepository userRepository; // Inject UserRepository to get User details
+    private final InboxService inboxService; // Keeps the per-thread inbox summaries in step
+    private final MessageThreadRepository messageThreadRepository;
+    private final UnreadCounterService unreadCounterService; // In-memory unread badges
+    private final EventStreamService eventStreamService; // Pushes new messages to connected clients
+    private final SearchService searchService;
+    private final MessageArchiveService messageArchiveService; // Inactive threads moved out of the messages table
+    private final ResidentCache residentCache;
 
-    public MessageService(MessageRepository messageRepository, ResidentRepository residentRepository, UserRepository userRepository) {
+    public MessageService(MessageRepository messageRepository, ResidentRepository residentRepository, UserRepository userRepository,
+                          InboxService inboxService, MessageThreadRepository messageThreadRepository,
+                          UnreadCounterService unreadCounterService, EventStreamService eventStreamService,
+                          SearchService searchService, MessageArchiveService messageArchiveService,
+                          ResidentCache residentCache) {
         this.messageRepository = messageRepository;
         this.residentRepository = residentRepository;
         this.userRepository = userRepository;
+        this.inboxService = inboxService;
+        this.messageThreadRepository = messageThreadRepository;
+        this.unreadCounterService = unreadCounterService;
+        this.eventStreamService = eventStreamService;
+        this.searchService = searchService;
+        this.messageArchiveService = messageArchiveService;
+        this.residentCache = residentCache;
+    }
+
+    public List<MessageView> getAllMessages() {
+        return messageRepository.findAllViews();
     }
 
-    public List<Message> getAllMessages() {
-        return messageRepository.findAll();
+    // Keyset page of messages, newest first. Every filter is optional and applied in SQL,
+    // and the cost of a page does not depend on how deep into the table it is.
+    @Transactional(readOnly = true)
+    public CursorPage<MessageView> getMessagePage(Cursor cursor, Integer limit, String status, String senderRole, Long residentId) {
+        int pageSize = PageSizes.clamp(limit);
+        Specification<Message> filter = Specification.allOf(
+                hasStatus(status), hasSenderRole(senderRole), hasRecipientResident(residentId), after(cursor), fetchRecipient());
+        // One extra row tells us whether another page exists
+        List<Message> rows = messageRepository.findBy(filter, query -> query
+                .sortBy(Sort.by(Sort.Direction.DESC, "createdAt", "id"))
+                .limit(pageSize + 1)
+                .all());
+
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows.stream().map(MessageView::of).toList(), null);
+        }
+        List<Message> items = rows.subList(0, pageSize);
+        Message last = items.get(pageSize - 1);
+        return new CursorPage<>(items.stream().map(MessageView::of).toList(), new Cursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    // Keyset page of a resident's conversations ordered by latest activity, driven by the
+    // message_threads summary: one query for the page of threads, one for their initial
+    // messages and one for their replies.
+    @Transactional(readOnly = true)
+    public CursorPage<List<MessageView>> getConversationPage(Long residentId, Cursor cursor, Integer limit) {
+        int pageSize = PageSizes.clamp(limit);
+        PageRequest firstRows = PageRequest.of(0, pageSize + 1);
+        List<MessageThread> threads = cursor == null
+                ? messageThreadRepository.findByResidentIdOrderByLastMessageAtDescRootMessageIdDesc(residentId, firstRows)
+                : messageThreadRepository.findResidentPageAfter(residentId, cursor.timestamp(), cursor.id(), firstRows);
+
+        String nextCursor = null;
+        if (threads.size() > pageSize) {
+            threads = threads.subList(0, pageSize);
+            MessageThread last = threads.get(pageSize - 1);
+            nextCursor = new Cursor(last.getLastMessageAt(), last.getRootMessageId()).encode();
+        }
+        if (threads.isEmpty()) {
+            return new CursorPage<>(List.of(), null);
+        }
+
+        Map<Long, MessageView> rootsById = new HashMap<>();
+        for (MessageView root : messageRepository.findViewsByIdIn(threads.stream().map(MessageThread::getRootMessageId).toList())) {
+            rootsById.put(root.id(), root);
+        }
+        List<MessageView> orderedRoots = new ArrayList<>(threads.size());
+        for (MessageThread thread : threads) {
+            MessageView root = rootsById.get(thread.getRootMessageId());
+            if (root != null) {
+                orderedRoots.add(root);
+            }
+        }
+        return new CursorPage<>(assembleThreads(orderedRoots), nextCursor);
     }
 
     public Optional<Message> getMessageById(Long id) {
         return messageRepository.findById(id);
     }
 
+    // The recipient is checked against ResidentCache and referenced by key, so no resident row is read
     @Transactional
-    public Message sendAdminMessageToResident(Long adminUserId, Long recipientResidentId, String subject, String content) {
-        Optional<Resident> recipientResidentOptional = residentRepository.findById(recipientResidentId);
+    public MessageView sendAdminMessageToResident(Long adminUserId, Long recipientResidentId, String subject, String content) {
+        Optional<ResidentView> recipientResidentOptional = residentCache.findById(recipientResidentId);
         if (recipientResidentOptional.isEmpty()) {
             throw new RuntimeException("Recipient resident not found with ID: " + recipientResidentId);
         }
@@ -45,12 +134,17 @@ public class MessageService {
         Message message = new Message();
         message.setSenderUserId(adminUserId);
         message.setSenderRole("ADMIN");
-        message.setRecipientResident(recipientResidentOptional.get());
+        message.setRecipientResident(residentRepository.getReferenceById(recipientResidentId));
         message.setSubject(subject);
         message.setContent(content);
         message.setStatus("UNREAD"); // Initial messages from admin are unread by default
 
-        return messageRepository.save(message);
+        Message savedMessage = messageRepository.save(message); // Numbered as a thread root by ThreadRootInterceptor
+        inboxService.recordThreadStarted(savedMessage);
+        unreadCounterService.messageAdded(savedMessage);
+        searchService.messageSaved(savedMessage);
+        eventStreamService.publishToResident(recipientResidentId, "message", messageEvent(savedMessage, savedMessage.getId()));
+        return MessageView.of(savedMessage, recipientResidentOptional.get().ref());
     }
 
     @Transactional
@@ -85,84 +179,157 @@ public class MessageService {
         reply.setStatus("UNREAD"); // Reply is unread by admin
 
         // Mark parent message as read if the sender of the reply is the recipient of the parent message
+        boolean parentMarkedRead = false;
         if (isRecipient && parentMessage.getStatus().equals("UNREAD")) {
             parentMessage.setStatus("READ");
             messageRepository.save(parentMessage);
+            parentMarkedRead = true;
         }
 
-        return messageRepository.save(reply);
+        // Replies at any depth join the parent's thread; the summary row update hands out the next position
+        Long rootMessageId = parentMessage.getThreadRootId();
+        reply.setThreadRootId(rootMessageId);
+        reply.setThreadSeq(inboxService.recordReply(rootMessageId, reply, parentMessage, parentMarkedRead));
+        Message savedReply = messageRepository.save(reply);
+        unreadCounterService.messageAdded(savedReply);
+        if (parentMarkedRead) {
+            unreadCounterService.messageRead(parentMessage);
+        }
+        searchService.messageSaved(savedReply);
+        eventStreamService.publishToAdmins("message", messageEvent(savedReply, rootMessageId));
+        return savedReply;
     }
 
+    // Small payload: clients refetch the thread or inbox they are showing
+    private static Map<String, Object> messageEvent(Message message, Long rootMessageId) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("messageId", message.getId());
+        event.put("rootMessageId", rootMessageId);
+        event.put("residentId", message.getRecipientResident() != null ? message.getRecipientResident().getId() : null);
+        event.put("senderRole", message.getSenderRole());
+        event.put("subject", message.getSubject());
+        event.put("createdAt", message.getCreatedAt());
+        return event;
+    }
+
+    // residentId is the caller's resident (null for admins); a resident marking a message
+    // that is not addressed to them gets a SecurityException
     @Transactional
-    public Optional<Message> markMessageAsRead(Long messageId, Long userId, String userRole) {
+    public Optional<Message> markMessageAsRead(Long messageId, String userRole, Long residentId) {
         return messageRepository.findById(messageId)
                 .map(message -> {
                     boolean canMarkRead = false;
                     if (userRole.equals("ADMIN") && message.getSenderRole().equals("USER")) {
                         // Admin can mark messages sent by residents as read
                         canMarkRead = true;
-                    } else if (userRole.equals("USER") && message.getRecipientResident() != null &&
-                               message.getRecipientResident().getId().equals(userRepository.findById(userId).get().getResident().getId())) {
+                    } else if (userRole.equals("USER")) {
                         // Resident can mark messages sent to them by admin as read
+                        if (message.getRecipientResident() == null || !message.getRecipientResident().getId().equals(residentId)) {
+                            throw new SecurityException("Unauthorized to mark this message as read.");
+                        }
                         canMarkRead = true;
                     }
 
                     if (canMarkRead && message.getStatus().equals("UNREAD")) {
                         message.setStatus("READ");
-                        return messageRepository.save(message);
+                        Message savedMessage = messageRepository.save(message);
+                        inboxService.recordMarkedRead(message.getThreadRootId(), savedMessage);
+                        unreadCounterService.messageRead(savedMessage);
+                        return savedMessage;
                     }
                     return message; // Return unchanged if not allowed or already read
                 });
     }
 
-    // New method to get all conversations for a specific resident
-    // A conversation is an initial message from admin to resident, and all subsequent replies.
-    // Or, an initial message from resident to admin (though this flow is being removed, keep for history)
-    public List<List<Message>> getConversationsForResident(Long residentId, Long residentUserId) {
-        List<Message> initialAdminMessages = messageRepository.findBySenderRoleAndRecipientResidentIdAndParentMessageIsNullOrderByCreatedAtDesc("ADMIN", residentId);
-        List<List<Message>> conversations = new ArrayList<>();
+    // Marks a whole thread (rootMessageId) or a set of message ids READ. Admins mark messages
+    // sent by residents; a resident (residentId set) marks admin messages addressed to them. Ids
+    // the caller may not mark are skipped, not rejected. Runs one locking SELECT of the matching
+    // UNREAD rows' ids (so the unread counters move by exactly what changes), one UPDATE of those
+    // rows, and one thread-summary UPDATE per thread touched. Returns the number of messages that changed.
+    @Transactional
+    public int markMessagesAsRead(Collection<Long> messageIds, Long rootMessageId, String userRole, Long residentId) {
+        String senderRole = "ADMIN".equals(userRole) ? "USER" : "ADMIN";
+        Long recipientFilter = "ADMIN".equals(userRole) ? null : residentId;
+        if (recipientFilter == null && !"ADMIN".equals(userRole)) {
+            throw new SecurityException("Unauthorized to mark these messages as read.");
+        }
 
-        for (Message initialMessage : initialAdminMessages) {
-            List<Message> thread = new ArrayList<>();
-            thread.add(initialMessage);
-            thread.addAll(messageRepository.findByParentMessageIdOrderByCreatedAtAsc(initialMessage.getId()));
-            conversations.add(thread);
+        // Rows are [id, threadRootId, recipientResidentId]
+        List<Object[]> unread = rootMessageId != null
+                ? messageRepository.lockUnreadInThread(rootMessageId, senderRole, recipientFilter)
+                : messageIds == null || messageIds.isEmpty()
+                    ? List.of()
+                    : messageRepository.lockUnreadByIds(messageIds, senderRole, recipientFilter);
+        if (unread.isEmpty()) {
+            return 0;
         }
 
-        // Also include threads initiated by the resident, if any exist from previous versions
-        // This query needs to get the initial message sent by the resident, then its replies
-        List<Message> initialResidentMessages = messageRepository.findBySenderUserIdAndSenderRoleOrderByCreatedAtDesc(residentUserId, "USER")
-                .stream()
-                .filter(m -> m.getParentMessage() == null)
-                .collect(Collectors.toList());
+        List<Long> ids = new ArrayList<>(unread.size());
+        List<Long> recipients = new ArrayList<>(unread.size());
+        Map<Long, Integer> readsByRoot = new HashMap<>();
+        for (Object[] row : unread) {
+            ids.add((Long) row[0]);
+            readsByRoot.merge((Long) row[1], 1, Integer::sum);
+            recipients.add((Long) row[2]);
+        }
+        unreadCounterService.messagesRead(senderRole, recipients);
+        int updated = messageRepository.markReadByIds(ids, LocalDateTime.now());
+        inboxService.recordManyMarkedRead(readsByRoot, senderRole);
+        return updated;
+    }
 
-        for (Message initialMessage : initialResidentMessages) {
-            List<Message> thread = new ArrayList<>();
-            thread.add(initialMessage);
-            thread.addAll(messageRepository.findByParentMessageIdOrderByCreatedAtAsc(initialMessage.getId()));
-            conversations.add(thread);
+    // Every conversation with a resident, most recently active first: threads the admin started with
+    // them and, from older versions, threads they started themselves. Two queries however many threads
+    // there are (the roots, then every reply at once); archived threads are read only when includeArchived is set.
+    @Transactional(readOnly = true)
+    public List<List<MessageView>> getConversationsForResident(Long residentId, Long residentUserId, boolean includeArchived) {
+        List<List<MessageView>> conversations = assembleThreads(messageRepository.findRootViewsForResident(residentId, residentUserId));
+        if (includeArchived) {
+            conversations.addAll(messageArchiveService.findThreadsForResident(residentId));
         }
 
         // Sort conversations by the latest message in each thread
         conversations.sort((list1, list2) -> {
-            Message lastMsg1 = list1.get(list1.size() - 1);
-            Message lastMsg2 = list2.get(list2.size() - 1);
-            return lastMsg2.getCreatedAt().compareTo(lastMsg1.getCreatedAt());
+            MessageView lastMsg1 = list1.get(list1.size() - 1);
+            MessageView lastMsg2 = list2.get(list2.size() - 1);
+            return lastMsg2.createdAt().compareTo(lastMsg1.createdAt());
         });
 
         return conversations;
     }
 
+    // Builds one thread per initial message, in the given order, with a single query for all replies
+    private List<List<MessageView>> assembleThreads(List<MessageView> initialMessages) {
+        List<List<MessageView>> conversations = new ArrayList<>(initialMessages.size());
+        if (initialMessages.isEmpty()) {
+            return conversations;
+        }
+
+        Map<Long, List<MessageView>> threadsByRootId = new HashMap<>();
+        for (MessageView initialMessage : initialMessages) {
+            List<MessageView> thread = new ArrayList<>();
+            thread.add(initialMessage);
+            threadsByRootId.put(initialMessage.id(), thread);
+            conversations.add(thread);
+        }
+
+        // Replies at any depth arrive in (thread, sequence) order, so appending keeps each thread in write order
+        List<MessageView> replies = messageRepository.findReplyViewsInThreads(threadsByRootId.keySet());
+        for (MessageView reply : replies) {
+            threadsByRootId.get(reply.threadRootId()).add(reply);
+        }
+        return conversations;
+    }
+
     // Method to get a single message thread by its initial message ID
-    public Optional<List<Message>> getMessageThread(Long initialMessageId) {
-        Optional<Message> initialMessageOptional = messageRepository.findById(initialMessageId);
-        if (initialMessageOptional.isEmpty() || initialMessageOptional.get().getParentMessage() != null) {
-            return Optional.empty(); // Not an initial message or doesn't exist
-        }
-        Message initialMessage = initialMessageOptional.get();
-        List<Message> thread = new ArrayList<>();
-        thread.add(initialMessage);
-        thread.addAll(messageRepository.findByParentMessageIdOrderByCreatedAtAsc(initialMessage.getId()));
-        return Optional.of(thread);
+    // Replies at every depth are included, read with one ordered range scan on (thread_root_id, thread_seq).
+    // With includeArchived, a thread that is no longer in the messages table is read from the archive.
+    public Optional<List<MessageView>> getMessageThread(Long initialMessageId, boolean includeArchived) {
+        List<MessageView> thread = messageRepository.findThreadViews(List.of(initialMessageId));
+        if (!thread.isEmpty()) {
+            // Not an initial message if the first row has a parent
+            return thread.get(0).parentMessageId() == null ? Optional.of(thread) : Optional.empty();
+        }
+        return includeArchived ? messageArchiveService.findThread(initialMessageId) : Optional.empty();
     }
-}
\ No newline at end of file
+}
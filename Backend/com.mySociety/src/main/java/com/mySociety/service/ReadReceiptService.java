@@ -0,0 +1,125 @@
+package com.mySociety.service;
+
+import com.mySociety.metrics.MetricsSource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Entry point for bulk read receipts.
+// By default receipts are applied immediately through MessageService.markMessagesAsRead.
+// With messages.read-receipts.write-behind=true, receipts for individual message ids are
+// collected in memory (repeats of the same id coalesce) and flushed every flush-interval-ms,
+// grouped per caller so each group is one conditional UPDATE, and once more on shutdown.
+// Queued receipts are lost if the process dies before a flush; the conditional UPDATE
+// still enforces who may mark what, so queuing a receipt grants nothing.
+@Service
+public class ReadReceiptService implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReceiptService.class);
+    private static final int FLUSH_CHUNK_SIZE = 500;
+
+    private final MessageService messageService;
+    private final boolean writeBehind;
+
+    // messageId -> who asked for it to be marked read
+    private final ConcurrentHashMap<Long, Caller> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rowsUpdated = new LongAdder();
+
+    public ReadReceiptService(MessageService messageService,
+                              @Value("${messages.read-receipts.write-behind:false}") boolean writeBehind) {
+        this.messageService = messageService;
+        this.writeBehind = writeBehind;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    // Returns the number of messages marked read, or the number queued in write-behind mode.
+    // Whole-thread receipts are always applied immediately since they are already one statement.
+    public int markRead(Long threadId, List<Long> messageIds, String userRole, Long residentId) {
+        if (threadId != null || !writeBehind) {
+            int updated = messageService.markMessagesAsRead(messageIds, threadId, userRole, residentId);
+            rowsUpdated.add(updated);
+            return updated;
+        }
+        if (messageIds == null) {
+            return 0;
+        }
+        if (!"ADMIN".equals(userRole) && residentId == null) {
+            throw new SecurityException("Unauthorized to mark these messages as read.");
+        }
+        Caller caller = new Caller(userRole, residentId);
+        for (Long messageId : messageIds) {
+            received.increment();
+            if (pending.put(messageId, caller) != null) {
+                coalesced.increment();
+            }
+        }
+        return messageIds.size();
+    }
+
+    @Scheduled(fixedDelayString = "${messages.read-receipts.flush-interval-ms:2000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Caller, List<Long>> byCaller = new HashMap<>();
+        for (Long messageId : pending.keySet()) {
+            Caller caller = pending.remove(messageId);
+            if (caller != null) {
+                byCaller.computeIfAbsent(caller, key -> new ArrayList<>()).add(messageId);
+            }
+        }
+        byCaller.forEach((caller, messageIds) -> {
+            for (int from = 0; from < messageIds.size(); from += FLUSH_CHUNK_SIZE) {
+                List<Long> chunk = messageIds.subList(from, Math.min(from + FLUSH_CHUNK_SIZE, messageIds.size()));
+                try {
+                    rowsUpdated.add(messageService.markMessagesAsRead(chunk, null, caller.role(), caller.residentId()));
+                } catch (RuntimeException e) {
+                    log.warn("Dropping {} read receipts after a failed flush", chunk.size(), e);
+                }
+            }
+        });
+        flushes.increment();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    @Override
+    public String metricsName() {
+        return "readReceipts";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("writeBehind", writeBehind);
+        snapshot.put("pending", pending.size());
+        snapshot.put("received", received.sum());
+        snapshot.put("coalesced", coalesced.sum());
+        snapshot.put("flushes", flushes.sum());
+        snapshot.put("rowsUpdated", rowsUpdated.sum());
+        return snapshot;
+    }
+
+    private record Caller(String role, Long residentId) {}
+}
@@ -0,0 +1,224 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.ResidentView;
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.repository.ResidentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// In-memory copy of the resident rows that messaging and complaints resolve on every request,
+// keyed by id with a flat number -> id index beside it. Entries are loaded on first use (and,
+// with residents.cache.warm-on-startup, for the whole table at startup) and dropped when
+// ResidentService reports a change, once the changing transaction has completed.
+// Only rows that exist are cached, so a new resident never needs an invalidation.
+// A flat-number hit is checked against the cached row, so a renamed flat cannot resolve to its
+// old resident. When the cache grows past residents.cache.max-size the least recently used
+// residents are evicted, along with flat numbers that no longer point at a cached resident.
+@Service
+public class ResidentCache implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ResidentCache.class);
+
+    private final ResidentRepository residentRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int maxSize;
+    private final boolean warmOnStartup;
+
+    private final Map<Long, Entry> residentsById = new ConcurrentHashMap<>();
+    private final Map<String, Long> idsByFlatNumber = new ConcurrentHashMap<>();
+    // Bumped by every invalidation; a load that overlapped one discards what it read
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResidentCache(ResidentRepository residentRepository, TransactionTemplate transactionTemplate,
+                         @Value("${residents.cache.max-size:50000}") int maxSize,
+                         @Value("${residents.cache.warm-on-startup:true}") boolean warmOnStartup) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("residents.cache.max-size must be positive");
+        }
+        this.residentRepository = residentRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxSize = maxSize;
+        this.warmOnStartup = warmOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        if (!warmOnStartup) {
+            return;
+        }
+        long start = System.nanoTime();
+        long seen = generation.get();
+        Integer loaded = readOnlyTransaction.execute(status -> {
+            int count = 0;
+            try (Stream<ResidentView> residents = residentRepository.streamAllViews()) {
+                Iterator<ResidentView> iterator = residents.iterator();
+                while (iterator.hasNext() && count < maxSize) {
+                    put(iterator.next(), seen);
+                    count++;
+                }
+            }
+            return count;
+        });
+        log.info("Resident cache warmed with {} residents ({} ms)", loaded, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public Optional<ResidentView> findById(Long id) {
+        Entry cached = residentsById.get(id);
+        if (cached != null) {
+            cached.lastAccess = System.nanoTime();
+            hits.increment();
+            return Optional.of(cached.resident);
+        }
+        misses.increment();
+        return load(() -> residentRepository.findViewById(id));
+    }
+
+    // Exact flat number; a miss falls through to the database with its own collation rules
+    public Optional<ResidentView> findByFlatNumber(String flatNumber) {
+        if (flatNumber == null) {
+            return Optional.empty();
+        }
+        Long id = idsByFlatNumber.get(flatNumber);
+        Entry cached = id == null ? null : residentsById.get(id);
+        if (cached != null && flatNumber.equalsIgnoreCase(cached.resident.flatNumber())) {
+            cached.lastAccess = System.nanoTime();
+            hits.increment();
+            return Optional.of(cached.resident);
+        }
+        misses.increment();
+        Optional<ResidentView> loaded = load(() -> residentRepository.findViewByFlatNumber(flatNumber));
+        loaded.ifPresent(resident -> {
+            idsByFlatNumber.put(flatNumber, resident.id());
+            trim();
+        });
+        return loaded;
+    }
+
+    // Called by every path that changes or removes a resident. The entry is dropped when the
+    // surrounding transaction completes: after a commit the next read sees the new row, and after
+    // a rollback nothing read mid-transaction survives.
+    public void residentChanged(Long id) {
+        TransactionCallbacks.afterCompletion(() -> invalidate(id));
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        residentsById.clear();
+        idsByFlatNumber.clear();
+    }
+
+    private void invalidate(Long id) {
+        generation.incrementAndGet();
+        residentsById.remove(id);
+        invalidations.increment();
+    }
+
+    private Optional<ResidentView> load(Supplier<Optional<ResidentView>> query) {
+        long seen = generation.get();
+        Optional<ResidentView> loaded = query.get();
+        loaded.ifPresent(resident -> put(resident, seen));
+        return loaded;
+    }
+
+    private void put(ResidentView resident, long seen) {
+        Entry entry = new Entry(resident, System.nanoTime());
+        residentsById.put(resident.id(), entry);
+        // Re-check after the put: an invalidation that ran during the query must win
+        if (generation.get() != seen) {
+            residentsById.remove(resident.id(), entry);
+            return;
+        }
+        if (resident.flatNumber() != null) {
+            idsByFlatNumber.put(resident.flatNumber(), resident.id());
+        }
+        trim();
+    }
+
+    private void trim() {
+        if (residentsById.size() > maxSize || idsByFlatNumber.size() > maxSize) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    // Only one thread evicts at a time. Like SessionStore it trims to 90% of capacity, so the
+    // snapshot and sort are paid once per batch of loads rather than on every put.
+    private synchronized void evictLeastRecentlyUsed() {
+        int excess = residentsById.size() - maxSize;
+        if (excess > 0) {
+            // Copy lastAccess up front: it keeps changing under concurrent reads and the sort needs stable keys
+            List<Candidate> candidates = new ArrayList<>(residentsById.size());
+            residentsById.forEach((id, entry) -> candidates.add(new Candidate(id, entry, entry.lastAccess)));
+            candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+            int toEvict = excess + maxSize / 10;
+            for (int i = 0; i < toEvict && i < candidates.size(); i++) {
+                Candidate candidate = candidates.get(i);
+                if (residentsById.remove(candidate.id(), candidate.entry())) {
+                    evictions.increment();
+                }
+            }
+        }
+        if (excess > 0 || idsByFlatNumber.size() > maxSize) {
+            // Flat numbers of evicted, invalidated or renamed residents
+            idsByFlatNumber.entrySet().removeIf(flat -> !residentsById.containsKey(flat.getValue()));
+            if (idsByFlatNumber.size() > maxSize) {
+                idsByFlatNumber.clear(); // Only spellings of cached flats remain; lookups fall back to the database
+            }
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "residentCache";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("size", residentsById.size());
+        snapshot.put("maxSize", maxSize);
+        snapshot.put("hits", hitCount);
+        snapshot.put("misses", lookups - hitCount);
+        snapshot.put("hitRatio", lookups == 0 ? 0.0 : hitCount / (double) lookups);
+        snapshot.put("invalidations", invalidations.sum());
+        snapshot.put("evictions", evictions.sum());
+        return snapshot;
+    }
+
+    private static final class Entry {
+        private final ResidentView resident;
+        private volatile long lastAccess;
+
+        private Entry(ResidentView resident, long lastAccess) {
+            this.resident = resident;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private record Candidate(Long id, Entry entry, long lastAccess) {}
+}
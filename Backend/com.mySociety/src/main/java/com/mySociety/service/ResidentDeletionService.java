@@ -0,0 +1,252 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.ResidentDeletionResult;
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.repository.ArchivedThreadRepository;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.MaintenanceInvoiceRepository;
+import com.mySociety.repository.MaintenancePaymentRepository;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.MessageThreadRepository;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.UserRepository;
+import com.mySociety.security.SessionStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+// Deletes a resident together with their user, complaints, conversations (live and archived) and
+// maintenance invoices and payments, in one transaction. Every dependent table is cleared with
+// bulk statements keyed on the resident's id (older conversations the resident started carry no
+// recipient and are keyed on their user's id instead), so each statement is an index range scan and
+// no entity is loaded however long the resident's history is. The in-memory views (search index,
+// unread and dashboard counters, resident cache and directory totals, sessions) are updated once
+// the transaction commits.
+// Residents with large histories can be deleted asynchronously: deletions queue on one background
+// thread and their progress is kept for the last STATUS_HISTORY requests.
+@Service
+public class ResidentDeletionService implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ResidentDeletionService.class);
+    private static final int STATUS_HISTORY = 200;
+
+    private final ResidentRepository residentRepository;
+    private final UserRepository userRepository;
+    private final ComplaintRepository complaintRepository;
+    private final MessageRepository messageRepository;
+    private final MessageThreadRepository messageThreadRepository;
+    private final ArchivedThreadRepository archivedThreadRepository;
+    private final MaintenanceInvoiceRepository invoiceRepository;
+    private final MaintenancePaymentRepository paymentRepository;
+    private final SearchService searchService;
+    private final UnreadCounterService unreadCounterService;
+    private final DashboardSummaryService dashboardSummaryService;
+    private final ResidentDirectoryService residentDirectoryService;
+    private final ResidentCache residentCache;
+    private final SessionStore sessionStore;
+    private final EventStreamService eventStreamService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService deleter;
+
+    // Latest deletion per resident id, oldest request first
+    private final Map<Long, ResidentDeletionResult> statuses = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ResidentDeletionResult> eldest) {
+            return size() > STATUS_HISTORY;
+        }
+    };
+
+    private final LongAdder deletions = new LongAdder();
+    private final LongAdder asyncDeletions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rowsDeleted = new LongAdder();
+
+    public ResidentDeletionService(ResidentRepository residentRepository, UserRepository userRepository,
+                                   ComplaintRepository complaintRepository, MessageRepository messageRepository,
+                                   MessageThreadRepository messageThreadRepository, ArchivedThreadRepository archivedThreadRepository,
+                                   MaintenanceInvoiceRepository invoiceRepository, MaintenancePaymentRepository paymentRepository,
+                                   SearchService searchService, UnreadCounterService unreadCounterService,
+                                   DashboardSummaryService dashboardSummaryService, ResidentDirectoryService residentDirectoryService,
+                                   ResidentCache residentCache, SessionStore sessionStore,
+                                   EventStreamService eventStreamService, TransactionTemplate transactionTemplate) {
+        this.residentRepository = residentRepository;
+        this.userRepository = userRepository;
+        this.complaintRepository = complaintRepository;
+        this.messageRepository = messageRepository;
+        this.messageThreadRepository = messageThreadRepository;
+        this.archivedThreadRepository = archivedThreadRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.paymentRepository = paymentRepository;
+        this.searchService = searchService;
+        this.unreadCounterService = unreadCounterService;
+        this.dashboardSummaryService = dashboardSummaryService;
+        this.residentDirectoryService = residentDirectoryService;
+        this.residentCache = residentCache;
+        this.sessionStore = sessionStore;
+        this.eventStreamService = eventStreamService;
+        this.transactionTemplate = transactionTemplate;
+        this.deleter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "resident-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Deletes the resident now; empty when there is no such resident
+    public Optional<ResidentDeletionResult> delete(Long residentId) {
+        return Optional.ofNullable(deleteNow(residentId, LocalDateTime.now()));
+    }
+
+    // Queues the deletion and returns its status; empty when there is no such resident.
+    // Throws IllegalStateException when a deletion of this resident is already queued or running.
+    public Optional<ResidentDeletionResult> deleteAsync(Long residentId) {
+        if (!residentRepository.existsById(residentId)) {
+            return Optional.empty();
+        }
+        LocalDateTime requestedAt = LocalDateTime.now();
+        ResidentDeletionResult queued = ResidentDeletionResult.pending(residentId, "QUEUED", requestedAt);
+        synchronized (statuses) {
+            ResidentDeletionResult current = statuses.get(residentId);
+            if (current != null && current.finishedAt() == null) {
+                throw new IllegalStateException("Resident " + residentId + " is already being deleted.");
+            }
+            statuses.remove(residentId); // Re-inserted last, so the newest request is evicted last
+            statuses.put(residentId, queued);
+        }
+        asyncDeletions.increment();
+        deleter.execute(() -> {
+            record(ResidentDeletionResult.pending(residentId, "RUNNING", requestedAt));
+            long start = System.nanoTime();
+            try {
+                ResidentDeletionResult result = deleteNow(residentId, requestedAt);
+                // Deleted by someone else meanwhile: nothing was left to do
+                record(result != null ? result : ResidentDeletionResult.failed(residentId, requestedAt, 0, "Resident not found"));
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.error("Deleting resident {} failed", residentId, e);
+                record(ResidentDeletionResult.failed(residentId, requestedAt, (System.nanoTime() - start) / 1_000_000, e.getMessage()));
+            }
+        });
+        return Optional.of(queued);
+    }
+
+    // Status of the latest asynchronous deletion of this resident
+    public Optional<ResidentDeletionResult> findStatus(Long residentId) {
+        synchronized (statuses) {
+            return Optional.ofNullable(statuses.get(residentId));
+        }
+    }
+
+    private void record(ResidentDeletionResult status) {
+        synchronized (statuses) {
+            statuses.put(status.residentId(), status);
+        }
+    }
+
+    // Returns null when the resident does not exist
+    private ResidentDeletionResult deleteNow(Long residentId, LocalDateTime requestedAt) {
+        long start = System.nanoTime();
+        ResidentDeletionResult result = transactionTemplate.execute(status -> deleteInTransaction(residentId, requestedAt, start));
+        if (result != null) {
+            deletions.increment();
+            rowsDeleted.add(1L + result.users() + result.complaints() + result.messages() + result.threads()
+                    + result.archivedThreads() + result.invoices() + result.payments());
+            log.info("Deleted resident {} with {} messages, {} complaints and {} invoices ({} ms)", residentId,
+                    result.messages(), result.complaints(), result.invoices(), result.elapsedMillis());
+        }
+        return result;
+    }
+
+    private ResidentDeletionResult deleteInTransaction(Long residentId, LocalDateTime requestedAt, long start) {
+        if (residentRepository.lockById(residentId).isEmpty()) {
+            return null;
+        }
+
+        List<Long> userIds = userRepository.findIdsByResidentId(residentId);
+
+        // Conversations: those addressed to the resident, plus older ones the resident started
+        // without a recipient (found by the root's sender). Replies point at their parents, so
+        // every link goes before any row.
+        List<Long> messageIds = new ArrayList<>(messageRepository.findIdsByRecipientResidentId(residentId));
+        long adminUnread = messageRepository.countByRecipientResidentIdAndSenderRoleAndStatus(residentId, "USER", "UNREAD");
+        List<Long> unaddressedRootIds = userIds.isEmpty() ? List.of() : messageRepository.findUnaddressedRootIdsBySenders(userIds);
+        if (!unaddressedRootIds.isEmpty()) {
+            messageIds.addAll(messageRepository.findUnaddressedIdsInThreads(unaddressedRootIds));
+            adminUnread += messageRepository.countUnaddressedInThreads(unaddressedRootIds, "USER", "UNREAD");
+            messageRepository.clearUnaddressedParentLinksInThreads(unaddressedRootIds);
+        }
+        messageRepository.clearParentLinksForResident(residentId);
+        int messages = messageRepository.deleteForResident(residentId);
+        if (!unaddressedRootIds.isEmpty()) {
+            messages += messageRepository.deleteUnaddressedInThreads(unaddressedRootIds);
+        }
+        int threads = messageThreadRepository.deleteForResident(residentId);
+        int archivedThreads = archivedThreadRepository.deleteForResident(residentId);
+
+        List<Long> complaintIds = complaintRepository.findIdsByResidentId(residentId);
+        Map<String, Long> complaintsByStatus = new HashMap<>();
+        for (Object[] row : complaintRepository.countByStatusForResident(residentId)) {
+            if (row[0] != null) {
+                complaintsByStatus.put((String) row[0], (Long) row[1]);
+            }
+        }
+        int complaints = complaintRepository.deleteForResident(residentId);
+
+        Object[] dues = invoiceRepository.summarizeOutstandingForResident(residentId).get(0);
+        int payments = paymentRepository.deleteForResident(residentId);
+        int invoices = invoiceRepository.deleteForResident(residentId);
+
+        int users = userRepository.deleteForResident(residentId);
+        residentRepository.deleteByIdInBulk(residentId);
+
+        searchService.messagesRemoved(messageIds);
+        searchService.complaintsRemoved(complaintIds);
+        unreadCounterService.residentRemoved(residentId, adminUnread);
+        dashboardSummaryService.residentsRemoved(1);
+        dashboardSummaryService.complaintsRemoved(complaintsByStatus);
+        dashboardSummaryService.invoicesRemoved(((Long) dues[0]).intValue(), (BigDecimal) dues[1]);
+        residentDirectoryService.residentsChanged();
+        residentCache.residentChanged(residentId);
+        TransactionCallbacks.afterCommit(() -> {
+            userIds.forEach(sessionStore::removeUser);
+            userIds.forEach(eventStreamService::closeUser);
+        });
+
+        return new ResidentDeletionResult(residentId, "COMPLETED", users, complaints, messages, threads, archivedThreads,
+                invoices, payments, requestedAt, LocalDateTime.now(), (System.nanoTime() - start) / 1_000_000, null);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deleter.shutdown();
+    }
+
+    @Override
+    public String metricsName() {
+        return "residentDeletion";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("deletions", deletions.sum());
+        snapshot.put("async", asyncDeletions.sum());
+        snapshot.put("failures", failures.sum());
+        snapshot.put("rowsDeleted", rowsDeleted.sum());
+        return snapshot;
+    }
+}
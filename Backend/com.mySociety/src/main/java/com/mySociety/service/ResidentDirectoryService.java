@@ -0,0 +1,188 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.PageSizes;
+import com.mySociety.dto.ResidentCursor;
+import com.mySociety.dto.ResidentDirectoryPage;
+import com.mySociety.dto.ResidentView;
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.ResidentRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.mySociety.repository.ResidentSpecifications.*;
+
+// Admin resident directory: keyset pages over the residents table with optional filters and a
+// choice of sort column, so a page costs the same at flat 50 or flat 49,950 and only one page
+// of rows is ever held in memory. The total for each filter combination is counted once and
+// cached for residents.directory.count-ttl-ms; adding, changing or removing a resident drops
+// the cached totals.
+@Service
+public class ResidentDirectoryService implements MetricsSource {
+
+    private static final int MAX_CACHED_COUNTS = 1000;
+
+    // Sortable columns; the parameter names match the JSON field names
+    private enum SortKey {
+        FLAT_NUMBER("flatNumber", value -> value),
+        NAME("name", value -> value),
+        MAINTENANCE_CHARGE("maintenanceCharge", BigDecimal::new);
+
+        private final String field;
+        private final Function<String, Comparable<?>> parser;
+
+        SortKey(String field, Function<String, Comparable<?>> parser) {
+            this.field = field;
+            this.parser = parser;
+        }
+
+        static SortKey of(String name) {
+            if (name == null || name.isBlank()) {
+                return FLAT_NUMBER;
+            }
+            for (SortKey key : values()) {
+                if (key.field.equalsIgnoreCase(name)) {
+                    return key;
+                }
+            }
+            throw new IllegalArgumentException("sort must be flatNumber, name or maintenanceCharge.");
+        }
+
+        String valueOf(ResidentView resident) {
+            return switch (this) {
+                case FLAT_NUMBER -> resident.flatNumber();
+                case NAME -> resident.name();
+                case MAINTENANCE_CHARGE -> resident.maintenanceCharge() == null ? null : resident.maintenanceCharge().toPlainString();
+            };
+        }
+    }
+
+    private record CountKey(String namePrefix, String flatPrefix, BigDecimal minCharge, BigDecimal maxCharge) {}
+
+    private record CachedCount(long count, long expiresAt) {}
+
+    private final ResidentRepository residentRepository;
+    private final long countTtlMillis;
+    private final Map<CountKey, CachedCount> counts = new ConcurrentHashMap<>();
+
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder countHits = new LongAdder();
+    private final LongAdder countMisses = new LongAdder();
+
+    public ResidentDirectoryService(ResidentRepository residentRepository,
+                                    @Value("${residents.directory.count-ttl-ms:60000}") long countTtlMillis) {
+        this.residentRepository = residentRepository;
+        this.countTtlMillis = countTtlMillis;
+    }
+
+    // Every filter is optional. Throws IllegalArgumentException for an unknown sort or direction,
+    // an inverted charge range, or a cursor issued for a different sort.
+    @Transactional(readOnly = true)
+    public ResidentDirectoryPage getPage(String cursorToken, Integer limit, String sort, String direction,
+                                         String namePrefix, String flatPrefix, BigDecimal minCharge, BigDecimal maxCharge) {
+        SortKey sortKey = SortKey.of(sort);
+        boolean ascending = direction == null || direction.isBlank() || direction.equalsIgnoreCase("asc");
+        if (!ascending && !direction.equalsIgnoreCase("desc")) {
+            throw new IllegalArgumentException("direction must be asc or desc.");
+        }
+        if (minCharge != null && maxCharge != null && minCharge.compareTo(maxCharge) > 0) {
+            throw new IllegalArgumentException("minCharge must not be greater than maxCharge.");
+        }
+        String sortToken = sortKey.field + (ascending ? ":asc" : ":desc");
+        ResidentCursor cursor = ResidentCursor.decode(cursorToken);
+        if (cursor != null && !cursor.sort().equals(sortToken)) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort.");
+        }
+        int pageSize = PageSizes.clamp(limit);
+
+        Specification<Resident> filters = Specification.allOf(nameStartsWith(namePrefix), flatNumberStartsWith(flatPrefix),
+                maintenanceChargeAtLeast(minCharge), maintenanceChargeAtMost(maxCharge));
+        Specification<Resident> query = cursor == null ? filters : filters.and(afterCursor(sortKey, ascending, cursor));
+        Sort.Direction order = ascending ? Sort.Direction.ASC : Sort.Direction.DESC;
+        // One extra row tells us whether another page exists
+        List<ResidentView> rows = residentRepository.findBy(query, q -> q
+                        .sortBy(Sort.by(order, sortKey.field, "id"))
+                        .limit(pageSize + 1)
+                        .all())
+                .stream()
+                .map(ResidentDirectoryService::view)
+                .toList();
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            ResidentView last = rows.get(pageSize - 1);
+            nextCursor = new ResidentCursor(sortToken, sortKey.valueOf(last), last.id()).encode();
+        }
+        pages.increment();
+        long total = count(new CountKey(emptyToNull(namePrefix), emptyToNull(flatPrefix), minCharge, maxCharge), filters);
+        return new ResidentDirectoryPage(rows, nextCursor, total);
+    }
+
+    // Called by every path that adds, changes or removes residents; takes effect once the change commits
+    public void residentsChanged() {
+        TransactionCallbacks.afterCommit(counts::clear);
+    }
+
+    private long count(CountKey key, Specification<Resident> filters) {
+        long now = System.currentTimeMillis();
+        CachedCount cached = counts.get(key);
+        if (cached != null && cached.expiresAt() > now) {
+            countHits.increment();
+            return cached.count();
+        }
+        countMisses.increment();
+        long count = residentRepository.count(filters);
+        if (counts.size() >= MAX_CACHED_COUNTS) {
+            counts.clear(); // Many distinct filters in one TTL; start over rather than grow without bound
+        }
+        counts.put(key, new CachedCount(count, now + countTtlMillis));
+        return count;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Specification<Resident> afterCursor(SortKey sortKey, boolean ascending, ResidentCursor cursor) {
+        Comparable value;
+        try {
+            value = cursor.value() == null ? null : sortKey.parser.apply(cursor.value());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+        return after(sortKey.field, ascending, value, cursor.id());
+    }
+
+    private static ResidentView view(Resident resident) {
+        return new ResidentView(resident.getId(), resident.getName(), resident.getEmail(), resident.getPhone(),
+                resident.getFlatNumber(), resident.getMaintenanceCharge());
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public String metricsName() {
+        return "residentDirectory";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("pages", pages.sum());
+        snapshot.put("cachedCounts", counts.size());
+        snapshot.put("countHits", countHits.sum());
+        snapshot.put("countMisses", countMisses.sum());
+        return snapshot;
+    }
+}
@@ -0,0 +1,419 @@
+package com.mySociety.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mySociety.csv.CsvReader;
+import com.mySociety.dto.ResidentImportError;
+import com.mySociety.dto.ResidentImportResult;
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.model.Resident;
+import com.mySociety.model.User;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.UserRepository;
+import com.mySociety.security.PasswordHasher;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bulk resident onboarding from a CSV or NDJSON upload.
+// The file is read one row at a time and each row is validated on its own; existing flat numbers
+// and usernames are loaded once up front so duplicates are caught without a query per row.
+// Valid rows are inserted residents.import.chunk-size at a time, residents and users as JDBC
+// batches in one transaction per chunk, with the chunk's initial passwords hashed in parallel
+// on PasswordHasher's import pool (see PasswordHasher.hashAllForImport). Invalid rows are skipped and
+// reported; the rest are imported. Only one import runs at a time.
+@Service
+public class ResidentImportService implements MetricsSource {
+
+    public enum Format {
+        CSV, NDJSON;
+
+        // An explicit format wins, then the file extension, then the content type
+        public static Format detect(String format, String filename, String contentType) {
+            if (format != null && !format.isBlank()) {
+                return switch (format.trim().toLowerCase(Locale.ROOT)) {
+                    case "csv" -> CSV;
+                    case "ndjson", "jsonl" -> NDJSON;
+                    default -> throw new IllegalArgumentException("format must be csv or ndjson.");
+                };
+            }
+            String name = filename == null ? "" : filename.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+                return NDJSON;
+            }
+            String type = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+            if (type.startsWith("text/csv")) {
+                return CSV;
+            }
+            if (type.startsWith("application/x-ndjson") || type.startsWith("application/jsonl")) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("Could not tell the file format; pass format=csv or format=ndjson.");
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ResidentImportService.class);
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int MAX_TEXT_LENGTH = 255; // Default VARCHAR length of the resident and user columns
+    private static final List<String> REQUIRED_COLUMNS = List.of("flatNumber", "maintenanceCharge", "username", "password");
+
+    // One row of the upload; error is set when the row could not even be parsed
+    private record Row(int line, String name, String email, String phone, String flatNumber,
+                       String maintenanceCharge, String username, String password, String error) {
+
+        static Row invalid(int line, String error) {
+            return new Row(line, null, null, null, null, null, null, null, error);
+        }
+    }
+
+    private record Accepted(Row row, BigDecimal maintenanceCharge) {}
+
+    // Hands out rows until the end of the file, then null
+    private interface RowSource {
+        Row next() throws IOException;
+    }
+
+    private final ResidentRepository residentRepository;
+    private final UserRepository userRepository;
+    private final PasswordHasher passwordHasher;
+    private final ResidentDirectoryService residentDirectoryService;
+    private final DashboardSummaryService dashboardSummaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder imports = new LongAdder();
+    private final LongAdder rowsImported = new LongAdder();
+    private final LongAdder rowsFailed = new LongAdder();
+    private volatile long lastImportMillis;
+
+    public ResidentImportService(ResidentRepository residentRepository, UserRepository userRepository,
+                                 PasswordHasher passwordHasher, ResidentDirectoryService residentDirectoryService,
+                                 DashboardSummaryService dashboardSummaryService, TransactionTemplate transactionTemplate, EntityManager entityManager,
+                                 ObjectMapper objectMapper,
+                                 @Value("${residents.import.chunk-size:500}") int chunkSize) {
+        this.residentRepository = residentRepository;
+        this.userRepository = userRepository;
+        this.passwordHasher = passwordHasher;
+        this.residentDirectoryService = residentDirectoryService;
+        this.dashboardSummaryService = dashboardSummaryService;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    // With dryRun nothing is written and imported counts the rows that would have been.
+    // Throws IllegalArgumentException when the file cannot be read as the given format (an empty
+    // file or a CSV header without the required columns) and IllegalStateException when another
+    // import is running.
+    public ResidentImportResult importResidents(InputStream input, Format format, boolean dryRun) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A resident import is already running.");
+        }
+        long start = System.nanoTime();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            ImportRun run = new ImportRun(dryRun);
+            RowSource rows = format == Format.CSV ? csvRows(reader) : ndjsonRows(reader);
+            try {
+                for (Row row = rows.next(); row != null; row = rows.next()) {
+                    run.add(row);
+                }
+            } catch (IllegalArgumentException e) {
+                // A CSV quote that never closes swallows the rest of the file; keep what came before it
+                run.reject(null, null, e.getMessage());
+            }
+            run.flush();
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            imports.increment();
+            lastImportMillis = elapsedMillis;
+            if (!dryRun) {
+                rowsImported.add(run.imported);
+                rowsFailed.add(run.failed);
+            }
+            log.info("Resident import{}: {} rows read, {} imported, {} rejected ({} ms)",
+                    dryRun ? " (dry run)" : "", run.rowsRead, run.imported, run.failed, elapsedMillis);
+            return new ResidentImportResult(run.rowsRead, run.imported, run.failed, dryRun, elapsedMillis,
+                    run.errors, run.failed > run.errors.size());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // State of one import: what has been seen so far, the rows waiting for the next chunk, and the report
+    private final class ImportRun {
+
+        private final boolean dryRun;
+        // MySQL compares these columns case-insensitively, so duplicates are checked the same way
+        private final Set<String> existingFlats = normalized(residentRepository.findAllFlatNumbers());
+        private final Set<String> existingUsernames = normalized(userRepository.findAllUsernames());
+        private final Set<String> flatsInFile = new HashSet<>();
+        private final Set<String> usernamesInFile = new HashSet<>();
+        private final List<ResidentImportError> errors = new ArrayList<>();
+        private List<Accepted> pending = new ArrayList<>();
+        private int rowsRead;
+        private int imported;
+        private int failed;
+
+        ImportRun(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        void add(Row row) {
+            rowsRead++;
+            if (row.error() != null) {
+                reject(row, row.error());
+                return;
+            }
+            String problem = firstProblem(row);
+            if (problem != null) {
+                reject(row, problem);
+                return;
+            }
+            String flatKey = key(row.flatNumber());
+            String usernameKey = key(row.username());
+            if (existingFlats.contains(flatKey)) {
+                reject(row, "flatNumber already belongs to a resident.");
+            } else if (!flatsInFile.add(flatKey)) {
+                reject(row, "flatNumber appears earlier in the file.");
+            } else if (existingUsernames.contains(usernameKey)) {
+                reject(row, "username is already taken.");
+            } else if (!usernamesInFile.add(usernameKey)) {
+                reject(row, "username appears earlier in the file.");
+            } else {
+                pending.add(new Accepted(row, new BigDecimal(row.maintenanceCharge())));
+                if (pending.size() >= chunkSize) {
+                    flush();
+                }
+            }
+        }
+
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Accepted> chunk = pending;
+            pending = new ArrayList<>();
+            if (dryRun) {
+                imported += chunk.size();
+                return;
+            }
+            List<String> passwordHashes = hashPasswords(chunk);
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertChunk(chunk, passwordHashes));
+                imported += chunk.size();
+            } catch (DataAccessException e) {
+                // Someone else created one of these flats or usernames since the preload
+                String reason = "Not imported, its chunk was rolled back: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+                for (Accepted accepted : chunk) {
+                    reject(accepted.row(), reason);
+                }
+            }
+        }
+
+        void reject(Row row, String message) {
+            reject(row.line(), row.flatNumber(), message);
+        }
+
+        void reject(Integer line, String flatNumber, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ResidentImportError(line == null ? 0 : line, flatNumber, message));
+            }
+        }
+    }
+
+    private void insertChunk(List<Accepted> chunk, List<String> passwordHashes) {
+        List<Resident> residents = new ArrayList<>(chunk.size());
+        List<User> users = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Row row = chunk.get(i).row();
+            Resident resident = new Resident(row.name(), row.email(), row.phone(), row.flatNumber(), chunk.get(i).maintenanceCharge());
+            User user = new User(row.username(), passwordHashes.get(i), "USER");
+            user.setResident(resident);
+            residents.add(resident);
+            users.add(user);
+        }
+        // Pooled ids are assigned without touching either table, so both inserts are batched at flush
+        residentRepository.saveAll(residents);
+        userRepository.saveAll(users);
+        residentDirectoryService.residentsChanged();
+        dashboardSummaryService.residentsAdded(residents.size());
+        // The request's persistence context lives as long as the upload; keep it to one chunk
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private List<String> hashPasswords(List<Accepted> chunk) {
+        return passwordHasher.hashAllForImport(chunk.stream().map(accepted -> accepted.row().password()).toList());
+    }
+
+    // First reason the row cannot be imported, or null
+    private static String firstProblem(Row row) {
+        if (row.flatNumber() == null) {
+            return "flatNumber is required.";
+        }
+        if (row.username() == null) {
+            return "username is required.";
+        }
+        if (row.password() == null || row.password().isEmpty()) {
+            return "password is required.";
+        }
+        if (row.maintenanceCharge() == null) {
+            return "maintenanceCharge is required.";
+        }
+        try {
+            if (new BigDecimal(row.maintenanceCharge()).signum() < 0) {
+                return "maintenanceCharge must not be negative.";
+            }
+        } catch (NumberFormatException e) {
+            return "maintenanceCharge is not a number.";
+        }
+        for (String value : new String[] {row.name(), row.email(), row.phone(), row.flatNumber(), row.username()}) {
+            if (value != null && value.length() > MAX_TEXT_LENGTH) {
+                return "Values must be at most " + MAX_TEXT_LENGTH + " characters.";
+            }
+        }
+        return null;
+    }
+
+    // A header row naming the columns, in any order; unknown columns are ignored
+    private static RowSource csvRows(BufferedReader reader) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.readRecord();
+        if (header == null) {
+            throw new IllegalArgumentException("The file is empty.");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String column : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(column.toLowerCase(Locale.ROOT))) {
+                throw new IllegalArgumentException("The header row has no " + column + " column.");
+            }
+        }
+        return () -> {
+            List<String> fields = csv.readRecord();
+            while (fields != null && fields.size() == 1 && fields.get(0).isBlank()) {
+                fields = csv.readRecord(); // Blank line
+            }
+            if (fields == null) {
+                return null;
+            }
+            return new Row(csv.recordLine(), text(fields, columns, "name"), text(fields, columns, "email"),
+                    text(fields, columns, "phone"), text(fields, columns, "flatNumber"),
+                    text(fields, columns, "maintenanceCharge"), text(fields, columns, "username"),
+                    raw(fields, columns, "password"), null);
+        };
+    }
+
+    // One JSON object per line with the same field names as the CSV header
+    private RowSource ndjsonRows(BufferedReader reader) {
+        int[] line = {0};
+        return () -> {
+            String text;
+            do {
+                text = reader.readLine();
+                line[0]++;
+            } while (text != null && text.isBlank());
+            if (text == null) {
+                return null;
+            }
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(text);
+            } catch (JsonProcessingException e) {
+                return Row.invalid(line[0], "Not valid JSON: " + e.getOriginalMessage());
+            }
+            if (!node.isObject()) {
+                return Row.invalid(line[0], "Expected a JSON object.");
+            }
+            return new Row(line[0], text(node, "name"), text(node, "email"), text(node, "phone"),
+                    text(node, "flatNumber"), text(node, "maintenanceCharge"), text(node, "username"),
+                    node.hasNonNull("password") ? node.get("password").asText() : null, null);
+        };
+    }
+
+    private static String raw(List<String> fields, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column.toLowerCase(Locale.ROOT));
+        return index == null || index >= fields.size() ? null : fields.get(index);
+    }
+
+    private static String text(List<String> fields, Map<String, Integer> columns, String column) {
+        return blankToNull(raw(fields, columns, column));
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        return blankToNull(value.isNumber() ? value.decimalValue().toPlainString() : value.asText());
+    }
+
+    private static String blankToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> normalized(List<String> values) {
+        Set<String> keys = new HashSet<>(values.size() * 2);
+        for (String value : values) {
+            keys.add(key(value.trim()));
+        }
+        return keys;
+    }
+
+    @Override
+    public String metricsName() {
+        return "residentImport";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("running", running.get());
+        snapshot.put("imports", imports.sum());
+        snapshot.put("rowsImported", rowsImported.sum());
+        snapshot.put("rowsFailed", rowsFailed.sum());
+        snapshot.put("lastImportMillis", lastImportMillis);
+        return snapshot;
+    }
+}
@@ -1,9 +1,11 @@
 package com.mySociety.service;
 
+import com.mySociety.dto.ResidentView;
 import com.mySociety.model.Resident;
 import com.mySociety.model.User;
 import com.mySociety.repository.ResidentRepository;
 import com.mySociety.repository.UserRepository;
+import com.mySociety.security.PasswordHasher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,32 +17,49 @@ public class ResidentService {
 
     private final ResidentRepository residentRepository;
     private final UserRepository userRepository;
+    private final PasswordHasher passwordHasher;
+    private final ResidentDirectoryService residentDirectoryService; // Drops cached directory totals on changes
+    private final ResidentCache residentCache; // Only changed or removed residents need dropping; it never caches absence
+    private final DashboardSummaryService dashboardSummaryService;
+    private final ResidentDeletionService residentDeletionService;
 
-    public ResidentService(ResidentRepository residentRepository, UserRepository userRepository) {
+    public ResidentService(ResidentRepository residentRepository, UserRepository userRepository,
+                           PasswordHasher passwordHasher, ResidentDirectoryService residentDirectoryService,
+                           ResidentCache residentCache, DashboardSummaryService dashboardSummaryService,
+                           ResidentDeletionService residentDeletionService) {
         this.residentRepository = residentRepository;
         this.userRepository = userRepository;
+        this.passwordHasher = passwordHasher;
+        this.residentDirectoryService = residentDirectoryService;
+        this.residentCache = residentCache;
+        this.dashboardSummaryService = dashboardSummaryService;
+        this.residentDeletionService = residentDeletionService;
     }
 
-    public List<Resident> getAllResidents() {
-        return residentRepository.findAll();
+    public List<ResidentView> getAllResidents() {
+        return residentRepository.findAllViews();
     }
 
-    public Optional<Resident> getResidentById(Long id) {
-        return residentRepository.findById(id);
+    public Optional<ResidentView> getResidentById(Long id) {
+        return residentCache.findById(id);
     }
 
     @Transactional
     public Resident createResident(Resident resident, String username, String password) {
+        String passwordHash = passwordHasher.hash(password);
+
         // Save resident first to get an ID
         Resident savedResident = residentRepository.save(resident);
 
         // Create a user for the resident
         User newUser = new User();
         newUser.setUsername(username);
-        newUser.setPassword(password); // IMPORTANT: Hash this password in a real app!
+        newUser.setPassword(passwordHash);
         newUser.setRole("USER");
         newUser.setResident(savedResident);
         userRepository.save(newUser);
+        residentDirectoryService.residentsChanged();
+        dashboardSummaryService.residentsAdded(1);
 
         return savedResident;
     }
@@ -54,18 +73,14 @@ public class ResidentService {
                     resident.setPhone(residentDetails.getPhone());
                     resident.setFlatNumber(residentDetails.getFlatNumber());
                     resident.setMaintenanceCharge(residentDetails.getMaintenanceCharge());
+                    residentDirectoryService.residentsChanged();
+                    residentCache.residentChanged(id);
                     return residentRepository.save(resident);
                 });
     }
 
-    @Transactional
+    // Removes the resident's user, complaints, messages and maintenance records with them
     public boolean deleteResident(Long id) {
-        // First, delete associated user (if any)
-        userRepository.findByResidentId(id).ifPresent(userRepository::delete);
-        if (residentRepository.existsById(id)) {
-            residentRepository.deleteById(id);
-            return true;
-        }
-        return false;
+        return residentDeletionService.delete(id).isPresent();
     }
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package com.mySociety.service;
+
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.model.Announcement;
+import com.mySociety.model.Complaint;
+import com.mySociety.model.Message;
+import com.mySociety.repository.AnnouncementRepository;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.search.SearchIndex;
+import com.mySociety.search.SearchIndex.Hit;
+import com.mySociety.search.SearchIndex.Type;
+import com.mySociety.security.AuthPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+// Full-text search over message, complaint and announcement text, served from an in-memory
+// SearchIndex so queries never scan the tables. The services report every write here and the
+// index is updated once the write commits. The whole index is rebuilt from the database at
+// startup (and on demand) into a fresh instance that replaces the live one when complete;
+// writes that commit during a rebuild are replayed onto the new index before the swap.
+//
+// Admins can search everything. Residents only see announcements and the messages and
+// complaints of their own flat.
+@Service
+public class SearchService implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchService.class);
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+    private static final int REBUILD_CHUNK_SIZE = 1000;
+
+    private final MessageRepository messageRepository;
+    private final ComplaintRepository complaintRepository;
+    private final AnnouncementRepository announcementRepository;
+
+    private volatile SearchIndex index = new SearchIndex();
+    private final Object rebuildLock = new Object();
+    private List<Consumer<SearchIndex>> replay; // Non-null while a rebuild is running; guarded by rebuildLock
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    public SearchService(MessageRepository messageRepository, ComplaintRepository complaintRepository,
+                         AnnouncementRepository announcementRepository) {
+        this.messageRepository = messageRepository;
+        this.complaintRepository = complaintRepository;
+        this.announcementRepository = announcementRepository;
+    }
+
+    // type and residentId are optional filters; throws IllegalArgumentException for an unknown type
+    public List<Hit> search(AuthPrincipal principal, String query, String type, Long residentId, Integer limit) {
+        Type typeFilter = type == null || type.isBlank() ? null : Type.valueOf(type.trim().toUpperCase());
+        int size = limit == null || limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+
+        Predicate<Hit> filter = hit -> (typeFilter == null || hit.type() == typeFilter)
+                && (residentId == null || residentId.equals(hit.residentId()));
+        if (!principal.isAdmin()) {
+            Long ownResidentId = principal.residentId();
+            filter = filter.and(hit -> hit.type() == Type.ANNOUNCEMENT
+                    || (ownResidentId != null && ownResidentId.equals(hit.residentId())));
+        }
+
+        long start = System.nanoTime();
+        List<Hit> hits = index.search(query, filter, size);
+        queries.increment();
+        queryNanos.add(System.nanoTime() - start);
+        return hits;
+    }
+
+    public void messageSaved(Message message) {
+        Long residentId = message.getRecipientResident() != null ? message.getRecipientResident().getId() : null;
+        Long id = message.getId();
+        String subject = message.getSubject();
+        String content = message.getContent();
+        applyAfterCommit(searchIndex -> searchIndex.put(Type.MESSAGE, id, residentId, subject, content));
+    }
+
+    public void messagesSaved(List<Message> messages) {
+        messages.forEach(this::messageSaved);
+    }
+
+    // Messages moved to the archive or deleted
+    public void messagesRemoved(List<Long> ids) {
+        applyAfterCommit(searchIndex -> ids.forEach(id -> searchIndex.remove(Type.MESSAGE, id)));
+    }
+
+    public void complaintSaved(Complaint complaint) {
+        Long residentId = complaint.getResident() != null ? complaint.getResident().getId() : null;
+        Long id = complaint.getId();
+        String subject = complaint.getSubject();
+        String description = complaint.getDescription();
+        applyAfterCommit(searchIndex -> searchIndex.put(Type.COMPLAINT, id, residentId, subject, description));
+    }
+
+    // Complaints deleted with their resident
+    public void complaintsRemoved(List<Long> ids) {
+        applyAfterCommit(searchIndex -> ids.forEach(id -> searchIndex.remove(Type.COMPLAINT, id)));
+    }
+
+    public void announcementSaved(Announcement announcement) {
+        Long id = announcement.getId();
+        String title = announcement.getTitle();
+        String content = announcement.getContent();
+        applyAfterCommit(searchIndex -> searchIndex.put(Type.ANNOUNCEMENT, id, null, title, content));
+    }
+
+    public void announcementDeleted(Long id) {
+        applyAfterCommit(searchIndex -> searchIndex.remove(Type.ANNOUNCEMENT, id));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuild();
+    }
+
+    // Returns the number of documents indexed
+    public int rebuild() {
+        synchronized (rebuildLock) {
+            if (replay != null) {
+                throw new IllegalStateException("A search index rebuild is already running.");
+            }
+            replay = new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        SearchIndex fresh = new SearchIndex();
+        boolean complete = false;
+        try {
+            load(messageRepository::findSearchRowsAfter,
+                    row -> fresh.put(Type.MESSAGE, (Long) row[0], (Long) row[1], (String) row[2], (String) row[3]));
+            load(complaintRepository::findSearchRowsAfter,
+                    row -> fresh.put(Type.COMPLAINT, (Long) row[0], (Long) row[1], (String) row[2], (String) row[3]));
+            load(announcementRepository::findSearchRowsAfter,
+                    row -> fresh.put(Type.ANNOUNCEMENT, (Long) row[0], null, (String) row[1], (String) row[2]));
+            complete = true;
+        } finally {
+            synchronized (rebuildLock) {
+                if (complete) { // A failed rebuild leaves the live index in place
+                    replay.forEach(update -> update.accept(fresh));
+                    index = fresh;
+                }
+                replay = null;
+            }
+        }
+        rebuilds.increment();
+        log.info("Search index rebuilt with {} documents and {} terms in {} ms",
+                fresh.documentCount(), fresh.termCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return fresh.documentCount();
+    }
+
+    private static void load(BiFunction<Long, Pageable, List<Object[]>> loader, Consumer<Object[]> indexRow) {
+        long afterId = 0L;
+        while (true) {
+            List<Object[]> rows = loader.apply(afterId, PageRequest.of(0, REBUILD_CHUNK_SIZE));
+            if (rows.isEmpty()) {
+                return;
+            }
+            rows.forEach(indexRow);
+            afterId = (Long) rows.get(rows.size() - 1)[0];
+        }
+    }
+
+    private void applyAfterCommit(Consumer<SearchIndex> update) {
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (rebuildLock) {
+                update.accept(index);
+                if (replay != null) {
+                    replay.add(update);
+                }
+            }
+            updates.increment();
+        });
+    }
+
+    @Override
+    public String metricsName() {
+        return "search";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        long count = queries.sum();
+        SearchIndex current = index;
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("documents", current.documentCount());
+        snapshot.put("terms", current.termCount());
+        snapshot.put("queries", count);
+        snapshot.put("avgQueryMicros", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(queryNanos.sum() / count));
+        snapshot.put("updates", updates.sum());
+        snapshot.put("rebuilds", rebuilds.sum());
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.mySociety.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Fills in thread_root_id/thread_seq for messages written before those columns existed, and
+// repairs them after rows were inserted by hand. The root gets (id, 0) and every descendant, in
+// (createdAt, id) order, gets 1..n. The work is done with set-based statements over the whole
+// table rather than per thread: one UPDATE for the roots, then one join per level of reply depth
+// to carry root ids down, then one ROW_NUMBER() pass for the positions. Only rows whose values
+// change are written, in JDBC batches, so a rerun over numbered threads costs a few reads.
+// The startup run happens once all beans are initialized and before the web server accepts
+// requests (like IdGeneratorInitializer), so no request or inbox rebuild sees unnumbered rows.
+@Service
+public class ThreadPositionBackfill implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadPositionBackfill.class);
+    private static final int BATCH_SIZE = 500;
+    // Reply chains are far shallower; this only stops a hand-made parent cycle from looping
+    private static final int MAX_DEPTH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ThreadPositionBackfill(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<Long> unnumbered = jdbcTemplate.queryForList(
+                "SELECT id FROM messages WHERE thread_root_id IS NULL OR thread_seq IS NULL LIMIT 1", Long.class);
+        if (!unnumbered.isEmpty()) {
+            backfill();
+        }
+    }
+
+    // Returns the number of row updates
+    public int backfill() {
+        int updated = jdbcTemplate.update("UPDATE messages SET thread_root_id = id, thread_seq = 0 " +
+                "WHERE parent_message_id IS NULL AND (thread_root_id IS NULL OR thread_root_id <> id " +
+                "OR thread_seq IS NULL OR thread_seq <> 0)");
+
+        // Each pass copies the parent's root onto replies that disagree with it; after n passes the
+        // first n levels below the roots are right
+        int depth = 0;
+        while (true) {
+            List<Object[]> rows = jdbcTemplate.query("SELECT c.id, p.thread_root_id FROM messages c " +
+                    "JOIN messages p ON p.id = c.parent_message_id WHERE p.thread_root_id IS NOT NULL " +
+                    "AND (c.thread_root_id IS NULL OR c.thread_root_id <> p.thread_root_id)",
+                    (rs, rowNum) -> new Object[] {rs.getLong(2), rs.getLong(1)});
+            if (rows.isEmpty()) {
+                break;
+            }
+            if (++depth > MAX_DEPTH) {
+                log.warn("Stopped carrying thread roots down after {} levels; {} messages left", MAX_DEPTH, rows.size());
+                break;
+            }
+            updated += writeInBatches("UPDATE messages SET thread_root_id = ? WHERE id = ?", rows);
+        }
+
+        List<Object[]> positions = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, thread_seq, seq FROM (SELECT id, thread_seq, " +
+                "ROW_NUMBER() OVER (PARTITION BY thread_root_id ORDER BY created_at, id) AS seq FROM messages " +
+                "WHERE parent_message_id IS NOT NULL AND thread_root_id IS NOT NULL) numbered " +
+                "WHERE thread_seq IS NULL OR thread_seq <> seq", rs -> {
+            positions.add(new Object[] {rs.getInt(3), rs.getLong(1)});
+        });
+        updated += writeInBatches("UPDATE messages SET thread_seq = ? WHERE id = ?", positions);
+
+        log.info("Backfilled thread positions with {} row updates ({} reply levels)", updated, depth);
+        return updated;
+    }
+
+    // One transaction per batch
+    private int writeInBatches(String sql, List<Object[]> rows) {
+        for (int start = 0; start < rows.size(); start += BATCH_SIZE) {
+            List<Object[]> batch = rows.subList(start, Math.min(start + BATCH_SIZE, rows.size()));
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, batch));
+        }
+        return rows.size();
+    }
+}
@@ -0,0 +1,40 @@
+package com.mySociety.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Defers in-memory updates (counters, caches, the search index, pushed events) until the
+// surrounding transaction ends, so a rollback leaves them untouched. Outside a transaction
+// the callback runs at once.
+final class TransactionCallbacks {
+
+    private TransactionCallbacks() {}
+
+    // Runs only if the transaction commits
+    static void afterCommit(Runnable callback) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    callback.run();
+                }
+            });
+        } else {
+            callback.run();
+        }
+    }
+
+    // Runs whether the transaction commits or rolls back
+    static void afterCompletion(Runnable callback) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    callback.run();
+                }
+            });
+        } else {
+            callback.run();
+        }
+    }
+}
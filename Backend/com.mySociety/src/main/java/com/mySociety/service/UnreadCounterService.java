@@ -0,0 +1,130 @@
+package com.mySociety.service;
+
+import com.mySociety.metrics.MetricsSource;
+import com.mySociety.model.Message;
+import com.mySociety.repository.MessageRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-memory unread badges so the most-polled number in the UI never reads the messages table.
+// Residents count UNREAD messages sent to them by the admin; the admin inbox counts UNREAD
+// messages sent by residents. MessageService reports every status change, and the counters
+// are applied only once the surrounding transaction commits. A full recount from the
+// database runs at startup and periodically to correct any drift.
+@Service
+public class UnreadCounterService implements MetricsSource {
+
+    private final MessageRepository messageRepository;
+
+    private volatile ConcurrentHashMap<Long, AtomicLong> unreadByResident = new ConcurrentHashMap<>();
+    private final AtomicLong unreadForAdmin = new AtomicLong();
+
+    private final LongAdder reconciliations = new LongAdder();
+    private final LongAdder driftCorrections = new LongAdder();
+
+    public UnreadCounterService(MessageRepository messageRepository) {
+        this.messageRepository = messageRepository;
+    }
+
+    public long getResidentUnreadCount(Long residentId) {
+        AtomicLong counter = unreadByResident.get(residentId);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public long getAdminUnreadCount() {
+        return unreadForAdmin.get();
+    }
+
+    // A message was written with status UNREAD
+    public void messageAdded(Message message) {
+        adjustAfterCommit(message, 1);
+    }
+
+    // A message went from UNREAD to READ
+    public void messageRead(Message message) {
+        adjustAfterCommit(message, -1);
+    }
+
+    // One UNREAD admin message was written to each of these residents
+    public void adminMessagesAdded(List<Long> residentIds) {
+        TransactionCallbacks.afterCommit(() -> residentIds.forEach(residentId -> adjust("ADMIN", residentId, 1)));
+    }
+
+    // Bulk version of messageRead: messages from senderRole to each listed recipient (null for none) became READ
+    public void messagesRead(String senderRole, List<Long> recipientResidentIds) {
+        List<Long> targets = new ArrayList<>(recipientResidentIds);
+        TransactionCallbacks.afterCommit(() -> targets.forEach(residentId -> adjust(senderRole, residentId, -1)));
+    }
+
+    // A resident was deleted with all their messages, adminUnread of them unread in the admin inbox
+    public void residentRemoved(Long residentId, long adminUnread) {
+        TransactionCallbacks.afterCommit(() -> {
+            unreadByResident.remove(residentId);
+            unreadForAdmin.updateAndGet(value -> Math.max(0, value - adminUnread));
+        });
+    }
+
+    private void adjustAfterCommit(Message message, int delta) {
+        // Resolve the target now; the entity may be detached by the time the transaction commits
+        String senderRole = message.getSenderRole();
+        Long residentId = message.getRecipientResident() != null ? message.getRecipientResident().getId() : null;
+        TransactionCallbacks.afterCommit(() -> adjust(senderRole, residentId, delta));
+    }
+
+    private void adjust(String senderRole, Long residentId, int delta) {
+        if ("ADMIN".equals(senderRole) && residentId != null) {
+            unreadByResident.computeIfAbsent(residentId, id -> new AtomicLong())
+                    .updateAndGet(value -> Math.max(0, value + delta));
+        } else if ("USER".equals(senderRole)) {
+            unreadForAdmin.updateAndGet(value -> Math.max(0, value + delta));
+        }
+    }
+
+    // Replaces the counters with fresh counts from the database. A change that commits while
+    // the recount is running may be missed until the next run.
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${messages.unread.reconcile-interval-ms:300000}",
+               fixedDelayString = "${messages.unread.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        ConcurrentHashMap<Long, AtomicLong> fresh = new ConcurrentHashMap<>();
+        List<Object[]> rows = messageRepository.countUnreadFromAdminByResident();
+        for (Object[] row : rows) {
+            fresh.put((Long) row[0], new AtomicLong((Long) row[1]));
+        }
+        long adminCount = messageRepository.countBySenderRoleAndStatus("USER", "UNREAD");
+
+        long drift = Math.abs(unreadForAdmin.getAndSet(adminCount) - adminCount);
+        for (Map.Entry<Long, AtomicLong> entry : fresh.entrySet()) {
+            drift += Math.abs(getResidentUnreadCount(entry.getKey()) - entry.getValue().get());
+        }
+        unreadByResident = fresh;
+
+        reconciliations.increment();
+        driftCorrections.add(drift);
+    }
+
+    @Override
+    public String metricsName() {
+        return "unreadCounters";
+    }
+
+    @Override
+    public Map<String, Object> metricsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("residentsTracked", unreadByResident.size());
+        snapshot.put("adminUnread", unreadForAdmin.get());
+        snapshot.put("reconciliations", reconciliations.sum());
+        snapshot.put("driftCorrected", driftCorrections.sum());
+        return snapshot;
+    }
+}
@@ -0,0 +1,101 @@
+package com.mySociety.benchmark;
+
+import com.mySociety.model.IdGenerators;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Insert throughput with IDENTITY keys (the old mapping) versus the pooled table generator
+// now used by every entity, on identical rows. Logs rows/second and JDBC statements for each;
+// the assertion only checks statement counts, which unlike timings are deterministic.
+@SpringBootTest
+class InsertThroughputBenchmarkTests {
+
+    private static final Logger log = LoggerFactory.getLogger(InsertThroughputBenchmarkTests.class);
+    private static final int ROWS = 5_000;
+    private static final int ROWS_PER_TRANSACTION = 500;
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void pooledIdsLetHibernateBatchInserts() {
+        // Warm up both paths so class loading and statement caches do not skew the first run
+        insert(200, IdentityRow::new);
+        insert(200, PooledRow::new);
+
+        Result identity = insert(ROWS, IdentityRow::new);
+        Result pooled = insert(ROWS, PooledRow::new);
+
+        log.info("IDENTITY: {} rows in {} ms ({} rows/s, {} statements)",
+                ROWS, identity.millis(), identity.rowsPerSecond(), identity.statements());
+        log.info("pooled:   {} rows in {} ms ({} rows/s, {} statements)",
+                ROWS, pooled.millis(), pooled.rowsPerSecond(), pooled.statements());
+
+        assertThat(identity.statements()).isGreaterThanOrEqualTo(ROWS);
+        // Each flush prepares the insert once and sends the rows as batches of 50
+        assertThat(pooled.statements()).isLessThan(ROWS / 10);
+    }
+
+    private Result insert(int rows, Supplier<Object> newRow) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long start = System.nanoTime();
+        for (int from = 0; from < rows; from += ROWS_PER_TRANSACTION) {
+            int count = Math.min(ROWS_PER_TRANSACTION, rows - from);
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = 0; i < count; i++) {
+                    entityManager.persist(newRow.get());
+                }
+            });
+        }
+        long nanos = System.nanoTime() - start;
+        return new Result(nanos / 1_000_000, rows * 1_000_000_000L / Math.max(nanos, 1), statistics.getPrepareStatementCount());
+    }
+
+    private record Result(long millis, long rowsPerSecond, long statements) {}
+
+    @Entity
+    @Table(name = "benchmark_identity_rows")
+    static class IdentityRow {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+        private String subject = "Water supply notice";
+        private String content = "Water supply will be interrupted between 10am and 2pm for tank cleaning.";
+    }
+
+    @Entity
+    @Table(name = "benchmark_pooled_rows")
+    static class PooledRow {
+        @Id
+        @GeneratedValue(strategy = GenerationType.TABLE, generator = "benchmark_ids")
+        @TableGenerator(name = "benchmark_ids", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+                valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "benchmark_pooled_rows",
+                allocationSize = IdGenerators.ALLOCATION_SIZE)
+        private Long id;
+        private String subject = "Water supply notice";
+        private String content = "Water supply will be interrupted between 10am and 2pm for tank cleaning.";
+    }
+}
@@ -0,0 +1,260 @@
+package com.mySociety.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mySociety.model.Complaint;
+import com.mySociety.model.Message;
+import com.mySociety.model.Resident;
+import com.mySociety.model.User;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.UserRepository;
+import com.mySociety.service.ComplaintService;
+import com.mySociety.service.InboxService;
+import com.mySociety.service.MessageService;
+import com.mySociety.service.ResidentService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// JSON size and statement count of each list endpoint's response: the entities the endpoints
+// used to return versus the projections they return now, over the same rows. Responses are
+// serialized inside the transaction, so lazy loads triggered by serialization are counted the
+// way open-in-view would run them.
+@SpringBootTest
+@Transactional
+class ListProjectionBenchmarkTests {
+
+    private static final Logger log = LoggerFactory.getLogger(ListProjectionBenchmarkTests.class);
+    private static final int RESIDENTS = 20;
+
+    @Autowired
+    private ResidentService residentService;
+    @Autowired
+    private ComplaintService complaintService;
+    @Autowired
+    private MessageService messageService;
+    @Autowired
+    private InboxService inboxService;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private ComplaintRepository complaintRepository;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Resident resident;
+    private User residentUser;
+    private LocalDateTime clock;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        clock = LocalDateTime.of(2025, 1, 1, 9, 0);
+        for (int i = 0; i < RESIDENTS; i++) {
+            Resident saved = residentRepository.save(new Resident("Resident " + i, "resident" + i + "@example.com",
+                    "555-01" + i, "B-" + (100 + i), new BigDecimal("1500.00")));
+            for (int j = 0; j < 3; j++) {
+                complaintRepository.save(new Complaint("Complaint " + j, "Details of complaint " + j, "PENDING", saved));
+            }
+            for (int j = 0; j < 3; j++) {
+                Message root = root(saved, "Notice " + j);
+                Message answer = reply(root, saved, "USER");
+                reply(answer, saved, "ADMIN"); // Nested reply
+            }
+            if (i == 0) {
+                resident = saved;
+            }
+        }
+        residentUser = new User("resident0", "secret", "USER");
+        residentUser.setResident(resident);
+        residentUser = userRepository.save(residentUser);
+        entityManager.flush();
+        inboxService.rebuild();
+    }
+
+    @Test
+    void residentList() {
+        Measurement entities = measure(() -> residentRepository.findAll());
+        Measurement views = measure(() -> residentService.getAllResidents());
+
+        report("GET /api/admin/residents", entities, views);
+        assertThat(views.statements()).isEqualTo(1);
+        // Residents have no associations, so the columns are the same and only entity management is saved
+        assertThat(views.bytes()).isLessThanOrEqualTo(entities.bytes());
+    }
+
+    @Test
+    void adminComplaintList() {
+        Measurement entities = measure(() -> complaintRepository.findAll());
+        Measurement views = measure(() -> complaintService.getAllComplaints());
+
+        report("GET /api/admin/complaints", entities, views);
+        assertThat(entities.statements()).isGreaterThan(RESIDENTS); // One resident select per distinct resident
+        assertThat(views.statements()).isEqualTo(1);
+        assertThat(views.bytes()).isLessThan(entities.bytes());
+    }
+
+    @Test
+    void adminComplaintPage() {
+        int limit = 50;
+        Measurement entities = measure(() -> complaintRepository.findAll(
+                PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "id"))).getContent());
+        Measurement views = measure(() -> complaintService.getComplaintPage(null, limit, null, null));
+
+        report("GET /api/admin/complaints/page", entities, views);
+        assertThat(entities.statements()).isGreaterThan(limit / 3); // One resident select per distinct resident on the page
+        assertThat(views.statements()).isEqualTo(1);
+        assertThat(views.bytes()).isLessThan(entities.bytes());
+    }
+
+    @Test
+    void residentComplaintList() {
+        Measurement entities = measure(() -> complaintRepository.findByResidentId(resident.getId()));
+        Measurement views = measure(() -> complaintService.getComplaintsByResident(resident.getId()));
+
+        report("GET /api/resident/{id}/complaints", entities, views);
+        assertThat(views.statements()).isEqualTo(1);
+        assertThat(views.bytes()).isLessThan(entities.bytes());
+    }
+
+    @Test
+    void adminMessageList() {
+        Measurement entities = measure(() -> messageRepository.findAll());
+        Measurement views = measure(() -> messageService.getAllMessages());
+
+        report("GET /api/admin/messages", entities, views);
+        assertThat(entities.statements()).isGreaterThan(RESIDENTS); // One recipient select per distinct resident
+        assertThat(views.statements()).isEqualTo(1);
+        assertThat(views.bytes()).isLessThan(entities.bytes());
+    }
+
+    @Test
+    void adminMessagePage() {
+        int limit = 50;
+        Measurement entities = measure(() -> messageRepository.findAll(
+                PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "createdAt", "id"))).getContent());
+        Measurement views = measure(() -> messageService.getMessagePage(null, limit, null, null, null));
+
+        report("GET /api/admin/messages/page", entities, views);
+        assertThat(views.statements()).isEqualTo(1);
+        assertThat(views.bytes()).isLessThan(entities.bytes());
+    }
+
+    @Test
+    void residentConversations() {
+        Measurement entities = measure(this::conversationEntities);
+        Measurement views = measure(() -> messageService.getConversationsForResident(resident.getId(), residentUser.getId(), false));
+
+        report("GET /api/resident/{id}/messages/conversations", entities, views);
+        assertThat(views.statements()).isEqualTo(2); // Initial messages, then every reply
+        assertThat(views.statements()).isLessThan(entities.statements());
+        assertThat(views.bytes()).isLessThan(entities.bytes());
+    }
+
+    @Test
+    void residentConversationPage() {
+        Measurement entities = measure(this::conversationEntities);
+        Measurement views = measure(() -> messageService.getConversationPage(resident.getId(), null, null).items());
+
+        report("GET /api/resident/{id}/messages/conversations/page", entities, views);
+        assertThat(views.statements()).isEqualTo(3); // Thread summaries, initial messages, replies
+        assertThat(views.bytes()).isLessThan(entities.bytes());
+    }
+
+    // The resident's threads as entities, built the way the conversation endpoints did before the projections
+    private List<List<Message>> conversationEntities() {
+        List<List<Message>> threads = new ArrayList<>();
+        Map<Long, List<Message>> threadsByRootId = new HashMap<>();
+        List<Message> roots = entityManager.createQuery("SELECT m FROM Message m WHERE m.senderRole = 'ADMIN' " +
+                        "AND m.recipientResident.id = :residentId AND m.parentMessage IS NULL ORDER BY m.createdAt DESC", Message.class)
+                .setParameter("residentId", resident.getId())
+                .getResultList();
+        for (Message root : roots) {
+            List<Message> thread = new ArrayList<>(List.of(root));
+            threadsByRootId.put(root.getId(), thread);
+            threads.add(thread);
+        }
+        for (Message reply : messageRepository.findRepliesInThreads(threadsByRootId.keySet())) {
+            threadsByRootId.get(reply.getThreadRootId()).add(reply);
+        }
+        return threads;
+    }
+
+    private Measurement measure(Supplier<Object> endpoint) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        try {
+            int bytes = objectMapper.writeValueAsBytes(endpoint.get()).length;
+            return new Measurement(statistics.getPrepareStatementCount(), bytes);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void report(String endpoint, Measurement entities, Measurement views) {
+        log.info("{}: entities {} bytes / {} statements, projections {} bytes / {} statements",
+                endpoint, entities.bytes(), entities.statements(), views.bytes(), views.statements());
+    }
+
+    private Message root(Resident recipient, String subject) {
+        Message saved = messageRepository.save(newMessage(recipient, 1L, "ADMIN", subject));
+        saved.setThreadRootId(saved.getId());
+        saved.setThreadSeq(0);
+        return saved;
+    }
+
+    private Message reply(Message parent, Resident recipient, String senderRole) {
+        Message reply = newMessage(recipient, "USER".equals(senderRole) ? 2L : 1L, senderRole, "RE: " + parent.getSubject());
+        reply.setParentMessage(parent);
+        reply.setThreadRootId(parent.getThreadRootId());
+        reply.setThreadSeq(parent.getThreadSeq() + 1);
+        return messageRepository.save(reply);
+    }
+
+    private Message newMessage(Resident recipient, Long senderUserId, String senderRole, String subject) {
+        Message message = new Message();
+        message.setSenderUserId(senderUserId);
+        message.setSenderRole(senderRole);
+        message.setRecipientResident(recipient);
+        message.setSubject(subject);
+        message.setContent(subject + ": the water supply will be interrupted on Saturday between 10am and 2pm.");
+        message.setStatus("UNREAD");
+        clock = clock.plusMinutes(1);
+        message.setCreatedAt(clock);
+        return message;
+    }
+
+    private record Measurement(long statements, int bytes) {}
+}
@@ -0,0 +1,65 @@
+package com.mySociety.search;
+
+import com.mySociety.search.SearchIndex.Hit;
+import com.mySociety.search.SearchIndex.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIndexTests {
+
+    private final SearchIndex index = new SearchIndex();
+
+    @Test
+    void ranksTitleMatchesAndRepeatedTermsHigher() {
+        index.put(Type.ANNOUNCEMENT, 1L, null, "Water supply cut", "Tanks will be cleaned on Sunday.");
+        index.put(Type.ANNOUNCEMENT, 2L, null, "Parking", "Please keep the water tank area clear.");
+        index.put(Type.ANNOUNCEMENT, 3L, null, "Diwali party", "Snacks and music in the hall.");
+
+        List<Hit> hits = index.search("water", hit -> true, 10);
+
+        assertThat(hits).extracting(Hit::id).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void lastTermMatchesAsPrefix() {
+        index.put(Type.COMPLAINT, 1L, 7L, "Leaking tap", "Kitchen tap leaking since Monday");
+
+        assertThat(index.search("kitchen lea", hit -> true, 10)).extracting(Hit::id).containsExactly(1L);
+        assertThat(index.search("lea kitchen", hit -> true, 10)).extracting(Hit::id).containsExactly(1L);
+        assertThat(index.search("leash", hit -> true, 10)).isEmpty();
+    }
+
+    @Test
+    void replacingOrRemovingADocumentDropsItsOldTerms() {
+        index.put(Type.MESSAGE, 1L, 7L, "Lift", "The lift is broken");
+        index.put(Type.MESSAGE, 1L, 7L, "Lift", "The lift is fixed");
+
+        assertThat(index.search("broken", hit -> true, 10)).isEmpty();
+        assertThat(index.search("fixed", hit -> true, 10)).hasSize(1);
+
+        index.remove(Type.MESSAGE, 1L);
+        assertThat(index.search("lift", hit -> true, 10)).isEmpty();
+        assertThat(index.documentCount()).isZero();
+        assertThat(index.termCount()).isZero();
+    }
+
+    @Test
+    void filterAndLimitApplyToTopK() {
+        for (long id = 1; id <= 30; id++) {
+            index.put(Type.COMPLAINT, id, id % 3, "Noise complaint " + id, "Loud music at night");
+        }
+
+        List<Hit> hits = index.search("noise", hit -> Long.valueOf(1L).equals(hit.residentId()), 5);
+
+        assertThat(hits).hasSize(5).allMatch(hit -> hit.residentId() == 1L);
+        assertThat(hits).isSortedAccordingTo((a, b) -> Double.compare(b.score(), a.score()));
+    }
+
+    @Test
+    void tokenizerFoldsCaseAccentsAndSkipsStopWords() {
+        assertThat(SearchIndex.tokenize("The CAFÉ is on Block-B, flat 12")).containsExactly("cafe", "block", "b", "flat", "12");
+    }
+}
@@ -0,0 +1,135 @@
+package com.mySociety.security;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.method.HandlerMethod;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// MockMvc is built on the shared test context rather than a dedicated one
+@SpringBootTest
+class AuthInterceptorTests {
+
+    private static final String ADMIN_TOKEN = "interceptor-test-admin";
+    private static final String RESIDENT_TOKEN = "interceptor-test-resident";
+
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private AuthInterceptor authInterceptor;
+    @Autowired
+    private SessionStore sessionStore;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private MockMvc mockMvc;
+
+    // A handler someone forgot to annotate
+    static class UnannotatedController {
+        public String unannotated() {
+            return "served";
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionStore.remove(ADMIN_TOKEN);
+        sessionStore.remove(RESIDENT_TOKEN);
+    }
+
+    @Test
+    void missingOrUnknownTokensGet401() throws Exception {
+        mockMvc.perform(get("/api/admin/complaints")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/admin/complaints").header("Authorization", "Bearer not-a-session"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/admin/complaints").header("Authorization", "Basic YWRtaW46YWRtaW4="))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void roleMismatchGets403() throws Exception {
+        sessionStore.put(RESIDENT_TOKEN, new AuthPrincipal(2L, "USER", 42L, "A-101"));
+        sessionStore.put(ADMIN_TOKEN, new AuthPrincipal(1L, "ADMIN", null, null));
+
+        mockMvc.perform(get("/api/admin/complaints").header("Authorization", "Bearer " + RESIDENT_TOKEN))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/admin/complaints").header("Authorization", "Bearer " + ADMIN_TOKEN))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/resident/42/complaints").header("Authorization", "Bearer " + ADMIN_TOKEN))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void authenticatedRequestsRunNoUserOrSessionQueries() throws Exception {
+        sessionStore.put(RESIDENT_TOKEN, new AuthPrincipal(2L, "USER", 42L, "A-101"));
+        sessionStore.put(ADMIN_TOKEN, new AuthPrincipal(1L, "ADMIN", null, null));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // Both badges are served from memory, so any statement here would come from authentication
+        mockMvc.perform(get("/api/admin/messages/unread-count").header("Authorization", "Bearer " + ADMIN_TOKEN))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/resident/42/messages/unread-count").header("Authorization", "Bearer " + RESIDENT_TOKEN))
+                .andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void residentsOnlyReachTheirOwnResidentId() throws Exception {
+        sessionStore.put(RESIDENT_TOKEN, new AuthPrincipal(2L, "USER", 42L, "A-101"));
+
+        mockMvc.perform(get("/api/resident/42/complaints").header("Authorization", "Bearer " + RESIDENT_TOKEN))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/resident/43/complaints").header("Authorization", "Bearer " + RESIDENT_TOKEN))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void residentAccountsWithoutAResidentCannotOpenTheEventStream() throws Exception {
+        sessionStore.put(RESIDENT_TOKEN, new AuthPrincipal(2L, "USER", null, null));
+
+        mockMvc.perform(get("/api/events/stream").header("Authorization", "Bearer " + RESIDENT_TOKEN))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void handlersWithoutARuleAreRefusedAndPublicOnesServed() throws Exception {
+        sessionStore.put(ADMIN_TOKEN, new AuthPrincipal(1L, "ADMIN", null, null));
+
+        HandlerMethod unannotated = new HandlerMethod(new UnannotatedController(), "unannotated");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/unannotated");
+        request.addHeader("Authorization", "Bearer " + ADMIN_TOKEN);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(authInterceptor.preHandle(request, response, unannotated)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(403);
+
+        // @Public: reaches the controller without a token, which then rejects the credentials itself
+        mockMvc.perform(post("/api/auth/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"nobody\",\"password\":\"wrong\"}"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(content().string("Invalid credentials"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.mySociety.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+// Plain unit tests: each case builds a hasher with its own cost factors and pool sizes
+class PasswordHasherTests {
+
+    private final List<PasswordHasher> hashers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        hashers.forEach(PasswordHasher::shutdown);
+    }
+
+    @Test
+    void importHashesStayWithinTwoCostStepsOfLogin() {
+        PasswordHasher hasher = hasher(6, 4);
+        List<String> hashes = hasher.hashAllForImport(List.of("first", "second", "third"));
+
+        assertThat(hashes).hasSize(3).allSatisfy(hash -> assertThat(hash).startsWith("$2a$04$"));
+        assertThat(hasher.verify("second", hashes.get(1)).matches()).isTrue();
+        assertThat(hasher.verify("first", hashes.get(1)).matches()).isFalse();
+        assertThat(hasher.metricsSnapshot()).containsEntry("importHashes", 3L);
+
+        // A configured cost further below the login cost is raised to the floor
+        assertThat(hasher(7, 4).hashAllForImport(List.of("pw")).get(0)).startsWith("$2a$05$");
+        // And one above it is capped at the login cost
+        assertThat(hasher(4, 9).hashAllForImport(List.of("pw")).get(0)).startsWith("$2a$04$");
+    }
+
+    @Test
+    void saturatedPoolShedsLoginsInsteadOfQueueingThem() {
+        // One worker, one queue slot, and hashes slow enough to hold both while the test runs
+        PasswordHasher hasher = hasher(14, 14, 1, 1, 300);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> hasher.hash("first"));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> (int) hasher.metricsSnapshot().get("active") == 1);
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> hasher.hash("second"));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> (int) hasher.metricsSnapshot().get("queueDepth") == 1);
+
+        // Full queue: refused at once (AuthController answers 503)
+        assertThatThrownBy(() -> hasher.verify("third", "third")).isInstanceOf(HashingRejectedException.class)
+                .hasMessageContaining("Too many concurrent logins");
+        // Callers already waiting give up after the timeout
+        assertThatThrownBy(running::join).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(HashingRejectedException.class);
+        assertThatThrownBy(queued::join).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(HashingRejectedException.class);
+        assertThat(hasher.metricsSnapshot()).containsEntry("rejected", 3L);
+    }
+
+    @Test
+    void verificationUpgradesPlaintextAndCheaperHashes() {
+        PasswordHasher hasher = hasher(5, 5);
+
+        PasswordHasher.Verification plaintext = hasher.verify("secret", "secret");
+        assertThat(plaintext.matches()).isTrue();
+        assertThat(plaintext.upgradedHash()).startsWith("$2a$05$");
+
+        PasswordHasher.Verification cheaper = hasher.verify("secret", new BCryptPasswordEncoder(4).encode("secret"));
+        assertThat(cheaper.matches()).isTrue();
+        assertThat(cheaper.upgradedHash()).startsWith("$2a$05$");
+        assertThat(hasher.verify("secret", cheaper.upgradedHash()).upgradedHash()).isNull();
+
+        // Wrong passwords are never rehashed, whatever the stored format
+        assertThat(hasher.verify("guess", "secret")).isEqualTo(new PasswordHasher.Verification(false, null));
+        assertThat(hasher.verify("guess", cheaper.upgradedHash())).isEqualTo(new PasswordHasher.Verification(false, null));
+        assertThat(hasher.metricsSnapshot()).containsEntry("rehashed", 2L);
+    }
+
+    @Test
+    void unknownUsersCostOneHashLikeAWrongPassword() {
+        PasswordHasher hasher = hasher(4, 4);
+
+        hasher.verifyUnknownUser("guess");
+
+        assertThat(hasher.metricsSnapshot()).containsEntry("hashes", 1L).containsEntry("rehashed", 0L);
+    }
+
+    private PasswordHasher hasher(int strength, int importStrength) {
+        return hasher(strength, importStrength, 2, 4, 5000);
+    }
+
+    private PasswordHasher hasher(int strength, int importStrength, int threads, int queueCapacity, long timeoutMillis) {
+        PasswordHasher hasher = new PasswordHasher(strength, importStrength, threads, queueCapacity, timeoutMillis, 2);
+        hashers.add(hasher);
+        return hasher;
+    }
+}
@@ -0,0 +1,117 @@
+package com.mySociety.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Plain unit tests on a store whose clock only moves when the test advances it
+class SessionStoreTests {
+
+    private static final AuthPrincipal RESIDENT = new AuthPrincipal(7L, "USER", 42L, "A-101");
+    private static final AuthPrincipal ADMIN = new AuthPrincipal(1L, "ADMIN", null, null);
+
+    private static final class ManualClockStore extends SessionStore {
+        private long now = 1_000L;
+
+        private ManualClockStore(long idleTtlMinutes, long absoluteTtlMinutes, int maxSize) {
+            super(idleTtlMinutes, absoluteTtlMinutes, maxSize);
+        }
+
+        @Override
+        long nanoTime() {
+            return now;
+        }
+
+        private void advanceMinutes(long minutes) {
+            now += TimeUnit.MINUTES.toNanos(minutes);
+        }
+    }
+
+    @Test
+    void idleSessionsExpireAndEachHitRefreshesThem() {
+        ManualClockStore store = new ManualClockStore(30, 720, 100);
+        store.put("active", RESIDENT);
+        store.put("idle", ADMIN);
+
+        store.advanceMinutes(20);
+        assertThat(store.get("active")).isEqualTo(RESIDENT);
+        store.advanceMinutes(20);
+        assertThat(store.get("active")).isEqualTo(RESIDENT); // 40 minutes old, 20 idle
+        assertThat(store.get("idle")).isNull();
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.metricsSnapshot()).containsEntry("expirations", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void sessionsExpireAtTheAbsoluteTtlHoweverActive() {
+        ManualClockStore store = new ManualClockStore(30, 60, 100);
+        store.put("token", RESIDENT);
+
+        for (int i = 0; i < 5; i++) {
+            store.advanceMinutes(11);
+            assertThat(store.get("token")).isEqualTo(RESIDENT);
+        }
+        store.advanceMinutes(11);
+        assertThat(store.get("token")).isNull();
+    }
+
+    @Test
+    void sweepDropsOnlyExpiredSessions() {
+        ManualClockStore store = new ManualClockStore(30, 720, 100);
+        store.put("old-1", RESIDENT);
+        store.put("old-2", RESIDENT);
+        store.advanceMinutes(25);
+        store.put("fresh", ADMIN);
+        store.advanceMinutes(10);
+
+        store.sweepExpired();
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.get("fresh")).isEqualTo(ADMIN);
+        assertThat(store.metricsSnapshot()).containsEntry("expirations", 2L);
+    }
+
+    @Test
+    void overflowEvictsLeastRecentlyUsedDownToNinetyPercent() {
+        ManualClockStore store = new ManualClockStore(30, 720, 10);
+        for (int i = 0; i < 10; i++) {
+            store.put("token-" + i, RESIDENT);
+            store.advanceMinutes(1);
+        }
+        store.get("token-0"); // Now the most recently used
+        store.advanceMinutes(1);
+
+        store.put("token-10", ADMIN);
+
+        // 11 sessions exceed the limit by one; one more tenth of the capacity goes with it
+        assertThat(store.size()).isEqualTo(9);
+        assertThat(store.get("token-0")).isEqualTo(RESIDENT);
+        assertThat(store.get("token-1")).isNull();
+        assertThat(store.get("token-2")).isNull();
+        assertThat(store.get("token-3")).isEqualTo(RESIDENT);
+        assertThat(store.get("token-10")).isEqualTo(ADMIN);
+        assertThat(store.metricsSnapshot()).containsEntry("evictions", 2L);
+    }
+
+    @Test
+    void removeUserEndsEverySessionOfThatUser() {
+        ManualClockStore store = new ManualClockStore(30, 720, 100);
+        store.put("phone", RESIDENT);
+        store.put("laptop", RESIDENT);
+        store.put("admin", ADMIN);
+
+        store.removeUser(RESIDENT.userId());
+
+        assertThat(store.get("phone")).isNull();
+        assertThat(store.get("laptop")).isNull();
+        assertThat(store.get("admin")).isEqualTo(ADMIN);
+    }
+
+    @Test
+    void nonPositiveCapacityIsRejected() {
+        assertThatThrownBy(() -> new SessionStore(30, 720, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
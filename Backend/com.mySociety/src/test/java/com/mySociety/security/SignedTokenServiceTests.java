@@ -0,0 +1,117 @@
+package com.mySociety.security;
+
+import com.mySociety.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Instances are built by hand so each test picks its own keys; they share the revoked_tokens table
+@SpringBootTest
+class SignedTokenServiceTests {
+
+    private static final String KEY_A = "a:" + Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+    private static final String KEY_B = "b:" + Base64.getEncoder().encodeToString("fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.UTF_8));
+    private static final AuthPrincipal RESIDENT = new AuthPrincipal(7L, "USER", 42L, "A-101");
+
+    @Autowired
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @AfterEach
+    void tearDown() {
+        revokedTokenRepository.deleteAll();
+    }
+
+    @Test
+    void issuedTokenVerifiesToItsPrincipal() {
+        SignedTokenService service = service(KEY_A, "a", 60);
+
+        assertThat(service.verify(service.issue(RESIDENT))).isEqualTo(RESIDENT);
+        AuthPrincipal admin = new AuthPrincipal(1L, "ADMIN", null, null);
+        assertThat(service.verify(service.issue(admin))).isEqualTo(admin);
+    }
+
+    @Test
+    void tamperedTokensAreRejected() {
+        SignedTokenService service = service(KEY_A, "a", 60);
+        String[] parts = service.issue(RESIDENT).split("\\.");
+
+        // Claims rewritten to ADMIN under the original signature
+        String claims = new String(Base64.getUrlDecoder().decode(parts[2]), StandardCharsets.UTF_8).replace("|USER|", "|ADMIN|");
+        String forgedClaims = Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+        assertThat(service.verify(parts[0] + "." + parts[1] + "." + forgedClaims + "." + parts[3])).isNull();
+
+        char flipped = parts[3].charAt(0) == 'A' ? 'B' : 'A';
+        assertThat(service.verify(parts[0] + "." + parts[1] + "." + parts[2] + "." + flipped + parts[3].substring(1))).isNull();
+        assertThat(service.verify("v1.a.garbage")).isNull();
+        assertThat(service.verify(null)).isNull();
+    }
+
+    @Test
+    void onlyConfiguredKeysAreAccepted() {
+        String token = service(KEY_A, "a", 60).issue(RESIDENT);
+
+        assertThat(service(KEY_B, "b", 60).verify(token)).isNull();
+        // During a rotation the old key still verifies while the new one signs
+        SignedTokenService rotating = service(KEY_A + "," + KEY_B, "b", 60);
+        assertThat(rotating.verify(token)).isEqualTo(RESIDENT);
+        assertThat(rotating.issue(RESIDENT).split("\\.")[1]).isEqualTo("b");
+    }
+
+    @Test
+    void expiredTokensAreRejected() {
+        SignedTokenService expired = service(KEY_A, "a", -1);
+        assertThat(expired.verify(expired.issue(RESIDENT))).isNull();
+    }
+
+    @Test
+    void missingKeysFailFast() {
+        SignedTokenService unconfigured = service("", "", 60);
+        assertThat(unconfigured.isConfigured()).isFalse();
+        assertThatThrownBy(() -> unconfigured.issue(RESIDENT)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void ephemeralKeysOnlyVerifyOnTheInstanceThatMadeThem() {
+        SignedTokenService first = new SignedTokenService("", "", 60, true, revokedTokenRepository);
+        SignedTokenService second = new SignedTokenService("", "", 60, true, revokedTokenRepository);
+
+        assertThat(first.isConfigured()).isTrue();
+        String token = first.issue(RESIDENT);
+        assertThat(first.verify(token)).isEqualTo(RESIDENT);
+        assertThat(second.verify(token)).isNull();
+
+        // Configured keys always win over a generated one
+        SignedTokenService configured = new SignedTokenService(KEY_A, "a", 60, true, revokedTokenRepository);
+        assertThat(configured.verify(service(KEY_A, "a", 60).issue(RESIDENT))).isEqualTo(RESIDENT);
+    }
+
+    @Test
+    void revocationReachesOtherInstances() {
+        SignedTokenService first = service(KEY_A, "a", 60);
+        SignedTokenService second = service(KEY_A, "a", 60);
+        second.syncRevocations();
+        String token = first.issue(RESIDENT);
+        String other = first.issue(RESIDENT);
+
+        first.revoke(token);
+        first.revoke(token); // A repeated logout is harmless
+        assertThat(first.verify(token)).isNull();
+        assertThat(second.verify(token)).isEqualTo(RESIDENT); // Until the next sync
+
+        second.syncRevocations();
+        assertThat(second.verify(token)).isNull();
+        assertThat(second.verify(other)).isEqualTo(RESIDENT);
+        assertThat(revokedTokenRepository.count()).isEqualTo(1);
+    }
+
+    private SignedTokenService service(String keys, String activeKeyId, long ttlMinutes) {
+        return new SignedTokenService(keys, activeKeyId, ttlMinutes, false, revokedTokenRepository);
+    }
+}
@@ -0,0 +1,142 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.BroadcastRequest;
+import com.mySociety.dto.BroadcastResult;
+import com.mySociety.model.Message;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.ResidentRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The chunks join the test transaction, so everything a broadcast writes is rolled back afterwards.
+// The service under test is built by hand with chunks of two so small broadcasts cross chunk boundaries.
+@SpringBootTest
+@Transactional
+class BroadcastServiceTests {
+
+    private static final int CHUNK_SIZE = 2;
+
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private InboxService inboxService;
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+    @Autowired
+    private EventStreamService eventStreamService;
+    @Autowired
+    private SearchService searchService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private BroadcastService broadcastService;
+    private final List<Long> residentIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        broadcastService = new BroadcastService(residentRepository, messageRepository, inboxService, unreadCounterService,
+                eventStreamService, searchService, transactionTemplate, CHUNK_SIZE);
+        for (String flat : List.of("BC-101", "BC-102", "BC-103", "BC-201", "BC-202")) {
+            residentIds.add(residentRepository.save(new Resident("Resident " + flat, flat + "@example.com", "555",
+                    flat, new BigDecimal("1000.00"))).getId());
+        }
+    }
+
+    @Test
+    void allReachesEveryResidentInChunks() {
+        long residents = residentRepository.count();
+
+        BroadcastResult result = broadcastService.broadcast(1L, request("ALL", null, null));
+
+        assertThat(result.recipients()).isEqualTo(residents);
+        assertThat(result.messagesInserted()).isEqualTo(residents);
+        assertThat(result.chunks()).isEqualTo((int) ((residents + CHUNK_SIZE - 1) / CHUNK_SIZE));
+        assertThat(result.unknownFlatNumbers()).isEmpty();
+        for (Long residentId : residentIds) {
+            assertThat(messageRepository.findIdsByRecipientResidentId(residentId)).hasSize(1);
+        }
+    }
+
+    @Test
+    void prefixReachesOnlyMatchingFlats() {
+        BroadcastResult result = broadcastService.broadcast(1L, request("PREFIX", "BC-1", null));
+
+        // Three recipients over chunks of two: one full chunk and a partial one
+        assertThat(result.recipients()).isEqualTo(3);
+        assertThat(result.messagesInserted()).isEqualTo(3);
+        assertThat(result.chunks()).isEqualTo(2);
+        assertThat(messageRepository.findIdsByRecipientResidentId(residentIds.get(2))).hasSize(1);
+        assertThat(messageRepository.findIdsByRecipientResidentId(residentIds.get(3))).isEmpty();
+
+        // LIKE wildcards in the prefix are matched literally
+        assertThat(broadcastService.broadcast(1L, request("PREFIX", "BC-%", null)).recipients()).isZero();
+    }
+
+    @Test
+    void listReportsFlatsThatMatchNoResident() {
+        BroadcastResult result = broadcastService.broadcast(1L,
+                request("list", null, List.of("BC-101", "BC-202", "ZZ-404", "BC-101", "ZZ-405")));
+
+        assertThat(result.recipients()).isEqualTo(2);
+        assertThat(result.messagesInserted()).isEqualTo(2);
+        assertThat(result.chunks()).isEqualTo(1); // Exactly one full chunk
+        assertThat(result.unknownFlatNumbers()).containsExactly("ZZ-404", "ZZ-405");
+    }
+
+    @Test
+    void messagesAreInsertedAsThreadRootsWithoutFollowUpUpdates() {
+        entityManager.flush();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        broadcastService.broadcast(1L, request("PREFIX", "BC-", null));
+        entityManager.flush();
+
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(10); // A message and a thread summary per resident
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+        entityManager.clear();
+        for (Long residentId : residentIds) {
+            Message message = messageRepository.findById(messageRepository.findIdsByRecipientResidentId(residentId).get(0)).orElseThrow();
+            assertThat(message.getThreadRootId()).isEqualTo(message.getId());
+            assertThat(message.getThreadSeq()).isZero();
+        }
+    }
+
+    @Test
+    void invalidRequestsAreRejected() {
+        assertThatThrownBy(() -> broadcastService.broadcast(1L, request("EVERYONE", null, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> broadcastService.broadcast(1L, request("PREFIX", "", null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> broadcastService.broadcast(1L, request("LIST", null, List.of())))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> broadcastService.broadcast(1L, new BroadcastRequest("ALL", null, null, " ", "Body")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static BroadcastRequest request(String target, String flatPrefix, List<String> flatNumbers) {
+        return new BroadcastRequest(target, flatPrefix, flatNumbers, "Water supply", "Tanks are cleaned on Sunday");
+    }
+}
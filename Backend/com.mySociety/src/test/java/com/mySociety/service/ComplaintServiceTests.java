@@ -0,0 +1,159 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.ComplaintView;
+import com.mySociety.dto.Cursor;
+import com.mySociety.dto.CursorPage;
+import com.mySociety.model.Complaint;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.ResidentRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class ComplaintServiceTests {
+
+    @Autowired
+    private ComplaintService complaintService;
+    @Autowired
+    private ComplaintRepository complaintRepository;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ComplaintTimestampBackfill complaintTimestampBackfill;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Statistics statistics;
+    private final List<Resident> residents = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void pagesCostOneStatementHoweverManyResidents() {
+        createComplaints(3, 2);
+        assertThat(countStatements(null)).isEqualTo(1);
+        assertThat(countStatements("TEST_OPEN")).isEqualTo(1);
+
+        createComplaints(30, 2);
+        assertThat(countStatements(null)).isEqualTo(1);
+        assertThat(countStatements("TEST_OPEN")).isEqualTo(1);
+    }
+
+    @Test
+    void filtersAndCursorWalkEveryMatchingComplaintOnce() {
+        createComplaints(5, 4);
+        Long residentId = residents.get(2).getId();
+
+        List<ComplaintView> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<ComplaintView> page = complaintService.getComplaintPage(Cursor.decode(cursor), 3, "TEST_OPEN", residentId);
+            seen.addAll(page.items());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(seen).hasSize(2).allSatisfy(complaint -> {
+            assertThat(complaint.status()).isEqualTo("TEST_OPEN");
+            assertThat(complaint.resident().id()).isEqualTo(residentId);
+            assertThat(complaint.resident().flatNumber()).isEqualTo("C-102");
+        });
+        assertThat(complaintService.getComplaintPage(null, null, "TEST_OPEN", null).items()).hasSize(10);
+        assertThatThrownBy(() -> Cursor.decode("42")).isInstanceOf(IllegalArgumentException.class); // Raw ids are not cursors
+    }
+
+    @Test
+    void pagesAreNewestFiledFirstWhateverTheIds() {
+        createComplaints(1, 0);
+        Resident resident = residents.get(0);
+        LocalDateTime noon = LocalDateTime.of(2030, 6, 1, 12, 0);
+        // Saved in id order, but filed out of it: pooled ids from several instances interleave like this
+        List<Long> ids = new ArrayList<>();
+        for (LocalDateTime filedAt : List.of(noon, noon.minusHours(1), noon.plusHours(1), noon, noon)) {
+            Complaint complaint = new Complaint("Filed " + filedAt, "Details", "TEST_OPEN", resident);
+            complaint.setCreatedAt(filedAt);
+            ids.add(complaintRepository.save(complaint).getId());
+        }
+        // A complaint filed before created_at existed is set to the epoch and listed last
+        Long legacyId = ids.get(0) + 1000;
+        entityManager.flush();
+        jdbcTemplate.update("INSERT INTO complaints (id, subject, description, status, resident_id) " +
+                "VALUES (?, 'Legacy', 'Details', 'TEST_OPEN', ?)", legacyId, resident.getId());
+        complaintTimestampBackfill.afterSingletonsInstantiated();
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<ComplaintView> page = complaintService.getComplaintPage(Cursor.decode(cursor), 2, null, resident.getId());
+            page.items().forEach(complaint -> seen.add(complaint.id()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        // The three complaints filed at noon straddle a page boundary and are ordered by id among themselves
+        assertThat(seen).containsExactly(ids.get(2), ids.get(4), ids.get(3), ids.get(0), ids.get(1), legacyId);
+    }
+
+    @Test
+    void statusUpdateReadsTheComplaintAndResidentTogether() {
+        createComplaints(1, 1);
+        Long complaintId = complaintRepository.findByResidentId(residents.get(0).getId()).get(0).getId();
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        ComplaintView updated = complaintService.updateComplaintStatus(complaintId, "RESOLVED").orElseThrow();
+
+        assertThat(updated.status()).isEqualTo("RESOLVED");
+        assertThat(updated.resident().name()).isEqualTo("Resident 0");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    private long countStatements(String status) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        CursorPage<ComplaintView> page = complaintService.getComplaintPage(null, 200, status, null);
+        page.items().forEach(complaint -> assertThat(complaint.resident().name()).isNotNull());
+        return statistics.getPrepareStatementCount();
+    }
+
+    // Half of each resident's complaints are TEST_OPEN, the rest TEST_CLOSED
+    private void createComplaints(int residentCount, int complaintsPerResident) {
+        for (int i = 0; i < residentCount; i++) {
+            int number = residents.size();
+            Resident resident = residentRepository.save(new Resident("Resident " + number, "complainant" + number + "@example.com",
+                    "555-02" + number, "C-" + (100 + number), new BigDecimal("1500.00")));
+            residents.add(resident);
+            for (int j = 0; j < complaintsPerResident; j++) {
+                complaintRepository.save(new Complaint("Complaint " + j, "Details " + j,
+                        j % 2 == 0 ? "TEST_OPEN" : "TEST_CLOSED", resident));
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.AdminSummary;
+import com.mySociety.model.Complaint;
+import com.mySociety.model.Event;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.EventRepository;
+import com.mySociety.repository.MaintenanceInvoiceRepository;
+import com.mySociety.repository.MaintenancePaymentRepository;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not @Transactional: counters move only when the writing transaction commits
+@SpringBootTest
+class DashboardSummaryServiceTests {
+
+    @Autowired
+    private DashboardSummaryService dashboardSummaryService;
+    @Autowired
+    private ResidentService residentService;
+    @Autowired
+    private ComplaintService complaintService;
+    @Autowired
+    private EventService eventService;
+    @Autowired
+    private MaintenanceBillingService billingService;
+    @Autowired
+    private MaintenanceLedgerService ledgerService;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ComplaintRepository complaintRepository;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private MaintenanceInvoiceRepository invoiceRepository;
+    @Autowired
+    private MaintenancePaymentRepository paymentRepository;
+
+    private final List<Long> eventIds = new ArrayList<>();
+    private Long residentId;
+
+    @BeforeEach
+    void setUp() {
+        dashboardSummaryService.reconcile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        paymentRepository.deleteAll();
+        invoiceRepository.deleteAll();
+        eventRepository.deleteAllById(eventIds);
+        if (residentId != null) {
+            complaintRepository.deleteAll(complaintRepository.findByResidentId(residentId));
+            userRepository.findByResidentId(residentId).ifPresent(userRepository::delete);
+            residentRepository.deleteById(residentId);
+        }
+    }
+
+    @Test
+    void writesMoveTheCountersAndARecountAgrees() {
+        AdminSummary before = dashboardSummaryService.getSummary();
+
+        Resident resident = residentService.createResident(
+                new Resident("Meera", "meera@example.com", "555", "D-404", new BigDecimal("900.00")), "meera", "pw");
+        residentId = resident.getId();
+        Long complaintId = complaintService.submitComplaint(resident.getId(), new Complaint("Lift", "Stuck", null, null)).id();
+        complaintService.submitComplaint(resident.getId(), new Complaint("Lights", "Corridor", null, null));
+        complaintService.updateComplaintStatus(complaintId, "RESOLVED");
+        Event event = eventService.createEvent(new Event("AGM", "Annual meeting", LocalDate.now().plusDays(3)));
+        eventIds.add(event.getId());
+        eventIds.add(eventService.createEvent(new Event("Past", "Already happened", LocalDate.now().minusDays(1))).getId());
+        billingService.billPeriod(YearMonth.of(2032, 5));
+        ledgerService.pay(resident.getId(), null, new BigDecimal("400.00"), null, null);
+
+        AdminSummary after = dashboardSummaryService.getSummary();
+        assertThat(after.residents()).isEqualTo(before.residents() + 1);
+        assertThat(after.complaintsByStatus()).containsEntry("PENDING", count(before, "PENDING") + 1)
+                .containsEntry("RESOLVED", count(before, "RESOLVED") + 1);
+        assertThat(after.upcomingEvents()).isEqualTo(before.upcomingEvents() + 1);
+        assertThat(after.openInvoices()).isEqualTo(before.openInvoices() + 1);
+        assertThat(after.outstandingDues()).isEqualByComparingTo(before.outstandingDues().add(new BigDecimal("500.00")));
+
+        eventService.updateEvent(event.getId(), new Event("AGM", "Moved back", LocalDate.now().minusDays(2)));
+        ledgerService.pay(resident.getId(), null, null, null, null);
+        AdminSummary settled = dashboardSummaryService.getSummary();
+        assertThat(settled.upcomingEvents()).isEqualTo(before.upcomingEvents());
+        assertThat(settled.openInvoices()).isEqualTo(before.openInvoices());
+        assertThat(settled.outstandingDues()).isEqualByComparingTo(before.outstandingDues());
+
+        dashboardSummaryService.reconcile();
+        AdminSummary recounted = dashboardSummaryService.getSummary();
+        assertThat(recounted.residents()).isEqualTo(settled.residents());
+        assertThat(recounted.complaintsByStatus()).isEqualTo(settled.complaintsByStatus());
+        assertThat(recounted.upcomingEvents()).isEqualTo(settled.upcomingEvents());
+        assertThat(recounted.openInvoices()).isEqualTo(settled.openInvoices());
+        assertThat(recounted.outstandingDues()).isEqualByComparingTo(settled.outstandingDues());
+    }
+
+    private static long count(AdminSummary summary, String status) {
+        return summary.complaintsByStatus().getOrDefault(status, 0L);
+    }
+}
@@ -0,0 +1,105 @@
+package com.mySociety.service;
+
+import com.mySociety.security.AuthPrincipal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Plain unit tests; transaction synchronization is driven by hand to stand in for a commit or rollback
+class EventStreamServiceTests {
+
+    private static final AuthPrincipal RESIDENT = new AuthPrincipal(7L, "USER", 42L, "A-101");
+    private static final AuthPrincipal ADMIN = new AuthPrincipal(1L, "ADMIN", null, null);
+
+    private final List<EventStreamService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        services.forEach(EventStreamService::shutdown);
+    }
+
+    @Test
+    void connectionsBeyondTheCapAreRefused() {
+        EventStreamService service = service(2);
+
+        assertThat(service.subscribe(RESIDENT, "t1", () -> true)).isNotNull();
+        assertThat(service.subscribe(ADMIN, "t2", () -> true)).isNotNull();
+        assertThat(service.subscribe(ADMIN, "t3", () -> true)).isNull(); // EventStreamController answers 503
+
+        assertThat(service.metricsSnapshot()).containsEntry("connections", 2).containsEntry("rejectedConnections", 1L);
+        service.closeToken("t1");
+        assertThat(service.subscribe(ADMIN, "t3", () -> true)).isNotNull();
+    }
+
+    @Test
+    void residentAccountsWithoutAResidentCannotSubscribe() {
+        EventStreamService service = service(10);
+
+        assertThatThrownBy(() -> service.subscribe(new AuthPrincipal(9L, "USER", null, null), "t", () -> true))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(service.metricsSnapshot()).containsEntry("connections", 0);
+    }
+
+    @Test
+    void eventsRaisedInATransactionArePublishedOnlyOnCommit() {
+        EventStreamService service = service(10);
+        service.subscribe(RESIDENT, "t", () -> true);
+
+        TransactionSynchronizationManager.initSynchronization();
+        service.publishToResident(42L, "message", Map.of("id", 1));
+        assertThat(service.metricsSnapshot()).containsEntry("published", 0L);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(service.metricsSnapshot()).containsEntry("published", 1L);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // Rolled back: the synchronization is discarded without afterCommit
+        TransactionSynchronizationManager.initSynchronization();
+        service.publishToResident(42L, "message", Map.of("id", 2));
+        TransactionSynchronizationManager.clearSynchronization();
+        assertThat(service.metricsSnapshot()).containsEntry("published", 1L);
+
+        // Outside a transaction the event goes out at once; other residents' channels have no listener
+        service.publishToResident(42L, "message", Map.of("id", 3));
+        service.publishToResident(43L, "message", Map.of("id", 4));
+        assertThat(service.metricsSnapshot()).containsEntry("published", 2L);
+    }
+
+    @Test
+    void streamsEndWithTheirTokenOrUser() {
+        EventStreamService service = service(10);
+        AtomicBoolean stillValid = new AtomicBoolean(true);
+        service.subscribe(RESIDENT, "logged-out", () -> true);
+        service.subscribe(RESIDENT, "expiring", stillValid::get);
+        service.subscribe(ADMIN, "admin", () -> true);
+
+        service.closeToken("logged-out");
+        assertThat(service.metricsSnapshot()).containsEntry("connections", 2);
+
+        service.sendHeartbeats();
+        assertThat(service.metricsSnapshot()).containsEntry("connections", 2);
+        stillValid.set(false);
+        service.sendHeartbeats();
+        assertThat(service.metricsSnapshot()).containsEntry("connections", 1).containsEntry("unauthorizedClosed", 1L);
+
+        service.closeUser(ADMIN.userId());
+        assertThat(service.metricsSnapshot()).containsEntry("connections", 0);
+    }
+
+    private EventStreamService service(int maxConnections) {
+        EventStreamService service = new EventStreamService(maxConnections, 8, 60_000, 1);
+        services.add(service);
+        return service;
+    }
+}
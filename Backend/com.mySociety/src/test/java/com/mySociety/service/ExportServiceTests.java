@@ -0,0 +1,116 @@
+package com.mySociety.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mySociety.csv.CsvReader;
+import com.mySociety.model.Complaint;
+import com.mySociety.model.Message;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.ResidentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class ExportServiceTests {
+
+    private static final int RESIDENTS = 30;
+
+    @Autowired
+    private ExportService exportService;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private ComplaintRepository complaintRepository;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < RESIDENTS; i++) {
+            Resident resident = residentRepository.save(new Resident("Resident " + i, "x" + i + "@example.com", "555",
+                    "X-" + (100 + i), new BigDecimal("1500.50")));
+            complaintRepository.save(new Complaint("Leak, flat " + i, "Water \"everywhere\"\nsince Monday", "PENDING", resident));
+        }
+    }
+
+    @Test
+    void gzippedCsvReadsBackAsTheTable() throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvReader csv = new CsvReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(export("complaints", "csv", true))), StandardCharsets.UTF_8))) {
+            for (List<String> record = csv.readRecord(); record != null; record = csv.readRecord()) {
+                records.add(record);
+            }
+        }
+
+        assertThat(records.get(0)).containsExactly("id", "subject", "description", "status", "residentId", "residentName", "flatNumber");
+        assertThat(records).hasSize(RESIDENTS + 1);
+        assertThat(records.get(1).subList(1, 4)).containsExactly("Leak, flat 0", "Water \"everywhere\"\nsince Monday", "PENDING");
+        assertThat(records.get(RESIDENTS).get(6)).isEqualTo("X-" + (100 + RESIDENTS - 1));
+    }
+
+    @Test
+    void ndjsonHasOneObjectPerLine() throws IOException {
+        Message message = new Message();
+        message.setSenderUserId(1L);
+        message.setSenderRole("ADMIN");
+        message.setSubject("Notice");
+        message.setContent("Lift maintenance");
+        message.setStatus("UNREAD");
+        message.setCreatedAt(LocalDateTime.of(2025, 3, 1, 9, 30));
+        messageRepository.save(message); // No recipient: outer-joined as null
+
+        String[] lines = new String(export("messages", "ndjson", false), StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(1);
+        JsonNode node = objectMapper.readTree(lines[0]);
+        assertThat(node.get("subject").asText()).isEqualTo("Notice");
+        assertThat(node.get("recipientResident").isNull()).isTrue();
+        assertThat(node.get("createdAt").asText()).isEqualTo("2025-03-01T09:30:00");
+
+        String residents = new String(export("residents", "csv", false), StandardCharsets.UTF_8);
+        assertThat(residents.split("\r\n")).hasSize(RESIDENTS + 1);
+        assertThat(residents).contains(",X-100,1500.50\r\n");
+    }
+
+    @Test
+    void limitsConcurrentExportsAndRejectsUnknownDatasets() throws IOException {
+        assertThatThrownBy(() -> exportService.open("users", "csv", true)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> exportService.open("residents", "xml", true)).isInstanceOf(IllegalArgumentException.class);
+
+        ExportService.Export first = exportService.open("residents", "csv", true);
+        ExportService.Export second = exportService.open("residents", "csv", true);
+        assertThatThrownBy(() -> exportService.open("residents", "csv", true)).isInstanceOf(IllegalStateException.class);
+
+        first.writeTo(new ByteArrayOutputStream()); // Finishing an export frees its slot
+        second.writeTo(new ByteArrayOutputStream());
+        assertThat(export("residents", "csv", false)).isNotEmpty();
+    }
+
+    private byte[] export(String dataset, String format, boolean gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.open(dataset, format, gzip).writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,160 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.BillingRunStatus;
+import com.mySociety.model.MaintenanceInvoice;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.MaintenanceInvoiceRepository;
+import com.mySociety.repository.MaintenancePaymentRepository;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.security.AuthPrincipal;
+import com.mySociety.security.SessionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Not @Transactional: chunks are billed on the billing pool's threads, so the residents must be committed
+@SpringBootTest
+class MaintenanceBillingServiceTests {
+
+    private static final YearMonth PERIOD = YearMonth.of(2031, 1);
+    private static final String ADMIN_TOKEN = "ledger-test-admin";
+    private static final String RESIDENT_TOKEN = "ledger-test-resident";
+
+    @Autowired
+    private MaintenanceBillingService billingService;
+    @Autowired
+    private MaintenanceLedgerService ledgerService;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private MaintenanceInvoiceRepository invoiceRepository;
+    @Autowired
+    private MaintenancePaymentRepository paymentRepository;
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private SessionStore sessionStore;
+
+    private final List<Long> residentIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // Ten residents over several chunks of three; the last has no charge
+        for (int i = 0; i < 10; i++) {
+            BigDecimal charge = i == 9 ? BigDecimal.ZERO : new BigDecimal("1200.00");
+            residentIds.add(residentRepository.save(new Resident("Billed " + i, "billed" + i + "@example.com", "555",
+                    "M-" + (100 + i), charge)).getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionStore.remove(ADMIN_TOKEN);
+        sessionStore.remove(RESIDENT_TOKEN);
+        paymentRepository.deleteAll();
+        invoiceRepository.deleteAll();
+        residentRepository.deleteAllById(residentIds);
+    }
+
+    @Test
+    void billsEachResidentOncePerPeriod() {
+        BillingRunStatus first = billingService.billPeriod(PERIOD);
+        assertThat(first.state()).isEqualTo("COMPLETED");
+        assertThat(first.chunksFailed()).isZero();
+        assertThat(first.invoicesCreated()).isEqualTo(9);
+        assertThat(first.withoutCharge()).isEqualTo(1);
+
+        MaintenanceInvoice invoice = ledgerService.listInvoices(residentIds.get(0)).get(0);
+        assertThat(invoice.getPeriod()).isEqualTo("2031-01");
+        assertThat(invoice.getAmount()).isEqualByComparingTo("1200.00");
+        assertThat(invoice.getStatus()).isEqualTo(MaintenanceInvoice.UNPAID);
+        assertThat(invoice.getDueDate()).isEqualTo(LocalDate.of(2031, 1, 10));
+        assertThat(ledgerService.listInvoices(residentIds.get(9))).isEmpty();
+
+        BillingRunStatus again = billingService.billPeriod(PERIOD);
+        assertThat(again.invoicesCreated()).isZero();
+        assertThat(again.alreadyBilled()).isEqualTo(9);
+        assertThat(invoiceRepository.countByPeriod("2031-01")).isEqualTo(9);
+        assertThat(billingService.latestRun()).contains(again);
+    }
+
+    @Test
+    void paymentsSettleTheOldestInvoiceFirst() {
+        billingService.billPeriod(PERIOD);
+        billingService.billPeriod(PERIOD.plusMonths(1));
+        Long residentId = residentIds.get(0);
+
+        MaintenanceInvoice partial = ledgerService.pay(residentId, null, new BigDecimal("200.00"), "UPI-1", null);
+        assertThat(partial.getPeriod()).isEqualTo("2031-01");
+        assertThat(partial.getStatus()).isEqualTo(MaintenanceInvoice.PARTIAL);
+        assertThat(partial.getAmountPaid()).isEqualByComparingTo("200.00");
+
+        assertThatThrownBy(() -> ledgerService.pay(residentId, partial.getId(), new BigDecimal("1000.01"), null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ledgerService.pay(residentIds.get(1), partial.getId(), null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        MaintenanceInvoice paid = ledgerService.pay(residentId, null, null, null, null);
+        assertThat(paid.getId()).isEqualTo(partial.getId());
+        assertThat(paid.getStatus()).isEqualTo(MaintenanceInvoice.PAID);
+        assertThat(paid.getAmountPaid()).isEqualByComparingTo("1200.00");
+        assertThat(paid.getPaidAt()).isNotNull();
+        assertThat(paymentRepository.findByInvoiceIdOrderByPaidAtAsc(paid.getId())).hasSize(2);
+
+        assertThat(ledgerService.pay(residentId, null, null, null, null).getPeriod()).isEqualTo("2031-02");
+        assertThatThrownBy(() -> ledgerService.pay(residentId, null, null, null, null))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void residentsCanOnlyReportPaymentsForAnAdminToConfirm() throws Exception {
+        billingService.billPeriod(PERIOD);
+        Long residentId = residentIds.get(0);
+        MaintenanceInvoice invoice = ledgerService.listInvoices(residentId).get(0);
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        sessionStore.put(RESIDENT_TOKEN, new AuthPrincipal(2L, "USER", residentId, "M-100"));
+        sessionStore.put(ADMIN_TOKEN, new AuthPrincipal(1L, "ADMIN", null, null));
+
+        // The resident's own route only records a pending payment
+        mockMvc.perform(put("/api/resident/" + residentId + "/maintenance/markPaid")
+                        .header("Authorization", "Bearer " + RESIDENT_TOKEN))
+                .andExpect(status().isAccepted());
+        assertThat(invoiceRepository.findById(invoice.getId()).orElseThrow().getStatus()).isEqualTo(MaintenanceInvoice.UNPAID);
+        assertThat(ledgerService.listPendingPayments()).singleElement()
+                .satisfies(payment -> assertThat(payment.getAmount()).isEqualByComparingTo("1200.00"));
+
+        // Neither the admin payment route nor confirmation is open to a resident
+        mockMvc.perform(post("/api/admin/residents/" + residentId + "/maintenance/payments")
+                        .header("Authorization", "Bearer " + RESIDENT_TOKEN)
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isForbidden());
+        Long paymentId = ledgerService.listPendingPayments().get(0).getId();
+        String confirm = "/api/admin/residents/" + residentId + "/maintenance/payments/" + paymentId + "/confirm";
+        mockMvc.perform(post(confirm).header("Authorization", "Bearer " + RESIDENT_TOKEN))
+                .andExpect(status().isForbidden());
+        assertThat(invoiceRepository.findById(invoice.getId()).orElseThrow().getAmountPaid()).isEqualByComparingTo("0");
+
+        mockMvc.perform(post(confirm).header("Authorization", "Bearer " + ADMIN_TOKEN)).andExpect(status().isOk());
+        assertThat(invoiceRepository.findById(invoice.getId()).orElseThrow().getStatus()).isEqualTo(MaintenanceInvoice.PAID);
+        assertThat(ledgerService.listPendingPayments()).isEmpty();
+        mockMvc.perform(post(confirm).header("Authorization", "Bearer " + ADMIN_TOKEN)).andExpect(status().isConflict());
+    }
+}
@@ -0,0 +1,129 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.MessageView;
+import com.mySociety.model.Message;
+import com.mySociety.model.Resident;
+import com.mySociety.model.User;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.MessageThreadRepository;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class MessageArchiveServiceTests {
+
+    private static final LocalDateTime CUTOFF = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+    @Autowired
+    private MessageService messageService;
+    @Autowired
+    private InboxService inboxService;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private MessageThreadRepository messageThreadRepository;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManager entityManager;
+
+    private Resident resident;
+    private User residentUser;
+
+    @BeforeEach
+    void setUp() {
+        resident = residentRepository.save(new Resident("Meera", "meera@example.com", "555-0199", "C-301", new BigDecimal("1500.00")));
+        residentUser = new User("meera", "secret", "USER");
+        residentUser.setResident(resident);
+        residentUser = userRepository.save(residentUser);
+    }
+
+    @Test
+    void movesInactiveThreadsOutOfTheHotTable() {
+        Message old = root("Old notice", LocalDateTime.of(2023, 3, 1, 9, 0), "READ");
+        Message answer = reply(old, "USER", 1, LocalDateTime.of(2023, 3, 2, 9, 0), "READ");
+        Message nested = reply(answer, "ADMIN", 2, LocalDateTime.of(2023, 3, 3, 9, 0), "READ");
+        Message recent = root("Recent notice", LocalDateTime.of(2024, 6, 1, 9, 0), "READ");
+        rebuildSummaries();
+
+        assertThat(messageArchiveService.archiveInactiveSince(CUTOFF)).isEqualTo(1);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(messageRepository.findAllById(List.of(old.getId(), answer.getId(), nested.getId()))).isEmpty();
+        assertThat(messageThreadRepository.existsById(old.getId())).isFalse();
+        assertThat(messageRepository.existsById(recent.getId())).isTrue();
+
+        // Only read from the archive when asked
+        assertThat(messageService.getMessageThread(old.getId(), false)).isEmpty();
+        List<MessageView> archived = messageService.getMessageThread(old.getId(), true).orElseThrow();
+        assertThat(archived).extracting(MessageView::id).containsExactly(old.getId(), answer.getId(), nested.getId());
+        assertThat(archived.get(2).parentMessageId()).isEqualTo(answer.getId());
+        assertThat(archived.get(0).recipientResident().flatNumber()).isEqualTo("C-301");
+
+        assertThat(messageService.getConversationsForResident(resident.getId(), residentUser.getId(), false))
+                .extracting(thread -> thread.get(0).id()).containsExactly(recent.getId());
+        assertThat(messageService.getConversationsForResident(resident.getId(), residentUser.getId(), true))
+                .extracting(thread -> thread.get(0).id()).containsExactly(recent.getId(), old.getId());
+    }
+
+    @Test
+    void leavesThreadsWithUnreadMessagesInPlace() {
+        Message old = root("Old notice", LocalDateTime.of(2023, 3, 1, 9, 0), "READ");
+        reply(old, "USER", 1, LocalDateTime.of(2023, 3, 2, 9, 0), "UNREAD");
+        rebuildSummaries();
+
+        assertThat(messageArchiveService.archiveInactiveSince(CUTOFF)).isZero();
+        assertThat(messageRepository.existsById(old.getId())).isTrue();
+    }
+
+    private void rebuildSummaries() {
+        entityManager.flush();
+        inboxService.rebuild();
+    }
+
+    private Message root(String subject, LocalDateTime createdAt, String status) {
+        Message saved = messageRepository.save(newMessage(1L, "ADMIN", subject, createdAt, status));
+        saved.setThreadRootId(saved.getId());
+        saved.setThreadSeq(0);
+        return saved;
+    }
+
+    private Message reply(Message parent, String senderRole, int seq, LocalDateTime createdAt, String status) {
+        Long senderUserId = "USER".equals(senderRole) ? residentUser.getId() : 1L;
+        Message reply = newMessage(senderUserId, senderRole, "RE: " + parent.getSubject(), createdAt, status);
+        reply.setParentMessage(parent);
+        reply.setThreadRootId(parent.getThreadRootId());
+        reply.setThreadSeq(seq);
+        return messageRepository.save(reply);
+    }
+
+    private Message newMessage(Long senderUserId, String senderRole, String subject, LocalDateTime createdAt, String status) {
+        Message message = new Message();
+        message.setSenderUserId(senderUserId);
+        message.setSenderRole(senderRole);
+        message.setRecipientResident(resident);
+        message.setSubject(subject);
+        message.setContent(subject + " body");
+        message.setStatus(status);
+        message.setCreatedAt(createdAt);
+        return message;
+    }
+}
@@ -0,0 +1,293 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.Cursor;
+import com.mySociety.dto.CursorPage;
+import com.mySociety.dto.MessageView;
+import com.mySociety.dto.PageSizes;
+import com.mySociety.model.Message;
+import com.mySociety.model.MessageThread;
+import com.mySociety.model.Resident;
+import com.mySociety.model.User;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.MessageThreadRepository;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.UserRepository;
+import com.mySociety.security.AuthPrincipal;
+import com.mySociety.security.SessionStore;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@Transactional
+class MessageServiceTests {
+
+    @Autowired
+    private MessageService messageService;
+    @Autowired
+    private InboxService inboxService;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private MessageThreadRepository messageThreadRepository;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private SessionStore sessionStore;
+
+    private Statistics statistics;
+    private Resident resident;
+    private User residentUser;
+    private LocalDateTime clock;
+    private final Map<Long, Integer> threadLengths = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        resident = residentRepository.save(new Resident("Asha", "asha@example.com", "555-0101", "A-101", new BigDecimal("1500.00")));
+        residentUser = new User("asha", "secret", "USER");
+        residentUser.setResident(resident);
+        residentUser = userRepository.save(residentUser);
+        clock = LocalDateTime.of(2025, 1, 1, 9, 0);
+    }
+
+    @Test
+    void conversationsUseAConstantNumberOfQueries() {
+        createThreads(3, 2);
+        assertThat(countStatements()).isEqualTo(2);
+
+        createThreads(30, 4);
+        assertThat(countStatements()).isEqualTo(2);
+    }
+
+    @Test
+    void conversationsKeepThreadOrderAndReplyOrder() {
+        Message older = adminMessage("Parking");
+        reply(older, "USER");
+        Message newer = adminMessage("Water cut");
+        Message residentThread = residentMessage("Leaking tap");
+        reply(residentThread, "ADMIN");
+        // A late reply moves the oldest thread to the top
+        Message lateReply = reply(older, "USER");
+        flushAndClear();
+
+        List<List<MessageView>> conversations = messageService.getConversationsForResident(resident.getId(), residentUser.getId(), false);
+
+        assertThat(conversations).extracting(thread -> thread.get(0).id())
+                .containsExactly(older.getId(), residentThread.getId(), newer.getId());
+        assertThat(conversations.get(0)).hasSize(3);
+        assertThat(conversations.get(0).get(2).id()).isEqualTo(lateReply.getId());
+        assertThat(conversations.get(1)).hasSize(2);
+        assertThat(conversations.get(2)).hasSize(1);
+    }
+
+    @Test
+    void threadIncludesNestedRepliesInWriteOrderWithOneQuery() {
+        Message root = adminMessage("Lift maintenance");
+        Message first = reply(root, "USER");
+        Message nested = reply(first, "ADMIN");
+        Message deeper = reply(nested, "USER");
+        Message second = reply(root, "ADMIN");
+        flushAndClear();
+        statistics.clear();
+
+        List<MessageView> thread = messageService.getMessageThread(root.getId(), false).orElseThrow();
+
+        assertThat(thread).extracting(MessageView::id)
+                .containsExactly(root.getId(), first.getId(), nested.getId(), deeper.getId(), second.getId());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(messageService.getMessageThread(nested.getId(), false)).isEmpty();
+    }
+
+    @Test
+    void residentWithoutMessagesGetsEmptyList() {
+        flushAndClear();
+        assertThat(messageService.getConversationsForResident(resident.getId(), residentUser.getId(), false)).isEmpty();
+    }
+
+    @Test
+    void inboxPagesWalkEveryThreadOnceLatestFirst() {
+        List<Long> roots = new ArrayList<>();
+        LocalDateTime sameInstant = clock.plusDays(1);
+        for (int i = 0; i < 5; i++) {
+            Message root = adminMessage("Inbox " + i);
+            MessageThread thread = new MessageThread(root.getId(), resident.getId(), root.getSubject());
+            // The first two threads share the latest timestamp, so a page boundary has to break the tie by id
+            thread.setLastMessageAt(i < 2 ? sameInstant : root.getCreatedAt());
+            messageThreadRepository.save(thread);
+            roots.add(root.getId());
+        }
+        List<Long> expected = List.of(roots.get(1), roots.get(0), roots.get(4), roots.get(3), roots.get(2));
+        flushAndClear();
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<MessageThread> page = inboxService.getResidentInbox(resident.getId(), Cursor.decode(cursor), 2);
+            assertThat(page.items()).hasSizeLessThanOrEqualTo(2);
+            page.items().forEach(thread -> seen.add(thread.getRootMessageId()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(seen).containsExactlyElementsOf(expected);
+        CursorPage<MessageThread> adminPage = inboxService.getAdminInbox(null, 2);
+        assertThat(adminPage.items()).hasSize(2);
+        assertThat(adminPage.nextCursor()).isNotNull();
+    }
+
+    @Test
+    void messagePagesVisitEveryMessageOnceNewestFirst() {
+        // Three messages share one instant, so page boundaries fall inside the tie and are broken by id
+        LocalDateTime sameInstant = clock.plusDays(1);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Message message = newMessage(1L, "ADMIN", "Page " + i);
+            if (i >= 2 && i < 5) {
+                message.setCreatedAt(sameInstant);
+            }
+            messages.add(root(message));
+        }
+        List<Long> expected = List.of(messages.get(4).getId(), messages.get(3).getId(), messages.get(2).getId(),
+                messages.get(6).getId(), messages.get(5).getId(), messages.get(1).getId(), messages.get(0).getId());
+        flushAndClear();
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<MessageView> page = messageService.getMessagePage(Cursor.decode(cursor), 2, null, null, resident.getId());
+            assertThat(page.items()).hasSizeLessThanOrEqualTo(2);
+            page.items().forEach(message -> seen.add(message.id()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(seen).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void messagePageSizesAreClamped() {
+        for (int i = 0; i < PageSizes.MAX + 5; i++) {
+            adminMessage("Bulk " + i);
+        }
+        flushAndClear();
+
+        CursorPage<MessageView> capped = messageService.getMessagePage(null, 1000, null, null, resident.getId());
+        assertThat(capped.items()).hasSize(PageSizes.MAX);
+        assertThat(capped.nextCursor()).isNotNull();
+        assertThat(messageService.getMessagePage(null, null, null, null, resident.getId()).items()).hasSize(PageSizes.DEFAULT);
+        assertThat(messageService.getMessagePage(null, -1, null, null, resident.getId()).items()).hasSize(PageSizes.DEFAULT);
+    }
+
+    @Test
+    void malformedMessageCursorsGet400() throws Exception {
+        String token = "message-page-test-admin";
+        sessionStore.put(token, new AuthPrincipal(1L, "ADMIN", null, null));
+        try {
+            MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+            for (String cursor : List.of("not-base64!", "bm90LWEtY3Vyc29y", new Cursor(clock, 1L).encode().substring(3))) {
+                mockMvc.perform(get("/api/admin/messages/page").param("cursor", cursor).header("Authorization", "Bearer " + token))
+                        .andExpect(status().isBadRequest())
+                        .andExpect(content().string("Invalid cursor."));
+            }
+        } finally {
+            sessionStore.remove(token);
+        }
+    }
+
+    @Test
+    void repliesToAThreadWithoutASummaryRowStillNumberInOrder() {
+        Message root = adminMessage("Before the summary table");
+        flushAndClear();
+
+        Message first = messageService.replyToMessage(residentUser.getId(), root.getId(), "First");
+        Message second = messageService.replyToMessage(residentUser.getId(), root.getId(), "Second");
+
+        assertThat(first.getThreadSeq()).isEqualTo(1);
+        assertThat(second.getThreadSeq()).isEqualTo(2);
+    }
+
+    private long countStatements() {
+        flushAndClear();
+        statistics.clear();
+        messageService.getConversationsForResident(resident.getId(), residentUser.getId(), false);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void createThreads(int threads, int repliesPerThread) {
+        for (int i = 0; i < threads; i++) {
+            Message root = i % 3 == 0 ? residentMessage("Thread " + i) : adminMessage("Thread " + i);
+            for (int j = 0; j < repliesPerThread; j++) {
+                reply(root, j % 2 == 0 ? "USER" : "ADMIN");
+            }
+        }
+    }
+
+    private Message adminMessage(String subject) {
+        return root(newMessage(1L, "ADMIN", subject));
+    }
+
+    private Message residentMessage(String subject) {
+        return root(newMessage(residentUser.getId(), "USER", subject));
+    }
+
+    private Message root(Message message) {
+        Message saved = messageRepository.save(message);
+        saved.setThreadRootId(saved.getId());
+        saved.setThreadSeq(0);
+        return saved;
+    }
+
+    private Message reply(Message parent, String senderRole) {
+        Message reply = newMessage("USER".equals(senderRole) ? residentUser.getId() : 1L, senderRole, "RE: " + parent.getSubject());
+        reply.setParentMessage(parent);
+        reply.setThreadRootId(parent.getThreadRootId());
+        reply.setThreadSeq(threadLengths.merge(parent.getThreadRootId(), 1, Integer::sum));
+        return messageRepository.save(reply);
+    }
+
+    private Message newMessage(Long senderUserId, String senderRole, String subject) {
+        Message message = new Message();
+        message.setSenderUserId(senderUserId);
+        message.setSenderRole(senderRole);
+        message.setRecipientResident(resident);
+        message.setSubject(subject);
+        message.setContent(subject + " body");
+        message.setStatus("UNREAD");
+        clock = clock.plusMinutes(1);
+        message.setCreatedAt(clock);
+        return message;
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
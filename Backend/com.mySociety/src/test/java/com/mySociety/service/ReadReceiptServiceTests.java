@@ -0,0 +1,121 @@
+package com.mySociety.service;
+
+import com.mySociety.model.Message;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not @Transactional: the unread counters only move once the marking transaction commits
+@SpringBootTest
+class ReadReceiptServiceTests {
+
+    @Autowired
+    private ReadReceiptService readReceiptService;
+    @Autowired
+    private MessageService messageService;
+    @Autowired
+    private ResidentService residentService;
+    @Autowired
+    private ResidentDeletionService residentDeletionService;
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long residentId;
+    private Long otherResidentId;
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        residentId = residentService.createResident(
+                new Resident("Ishaan", "ishaan@example.com", "555-0121", "F-601", new BigDecimal("1000.00")), "ishaan", "pw").getId();
+        otherResidentId = residentService.createResident(
+                new Resident("Tara", "tara@example.com", "555-0122", "F-602", new BigDecimal("1000.00")), "tara", "pw").getId();
+        userId = userRepository.findByResidentId(residentId).orElseThrow().getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        residentDeletionService.delete(residentId);
+        residentDeletionService.delete(otherResidentId);
+    }
+
+    @Test
+    void bulkReceiptsMarkOnlyWhatTheCallerMayInAFixedNumberOfStatements() {
+        Long first = send(residentId, "Notice 1");
+        Long second = send(residentId, "Notice 2");
+        Long third = send(residentId, "Notice 3");
+        Long notTheirs = send(otherResidentId, "Someone else's notice");
+        Long ownReply = messageService.replyToMessage(userId, third, "Thanks").getId(); // Also marks the third read
+        long adminUnreadBefore = unreadCounterService.getAdminUnreadCount();
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isEqualTo(2);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        int marked = readReceiptService.markRead(null, List.of(first, second, notTheirs, ownReply), "USER", residentId);
+
+        assertThat(marked).isEqualTo(2);
+        // Locking id select, the UPDATE, and one summary UPDATE for each of the two threads
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(4);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statusOf(first)).isEqualTo("READ");
+        assertThat(statusOf(second)).isEqualTo("READ");
+        assertThat(statusOf(notTheirs)).isEqualTo("UNREAD");
+        assertThat(statusOf(ownReply)).isEqualTo("UNREAD");
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isZero();
+
+        // The admin marks the resident's reply through its thread
+        assertThat(readReceiptService.markRead(third, null, "ADMIN", null)).isEqualTo(1);
+        assertThat(statusOf(ownReply)).isEqualTo("READ");
+        assertThat(unreadCounterService.getAdminUnreadCount()).isEqualTo(adminUnreadBefore - 1);
+        assertThat(readReceiptService.markRead(third, null, "ADMIN", null)).isZero();
+    }
+
+    @Test
+    void writeBehindCoalescesReceiptsUntilTheFlush() {
+        Long first = send(residentId, "Notice 1");
+        Long second = send(residentId, "Notice 2");
+        Long notTheirs = send(otherResidentId, "Someone else's notice");
+        ReadReceiptService writeBehind = new ReadReceiptService(messageService, true);
+
+        assertThat(writeBehind.markRead(null, List.of(first, second), "USER", residentId)).isEqualTo(2);
+        assertThat(writeBehind.markRead(null, List.of(first, notTheirs), "USER", residentId)).isEqualTo(2);
+        assertThat(writeBehind.metricsSnapshot()).containsEntry("pending", 3).containsEntry("coalesced", 1L);
+        assertThat(statusOf(first)).isEqualTo("UNREAD"); // Nothing is written before the flush
+
+        writeBehind.flush();
+
+        assertThat(statusOf(first)).isEqualTo("READ");
+        assertThat(statusOf(second)).isEqualTo("READ");
+        assertThat(statusOf(notTheirs)).isEqualTo("UNREAD"); // Queuing a receipt grants nothing
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isZero();
+        assertThat(writeBehind.metricsSnapshot()).containsEntry("pending", 0).containsEntry("flushes", 1L)
+                .containsEntry("rowsUpdated", 2L);
+    }
+
+    private Long send(Long recipientResidentId, String subject) {
+        return messageService.sendAdminMessageToResident(1L, recipientResidentId, subject, subject + " body").id();
+    }
+
+    private String statusOf(Long messageId) {
+        return messageRepository.findById(messageId).map(Message::getStatus).orElseThrow();
+    }
+}
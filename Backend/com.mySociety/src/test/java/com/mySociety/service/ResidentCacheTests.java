@@ -0,0 +1,113 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.ResidentView;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.ResidentRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not @Transactional: invalidation happens when the writing transaction completes, so each write commits
+@SpringBootTest
+class ResidentCacheTests {
+
+    @Autowired
+    private ResidentCache residentCache;
+    @Autowired
+    private ResidentService residentService;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Long residentId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        residentId = residentRepository.save(new Resident("Kiran", "kiran@example.com", "555-0142", "K-101", new BigDecimal("1800.00"))).getId();
+        residentCache.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        residentRepository.deleteById(residentId);
+        residentCache.clear();
+    }
+
+    @Test
+    void repeatedLookupsAreServedFromMemory() {
+        statistics.clear();
+        assertThat(residentCache.findByFlatNumber("K-101")).map(ResidentView::id).contains(residentId);
+        assertThat(residentCache.findByFlatNumber("K-101")).isPresent();
+        assertThat(residentCache.findById(residentId)).map(ResidentView::name).contains("Kiran");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(residentCache.findByFlatNumber("K-999")).isEmpty();
+    }
+
+    @Test
+    void writesThroughResidentServiceDropTheEntry() {
+        residentCache.findByFlatNumber("K-101");
+
+        Resident details = new Resident("Kiran Rao", "kiran@example.com", "555-0142", "K-102", new BigDecimal("1900.00"));
+        residentService.updateResident(residentId, details);
+        assertThat(residentCache.findByFlatNumber("K-101")).isEmpty(); // Renamed flat no longer resolves
+        assertThat(residentCache.findByFlatNumber("K-102")).map(ResidentView::name).contains("Kiran Rao");
+
+        // A lookup inside a transaction that rolls back leaves nothing behind
+        transactionTemplate.executeWithoutResult(status -> {
+            residentRepository.findById(residentId).orElseThrow().setName("Never committed");
+            residentRepository.flush();
+            residentCache.residentChanged(residentId);
+            residentCache.clear(); // Cold cache, so the lookup reads the uncommitted row
+            assertThat(residentCache.findById(residentId)).map(ResidentView::name).contains("Never committed");
+            status.setRollbackOnly();
+        });
+        assertThat(residentCache.findById(residentId)).map(ResidentView::name).contains("Kiran Rao");
+    }
+
+    @Test
+    void overflowEvictsLeastRecentlyUsedResidentsOnly() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            ids.add(residentRepository.save(new Resident("Tenant " + i, "tenant" + i + "@example.com", "555-03" + i,
+                    "L-" + (100 + i), new BigDecimal("1000.00"))).getId());
+        }
+        try {
+            ResidentCache cache = new ResidentCache(residentRepository, transactionTemplate, 10, false);
+            for (int i = 0; i < 10; i++) {
+                cache.findById(ids.get(i));
+            }
+            cache.findByFlatNumber("L-100"); // Now the most recently used
+
+            cache.findById(ids.get(10));
+
+            // One over the limit, plus a tenth of the capacity: the two least recently used go
+            assertThat(cache.metricsSnapshot()).containsEntry("size", 9).containsEntry("evictions", 2L);
+            statistics.clear();
+            assertThat(cache.findById(ids.get(0))).isPresent();
+            assertThat(cache.findByFlatNumber("L-103")).isPresent();
+            assertThat(cache.findById(ids.get(10))).isPresent();
+            assertThat(statistics.getPrepareStatementCount()).isZero();
+            assertThat(cache.findById(ids.get(1))).isPresent();
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        } finally {
+            residentRepository.deleteAllById(ids);
+        }
+    }
+}
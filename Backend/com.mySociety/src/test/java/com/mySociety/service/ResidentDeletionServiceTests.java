@@ -0,0 +1,183 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.MessageView;
+import com.mySociety.dto.ResidentDeletionResult;
+import com.mySociety.model.ArchivedThread;
+import com.mySociety.model.Complaint;
+import com.mySociety.model.MessageThread;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.ArchivedThreadRepository;
+import com.mySociety.repository.ComplaintRepository;
+import com.mySociety.repository.MaintenanceInvoiceRepository;
+import com.mySociety.repository.MaintenancePaymentRepository;
+import com.mySociety.repository.MessageRepository;
+import com.mySociety.repository.MessageThreadRepository;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.UserRepository;
+import com.mySociety.security.AuthPrincipal;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not @Transactional: the deletion commits its own transaction, and the async one runs on another thread
+@SpringBootTest
+class ResidentDeletionServiceTests {
+
+    private static final AuthPrincipal ADMIN = new AuthPrincipal(1L, "ADMIN", null, null);
+
+    @Autowired
+    private ResidentDeletionService residentDeletionService;
+    @Autowired
+    private ResidentService residentService;
+    @Autowired
+    private MessageService messageService;
+    @Autowired
+    private ComplaintService complaintService;
+    @Autowired
+    private SearchService searchService;
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+    @Autowired
+    private MaintenanceBillingService billingService;
+    @Autowired
+    private MaintenanceLedgerService ledgerService;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private ComplaintRepository complaintRepository;
+    @Autowired
+    private ArchivedThreadRepository archivedThreadRepository;
+    @Autowired
+    private MaintenanceInvoiceRepository invoiceRepository;
+    @Autowired
+    private MaintenancePaymentRepository paymentRepository;
+    @Autowired
+    private MessageThreadRepository messageThreadRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long residentId;
+
+    @AfterEach
+    void tearDown() {
+        if (residentId != null) {
+            residentDeletionService.delete(residentId); // No-op when the test already deleted it
+        }
+        paymentRepository.deleteAll();
+        invoiceRepository.deleteAll();
+    }
+
+    @Test
+    void removesTheWholeHistoryWithBulkStatements() {
+        residentId = residentService.createResident(
+                new Resident("Kavya", "kavya@example.com", "555-0117", "E-501", new BigDecimal("2000.00")), "kavya", "pw").getId();
+        Long userId = userRepository.findByResidentId(residentId).orElseThrow().getId();
+        Long firstRootId = null;
+        for (int i = 0; i < 5; i++) {
+            MessageView sent = messageService.sendAdminMessageToResident(1L, residentId, "Notice " + i, "Water tank cleaning " + i);
+            firstRootId = firstRootId == null ? sent.id() : firstRootId;
+        }
+        messageService.replyToMessage(userId, firstRootId, "Thanks, noted");
+        complaintService.submitComplaint(residentId, new Complaint("Tank overflow", "Water everywhere", null, null));
+        archivedThreadRepository.save(new ArchivedThread(9_000_001L, residentId, "Old notice", LocalDateTime.of(2022, 1, 1, 9, 0), 1, new byte[0]));
+        billingService.billPeriod(YearMonth.of(2033, 1));
+        ledgerService.pay(residentId, null, new BigDecimal("500.00"), null, null);
+        long adminUnreadBefore = unreadCounterService.getAdminUnreadCount();
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isEqualTo(4);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ResidentDeletionResult result = residentDeletionService.delete(residentId).orElseThrow();
+
+        assertThat(result.state()).isEqualTo("COMPLETED");
+        assertThat(result.messages()).isEqualTo(6);
+        assertThat(result.threads()).isEqualTo(5);
+        assertThat(result.archivedThreads()).isEqualTo(1);
+        assertThat(result.complaints()).isEqualTo(1);
+        assertThat(result.users()).isEqualTo(1);
+        assertThat(result.invoices()).isEqualTo(1);
+        assertThat(result.payments()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(1); // Only the locked resident row
+
+        assertThat(residentRepository.existsById(residentId)).isFalse();
+        assertThat(userRepository.existsById(userId)).isFalse();
+        assertThat(messageRepository.findIdsByRecipientResidentId(residentId)).isEmpty();
+        assertThat(complaintRepository.findIdsByResidentId(residentId)).isEmpty();
+        assertThat(archivedThreadRepository.existsById(9_000_001L)).isFalse();
+        assertThat(searchService.search(ADMIN, "tank", null, residentId, null)).isEmpty();
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isZero();
+        assertThat(unreadCounterService.getAdminUnreadCount()).isEqualTo(adminUnreadBefore - 1);
+
+        assertThat(residentDeletionService.delete(residentId)).isEmpty();
+    }
+
+    @Test
+    void removesOlderThreadsTheResidentStartedWithoutARecipient() {
+        residentId = residentService.createResident(
+                new Resident("Omar", "omar@example.com", "555-0119", "E-503", new BigDecimal("2000.00")), "omar", "pw").getId();
+        Long userId = userRepository.findByResidentId(residentId).orElseThrow().getId();
+        // Written before messages recorded a recipient: the root and both replies have none
+        long root = insertUnaddressed(9_000_000_101L, userId, "USER", null, 0, "UNREAD");
+        long adminReply = insertUnaddressed(9_000_000_102L, 1L, "ADMIN", root, 1, "READ");
+        long residentReply = insertUnaddressed(9_000_000_103L, userId, "USER", adminReply, 2, "UNREAD");
+        MessageThread summary = new MessageThread(root, residentId, "Lift noise");
+        summary.setLastMessageAt(LocalDateTime.of(2021, 1, 1, 9, 2));
+        messageThreadRepository.save(summary);
+        unreadCounterService.reconcile();
+        long adminUnreadBefore = unreadCounterService.getAdminUnreadCount();
+
+        ResidentDeletionResult result = residentDeletionService.delete(residentId).orElseThrow();
+
+        assertThat(result.messages()).isEqualTo(3);
+        assertThat(result.threads()).isEqualTo(1);
+        assertThat(messageRepository.findAllById(List.of(root, adminReply, residentReply))).isEmpty();
+        assertThat(unreadCounterService.getAdminUnreadCount()).isEqualTo(adminUnreadBefore - 2);
+    }
+
+    @Test
+    void asyncDeletionReportsItsOutcome() throws InterruptedException {
+        residentId = residentRepository.save(new Resident("Farah", "farah@example.com", "555-0118", "E-502", new BigDecimal("2000.00"))).getId();
+
+        ResidentDeletionResult queued = residentDeletionService.deleteAsync(residentId).orElseThrow();
+        assertThat(queued.state()).isIn("QUEUED", "RUNNING");
+
+        Optional<ResidentDeletionResult> status = residentDeletionService.findStatus(residentId);
+        for (int i = 0; i < 100 && status.orElseThrow().finishedAt() == null; i++) {
+            Thread.sleep(50);
+            status = residentDeletionService.findStatus(residentId);
+        }
+        assertThat(status.orElseThrow().state()).isEqualTo("COMPLETED");
+        assertThat(residentRepository.existsById(residentId)).isFalse();
+
+        assertThat(residentDeletionService.deleteAsync(residentId)).isEmpty();
+    }
+
+    private long insertUnaddressed(long id, Long senderUserId, String senderRole, Long parentId, int seq, String status) {
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.of(2021, 1, 1, 9, seq));
+        jdbcTemplate.update("INSERT INTO messages (id, sender_user_id, sender_role, parent_message_id, thread_root_id, " +
+                        "thread_seq, subject, content, status, created_at, updated_at) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, 'Lift noise', 'Legacy body', ?, ?, ?)",
+                id, senderUserId, senderRole, parentId, 9_000_000_101L, seq, status, createdAt, createdAt);
+        return id;
+    }
+}
@@ -0,0 +1,112 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.ResidentDirectoryPage;
+import com.mySociety.dto.ResidentView;
+import com.mySociety.model.Resident;
+import com.mySociety.repository.ResidentRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class ResidentDirectoryServiceTests {
+
+    private static final int RESIDENTS = 57;
+
+    @Autowired
+    private ResidentDirectoryService residentDirectoryService;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<Resident> residents = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < RESIDENTS; i++) {
+            // Repeating charges and a few missing names exercise the (value, id) tie-break and NULL handling
+            String name = i % 10 == 0 ? null : "Name " + (char) ('A' + i % 7) + i;
+            BigDecimal charge = i % 9 == 0 ? null : new BigDecimal(1000 + (i % 4) * 250);
+            residents.add(residentRepository.save(new Resident(name, "d" + i + "@example.com", "555", "Z-" + (100 + i), charge)));
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void keysetPagesVisitEveryResidentOnceInSortOrder() {
+        Comparator<ResidentView> byId = Comparator.comparing(ResidentView::id);
+        assertWalk("flatNumber", "asc", Comparator.comparing(ResidentView::flatNumber).thenComparing(byId));
+        assertWalk("flatNumber", "desc", Comparator.comparing(ResidentView::flatNumber).thenComparing(byId).reversed());
+        assertWalk("name", "asc", Comparator.comparing(ResidentView::name, Comparator.nullsFirst(Comparator.<String>naturalOrder())).thenComparing(byId));
+        assertWalk("name", "desc", Comparator.comparing(ResidentView::name, Comparator.nullsFirst(Comparator.<String>naturalOrder())).thenComparing(byId).reversed());
+        assertWalk("maintenanceCharge", "asc", Comparator.comparing(ResidentView::maintenanceCharge, Comparator.nullsFirst(Comparator.<BigDecimal>naturalOrder())).thenComparing(byId));
+        assertWalk("maintenanceCharge", "desc", Comparator.comparing(ResidentView::maintenanceCharge, Comparator.nullsFirst(Comparator.<BigDecimal>naturalOrder())).thenComparing(byId).reversed());
+    }
+
+    @Test
+    void filtersCombineAndTotalsAreCached() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        BigDecimal min = new BigDecimal("1250");
+        BigDecimal max = new BigDecimal("1500");
+        long expected = residents.stream()
+                .filter(r -> r.getFlatNumber().startsWith("Z-1"))
+                .filter(r -> r.getMaintenanceCharge() != null && r.getMaintenanceCharge().compareTo(min) >= 0
+                        && r.getMaintenanceCharge().compareTo(max) <= 0)
+                .count();
+
+        ResidentDirectoryPage first = residentDirectoryService.getPage(null, 5, null, null, null, "Z-1", min, max);
+        assertThat(first.approximateTotal()).isEqualTo(expected);
+        assertThat(first.items()).allSatisfy(r -> assertThat(r.maintenanceCharge()).isBetween(min, max));
+
+        statistics.clear();
+        ResidentDirectoryPage second = residentDirectoryService.getPage(first.nextCursor(), 5, null, null, null, "Z-1", min, max);
+        assertThat(second.approximateTotal()).isEqualTo(expected);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1); // The page only; the total came from the cache
+
+        // Wildcards in a prefix match literally
+        assertThat(residentDirectoryService.getPage(null, 5, null, null, "%", null, null, null).items()).isEmpty();
+    }
+
+    @Test
+    void rejectsCursorFromAnotherSort() {
+        String cursor = residentDirectoryService.getPage(null, 5, "name", "asc", null, null, null, null).nextCursor();
+        assertThatThrownBy(() -> residentDirectoryService.getPage(cursor, 5, "flatNumber", "asc", null, null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void assertWalk(String sort, String direction, Comparator<ResidentView> expectedOrder) {
+        List<ResidentView> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            ResidentDirectoryPage page = residentDirectoryService.getPage(cursor, 8, sort, direction, null, "Z-", null, null);
+            walked.addAll(page.items());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        List<ResidentView> expected = residents.stream()
+                .map(r -> new ResidentView(r.getId(), r.getName(), r.getEmail(), r.getPhone(), r.getFlatNumber(), r.getMaintenanceCharge()))
+                .sorted(expectedOrder)
+                .toList();
+        assertThat(walked).extracting(ResidentView::id).as(sort + " " + direction)
+                .containsExactlyElementsOf(expected.stream().map(ResidentView::id).toList());
+    }
+}
@@ -0,0 +1,115 @@
+package com.mySociety.service;
+
+import com.mySociety.dto.ResidentImportError;
+import com.mySociety.dto.ResidentImportResult;
+import com.mySociety.model.Resident;
+import com.mySociety.model.User;
+import com.mySociety.repository.ResidentRepository;
+import com.mySociety.repository.UserRepository;
+import com.mySociety.security.PasswordHasher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class ResidentImportServiceTests {
+
+    @Autowired
+    private ResidentImportService residentImportService;
+    @Autowired
+    private ResidentRepository residentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @BeforeEach
+    void setUp() {
+        residentRepository.save(new Resident("Existing", "existing@example.com", "555", "D-101", new BigDecimal("1000")));
+        User user = new User("taken", "secret", "USER");
+        userRepository.save(user);
+    }
+
+    @Test
+    void importsValidCsvRowsAndReportsTheRest() throws IOException {
+        StringBuilder csv = new StringBuilder("flatNumber,name,maintenanceCharge,username,password,email\r\n");
+        for (int i = 0; i < 10; i++) { // Spans several chunks
+            csv.append("E-").append(100 + i).append(",Resident ").append(i).append(",1500.50,e").append(i).append(",pw").append(i).append(",\r\n");
+        }
+        csv.append("E-200,\"Shah, Priya\nand family\",2000,priya,\"p\"\"w\",priya@example.com\n") // Quoted comma, line break and quote
+           .append("\n")
+           .append("d-101,Clash,1000,clash1,pw,\n")   // Flat already exists, compared case-insensitively
+           .append("E-100,Twice,1000,twice,pw,\n")    // Flat earlier in the file
+           .append("E-300,Taken,1000,Taken,pw,\n")    // Username already exists
+           .append("E-301,No charge,,nocharge,pw,\n")
+           .append("E-302,Bad charge,abc,badcharge,pw,\n")
+           .append("E-303,No password,1000,nopassword,,\n");
+
+        ResidentImportResult result = residentImportService.importResidents(stream(csv.toString()), ResidentImportService.Format.CSV, false);
+
+        assertThat(result.rowsRead()).isEqualTo(17);
+        assertThat(result.imported()).isEqualTo(11);
+        assertThat(result.failed()).isEqualTo(6);
+        assertThat(result.errors()).extracting(ResidentImportError::line).containsExactly(15, 16, 17, 18, 19, 20);
+        assertThat(result.errors()).extracting(ResidentImportError::message).containsExactly(
+                "flatNumber already belongs to a resident.", "flatNumber appears earlier in the file.",
+                "username is already taken.", "maintenanceCharge is required.",
+                "maintenanceCharge is not a number.", "password is required.");
+
+        Resident priya = residentRepository.findByFlatNumber("E-200").orElseThrow();
+        assertThat(priya.getName()).isEqualTo("Shah, Priya\nand family");
+        assertThat(priya.getMaintenanceCharge()).isEqualByComparingTo("2000");
+        User priyaUser = userRepository.findByUsernameWithResident("priya").orElseThrow();
+        assertThat(priyaUser.getRole()).isEqualTo("USER");
+        assertThat(priyaUser.getResident().getId()).isEqualTo(priya.getId());
+        assertThat(passwordHasher.verify("p\"w", priyaUser.getPassword()).matches()).isTrue();
+        assertThat(residentRepository.findByFlatNumber("E-109")).isPresent();
+    }
+
+    @Test
+    void ndjsonRowsAreParsedOneLineAtATimeAndDryRunWritesNothing() throws IOException {
+        String ndjson = """
+                {"flatNumber": "F-1", "name": "One", "maintenanceCharge": 1250.75, "username": "f1", "password": "pw"}
+                {"flatNumber": "F-2", "name": "Two",
+                ["not", "an", "object"]
+
+                {"flatNumber": "F-3", "maintenanceCharge": "900", "username": "f3", "password": "pw"}
+                """;
+        long residentsBefore = residentRepository.count();
+
+        ResidentImportResult dryRun = residentImportService.importResidents(stream(ndjson), ResidentImportService.Format.NDJSON, true);
+        assertThat(dryRun.imported()).isEqualTo(2);
+        assertThat(dryRun.errors()).extracting(ResidentImportError::line).containsExactly(2, 3);
+        assertThat(residentRepository.count()).isEqualTo(residentsBefore);
+
+        ResidentImportResult result = residentImportService.importResidents(stream(ndjson), ResidentImportService.Format.NDJSON, false);
+        assertThat(result.imported()).isEqualTo(2);
+        assertThat(residentRepository.findByFlatNumber("F-1").orElseThrow().getMaintenanceCharge()).isEqualByComparingTo("1250.75");
+        assertThat(residentRepository.findByFlatNumber("F-3")).isPresent();
+    }
+
+    @Test
+    void rejectsCsvWithoutRequiredColumns() {
+        assertThatThrownBy(() -> residentImportService.importResidents(stream("flatNumber,name\nG-1,x\n"), ResidentImportService.Format.CSV, false))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("maintenanceCharge");
+        assertThatThrownBy(() -> ResidentImportService.Format.detect(null, "residents.txt", "text/plain"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(ResidentImportService.Format.detect(null, "Residents.CSV", null)).isEqualTo(ResidentImportService.Format.CSV);
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,72 @@
+package com.mySociety.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Legacy rows are written with plain SQL, since the application always numbers the messages it saves
+@SpringBootTest
+@Transactional
+class ThreadPositionBackfillTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 9, 0);
+
+    @Autowired
+    private ThreadPositionBackfill threadPositionBackfill;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void legacyThreadsAreNumberedFromTheirParentLinks() {
+        long root = insert(9_000_000_001L, null, 0);
+        long first = insert(9_000_000_002L, root, 1);
+        long nested = insert(9_000_000_003L, first, 3);
+        long second = insert(9_000_000_004L, root, 2);
+        long deeper = insert(9_000_000_005L, nested, 4);
+        long lonely = insert(9_000_000_006L, null, 5);
+
+        threadPositionBackfill.afterSingletonsInstantiated();
+
+        assertThat(position(root)).isEqualTo(Map.of("root", root, "seq", 0));
+        assertThat(position(first)).isEqualTo(Map.of("root", root, "seq", 1));
+        assertThat(position(second)).isEqualTo(Map.of("root", root, "seq", 2));
+        assertThat(position(nested)).isEqualTo(Map.of("root", root, "seq", 3));
+        assertThat(position(deeper)).isEqualTo(Map.of("root", root, "seq", 4));
+        assertThat(position(lonely)).isEqualTo(Map.of("root", lonely, "seq", 0));
+        assertThat(threadPositionBackfill.backfill()).isZero(); // Numbered rows are left alone
+    }
+
+    @Test
+    void handEditedPositionsAreRepaired() {
+        long root = insert(9_000_000_011L, null, 0);
+        long reply = insert(9_000_000_012L, root, 1);
+        long later = insert(9_000_000_013L, reply, 2);
+        jdbcTemplate.update("UPDATE messages SET thread_root_id = id, thread_seq = 0 WHERE id IN (?, ?)", root, reply);
+        jdbcTemplate.update("UPDATE messages SET thread_root_id = ?, thread_seq = 7 WHERE id = ?", reply, later);
+
+        assertThat(threadPositionBackfill.backfill()).isEqualTo(4); // Two roots, then two positions
+
+        assertThat(position(reply)).isEqualTo(Map.of("root", root, "seq", 1));
+        assertThat(position(later)).isEqualTo(Map.of("root", root, "seq", 2));
+    }
+
+    private long insert(long id, Long parentId, int minutes) {
+        jdbcTemplate.update("INSERT INTO messages (id, sender_user_id, sender_role, parent_message_id, subject, content, " +
+                        "status, created_at) VALUES (?, 1, 'ADMIN', ?, 'Legacy', 'Legacy body', 'READ', ?)",
+                id, parentId, Timestamp.valueOf(START.plusMinutes(minutes)));
+        return id;
+    }
+
+    private Map<String, Object> position(long id) {
+        return jdbcTemplate.queryForObject("SELECT thread_root_id, thread_seq FROM messages WHERE id = ?",
+                (rs, rowNum) -> Map.<String, Object>of("root", rs.getLong(1), "seq", rs.getInt(2)), id);
+    }
+}
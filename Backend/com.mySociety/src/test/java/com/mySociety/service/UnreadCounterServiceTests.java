@@ -0,0 +1,83 @@
+package com.mySociety.service;
+
+import com.mySociety.model.Resident;
+import com.mySociety.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Not @Transactional: the counters only move once the sending or marking transaction commits
+@SpringBootTest
+class UnreadCounterServiceTests {
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+    @Autowired
+    private MessageService messageService;
+    @Autowired
+    private ResidentService residentService;
+    @Autowired
+    private ResidentDeletionService residentDeletionService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Long residentId;
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        residentId = residentService.createResident(
+                new Resident("Mira", "mira@example.com", "555-0131", "G-701", new BigDecimal("1000.00")), "mira", "pw").getId();
+        userId = userRepository.findByResidentId(residentId).orElseThrow().getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        residentDeletionService.delete(residentId);
+    }
+
+    @Test
+    void rolledBackSendsLeaveTheCountsAlone() {
+        long adminUnreadBefore = unreadCounterService.getAdminUnreadCount();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            messageService.sendAdminMessageToResident(1L, residentId, "Notice", "Lift maintenance on Friday");
+            status.setRollbackOnly();
+        });
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isZero();
+
+        Long rootId = messageService.sendAdminMessageToResident(1L, residentId, "Notice", "Lift maintenance on Friday").id();
+        transactionTemplate.executeWithoutResult(status -> {
+            messageService.replyToMessage(userId, rootId, "Which lift?");
+            status.setRollbackOnly();
+        });
+        assertThat(unreadCounterService.getAdminUnreadCount()).isEqualTo(adminUnreadBefore);
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isEqualTo(1);
+    }
+
+    @Test
+    void markingAMessageReadLowersTheRightBadge() {
+        long adminUnreadBefore = unreadCounterService.getAdminUnreadCount();
+        Long first = messageService.sendAdminMessageToResident(1L, residentId, "Notice 1", "Water off at noon").id();
+        messageService.sendAdminMessageToResident(1L, residentId, "Notice 2", "Parking repainting");
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isEqualTo(2);
+
+        messageService.markMessageAsRead(first, "USER", residentId);
+        messageService.markMessageAsRead(first, "USER", residentId); // Already read: no second decrement
+        assertThat(unreadCounterService.getResidentUnreadCount(residentId)).isEqualTo(1);
+
+        Long reply = messageService.replyToMessage(userId, first, "Noted").getId();
+        assertThat(unreadCounterService.getAdminUnreadCount()).isEqualTo(adminUnreadBefore + 1);
+        messageService.markMessageAsRead(reply, "ADMIN", null);
+        assertThat(unreadCounterService.getAdminUnreadCount()).isEqualTo(adminUnreadBefore);
+    }
+}
@@ -1,35 +1,43 @@
 import React, { useState, useEffect } from 'react';
 import { api } from '../../utils/api';
 
+const PAGE_SIZE = 50;
+
 const ComplaintsPage = ({ showMessage }) => {
   const [complaints, setComplaints] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [statusFilter, setStatusFilter] = useState('');
   const [loading, setLoading] = useState(true);
+  const [loadingMore, setLoadingMore] = useState(false);
   const [updatingStatus, setUpdatingStatus] = useState(false);
 
   useEffect(() => {
     fetchComplaints();
-  }, []);
+  }, [statusFilter]);
 
-  const fetchComplaints = async () => {
-    setLoading(true);
+  // Pages come from the server newest first, filtered by status
+  const fetchComplaints = async (cursor = null) => {
+    cursor ? setLoadingMore(true) : setLoading(true);
     try {
-      const data = await api.admin.getComplaints();
-      // Sort complaints by creation date, newest first
-      const sortedData = data.sort((a, b) => new Date(b.createdAt) - new Date(a.createdAt));
-      setComplaints(sortedData);
+      const page = await api.admin.getComplaintPage({ cursor, limit: PAGE_SIZE, status: statusFilter });
+      setComplaints((current) => (cursor ? [...current, ...page.items] : page.items));
+      setNextCursor(page.nextCursor);
     } catch (error) {
       showMessage(error.message || 'Failed to fetch complaints.', 'error');
     } finally {
-      setLoading(false);
+      cursor ? setLoadingMore(false) : setLoading(false);
     }
   };
 
   const handleStatusChange = async (complaintId, newStatus) => {
     setUpdatingStatus(true);
     try {
-      await api.admin.updateComplaintStatus(complaintId, newStatus);
+      const updated = await api.admin.updateComplaintStatus(complaintId, newStatus);
       showMessage('Complaint status updated successfully.', 'success');
-      fetchComplaints(); // Re-fetch to update the list
+      // Update the row in place rather than reloading every page
+      setComplaints((current) => current
+        .map((complaint) => (complaint.id === updated.id ? updated : complaint))
+        .filter((complaint) => !statusFilter || complaint.status === statusFilter));
     } catch (error) {
       showMessage(error.message || 'Failed to update complaint status.', 'error');
     } finally {
@@ -45,6 +53,18 @@ const ComplaintsPage = ({ showMessage }) => {
     <div className="container mx-auto p-6">
       <h1 className="text-4xl font-bold text-gray-800 mb-8 text-center">Manage Complaints</h1>
 
+      <div className="flex justify-end mb-4">
+        <select
+          value={statusFilter}
+          onChange={(e) => setStatusFilter(e.target.value)}
+          className="px-4 py-2 border border-gray-300 rounded-lg text-sm text-gray-700"
+        >
+          <option value="">All statuses</option>
+          <option value="PENDING">Pending</option>
+          <option value="RESOLVED">Resolved</option>
+        </select>
+      </div>
+
       {complaints.length === 0 ? (
         <p className="text-gray-600 text-center py-4">No complaints submitted yet.</p>
       ) : (
@@ -93,6 +113,17 @@ const ComplaintsPage = ({ showMessage }) => {
               ))}
             </tbody>
           </table>
+          {nextCursor && (
+            <div className="text-center mt-6">
+              <button
+                onClick={() => fetchComplaints(nextCursor)}
+                className="px-6 py-2 bg-blue-600 text-white rounded-lg hover:bg-blue-700 transition-colors duration-200"
+                disabled={loadingMore}
+              >
+                {loadingMore ? 'Loading...' : 'Load more'}
+              </button>
+            </div>
+          )}
         </div>
       )}
     </div>
@@ -28,13 +28,12 @@ const MyMaintenancePage = ({ residentId, flatNumber, showMessage }) => {
   };
 
   const handleMarkAsPaid = async () => {
-    if (window.confirm('Are you sure you want to mark your maintenance as paid? (This is a simulated action)')) {
+    if (window.confirm('Report your maintenance as paid? The office will confirm it against their records.')) {
       setMarkingPaid(true);
       try {
         await api.resident.markMaintenancePaid(residentId);
-        showMessage('Maintenance marked as paid (simulated).', 'success');
-        // In a real app, you'd update a 'paid' status in the DB and re-fetch.
-        // For this example, we just show a message.
+        // Recorded as pending; the dues stay open until an admin confirms the payment
+        showMessage('Payment reported. It will show as paid once the office confirms it.', 'success');
       } catch (error) {
         showMessage(error.message || 'Failed to mark maintenance as paid.', 'error');
       } finally {
@@ -73,6 +73,14 @@ export const api = {
     deleteResident: (id) => fetchData(`/admin/residents/${id}`, 'DELETE'),
 
     getComplaints: () => fetchData('/admin/complaints'),
+    // One page, newest first; pass the returned nextCursor back for the next page
+    getComplaintPage: ({ cursor, limit, status } = {}) => {
+      const params = new URLSearchParams();
+      if (cursor) params.set('cursor', cursor);
+      if (limit) params.set('limit', limit);
+      if (status) params.set('status', status);
+      return fetchData(`/admin/complaints/page?${params}`);
+    },
     updateComplaintStatus: (id, status) => fetchData(`/admin/complaints/${id}/status`, 'PUT', { status }),
 
     getAnnouncements: () => fetchData('/admin/announcements'),